@@ -0,0 +1,25 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * Thrown by a {@link DriverLauncher} that is at its limits and cannot queue
+ * another {@link DriverBody}.
+ * 
+ * <p>
+ * Rejection is expected under load, so the exception does not capture a stack
+ * trace.
+ * </p>
+ * 
+ * @author rkenney
+ */
+@SuppressWarnings("serial")
+public class AdmissionRejectedException extends JasyncDriverException {
+
+	public AdmissionRejectedException(String message) {
+		super(message);
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
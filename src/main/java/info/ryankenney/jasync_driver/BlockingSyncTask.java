@@ -0,0 +1,30 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * A {@link SyncTask} that blocks, such as a JDBC query or a read from a
+ * file. Rather than running it inline on whatever thread resumed the
+ * {@link DriverBody}, a {@link JasyncDriver} runs it on its blocking executor
+ * (see {@link JasyncDriver#setBlockingExecutor(java.util.concurrent.Executor)})
+ * and suspends the body until it returns, just as it would for an
+ * {@link AsyncTask}.
+ * </p>
+ * 
+ * <p>
+ * The {@link DriverBody} code does not change. The one difference is that
+ * an exception thrown by the task reaches the body as a
+ * {@link TaskFailedException}, like any other failed {@link AsyncTask}.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <R>
+ *            The type returned by the task. Use the {@link Void} type if you
+ *            have no use for a return.
+ */
+public interface BlockingSyncTask<A,R> extends SyncTask<A,R> {
+
+}
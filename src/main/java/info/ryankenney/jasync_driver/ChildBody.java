@@ -0,0 +1,27 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * Used to define the logic of a child driver launched by a
+ * {@link DriverScope}. Like {@link DriverBody#run()}, the body is executed
+ * repeatedly, with the results of {@link Task} executions read from cache, so
+ * the same rules apply.
+ *
+ * @author rkenney
+ *
+ * @param <R>
+ *            The type of result produced by the child.
+ */
+public interface ChildBody<R> {
+
+	/**
+	 * Executes the child logic.
+	 *
+	 * @param driver
+	 *            The driver executing this child. All {@link AsyncTask}/
+	 *            {@link SyncTask}s of the child must be executed through it.
+	 * @return The result of the child. Only the value returned by the final
+	 *         (complete) execution is reported to the {@link DriverScope}.
+	 */
+	R run(JasyncDriver driver);
+
+}
@@ -0,0 +1,30 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * A {@link SyncTask} that is CPU-heavy, such as rendering a report or
+ * verifying a signature. Rather than running it inline on whatever thread
+ * resumed the {@link DriverBody}, a {@link JasyncDriver} runs it on its
+ * compute executor (see
+ * {@link JasyncDriver#setComputeExecutor(java.util.concurrent.Executor)}) and
+ * suspends the body until it returns, just as it would for an
+ * {@link AsyncTask}.
+ * </p>
+ * 
+ * <p>
+ * As with {@link BlockingSyncTask}, an exception thrown by the task reaches
+ * the body as a {@link TaskFailedException}.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <R>
+ *            The type returned by the task. Use the {@link Void} type if you
+ *            have no use for a return.
+ */
+public interface ComputeSyncTask<A,R> extends SyncTask<A,R> {
+
+}
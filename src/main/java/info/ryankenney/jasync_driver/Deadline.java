@@ -0,0 +1,64 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A point in time by which a {@link JasyncDriver} run should be complete.
+ * Based upon {@link System#nanoTime()}, so it is unaffected by changes to the
+ * wall clock, but only meaningful within a single JVM.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable, so a single instance may be shared by a driver,
+ * its children and any downstream calls.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public final class Deadline {
+
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * Returns a deadline the provided amount of time from now.
+	 */
+	public static Deadline after(long duration, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * Returns the time remaining before this deadline, in the provided unit.
+	 * Negative if the deadline has passed.
+	 */
+	public long timeRemaining(TimeUnit unit) {
+		return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns true if this deadline has passed.
+	 */
+	public boolean isExpired() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Returns whichever of this deadline and the provided deadline comes
+	 * first. The provided deadline may be null.
+	 */
+	public Deadline earliest(Deadline other) {
+		if (other == null || deadlineNanos - other.deadlineNanos <= 0) {
+			return this;
+		}
+		return other;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline[" + timeRemaining(TimeUnit.MILLISECONDS) + "ms remaining]";
+	}
+}
@@ -0,0 +1,15 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * Thrown when a {@link DriverBody} reaches a {@link Task} that cannot finish
+ * before the {@link Deadline} of its {@link JasyncDriver}.
+ * 
+ * @author rkenney
+ */
+@SuppressWarnings("serial")
+public class DeadlineExceededException extends JasyncDriverException {
+
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,219 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Starts {@link DriverBody}s under admission control. The launcher tracks the
+ * number of {@link JasyncDriver}s it has started that are still in flight
+ * (suspended or running), and the total number of {@link Task} results held in
+ * their histories. Past either limit, new bodies are queued, and once the
+ * queue is full, they are turned away.
+ * </p>
+ * 
+ * <p>
+ * A driver leaves flight when its body completes, fails or the driver is
+ * cancelled, at which point queued bodies are started in the order they were
+ * queued:
+ * </p>
+ * 
+ * <pre>
+ * DriverLauncher launcher = new DriverLauncher(1000, 100000, 200);
+ * ...
+ * if (!launcher.tryExecute(driver, body)) {
+ *     // Shed the request at the edge
+ *     respondUnavailable();
+ * }
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class DriverLauncher {
+
+	private final int maxInFlight;
+	private final long maxHistoryEntries;
+	private final int maxQueued;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong historyEntries = new AtomicLong();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final Queue<Launch> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger drainClaims = new AtomicInteger();
+	private final Runnable release = new Runnable() {
+		public void run() {
+			inFlight.decrementAndGet();
+			drain();
+		}
+	};
+
+	/**
+	 * @param maxInFlight
+	 *            The maximum number of drivers in flight at once.
+	 * @param maxHistoryEntries
+	 *            The total number of history entries, across all drivers in
+	 *            flight, beyond which no new driver is started.
+	 * @param maxQueued
+	 *            The maximum number of bodies waiting to start. 0 rejects
+	 *            bodies outright when at the limits.
+	 */
+	public DriverLauncher(int maxInFlight, long maxHistoryEntries, int maxQueued) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		}
+		if (maxHistoryEntries < 1) {
+			throw new IllegalArgumentException("maxHistoryEntries must be at least 1");
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("maxQueued must not be negative");
+		}
+		this.maxInFlight = maxInFlight;
+		this.maxHistoryEntries = maxHistoryEntries;
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * Starts the body on the driver if the launcher is within its limits,
+	 * without queueing.
+	 * 
+	 * @return False if the body was turned away. Nothing is allocated on this
+	 *         path.
+	 */
+	public boolean tryExecute(JasyncDriver driver, DriverBody body) {
+		if (!queue.isEmpty() || !tryReserve()) {
+			rejected.incrementAndGet();
+			return false;
+		}
+		launch(driver, body);
+		return true;
+	}
+
+	/**
+	 * Starts the body on the driver if the launcher is within its limits, or
+	 * else queues it to start once capacity frees up.
+	 * 
+	 * @throws AdmissionRejectedException
+	 *             If the queue is full.
+	 */
+	public void execute(JasyncDriver driver, DriverBody body) {
+		if (queue.isEmpty() && tryReserve()) {
+			launch(driver, body);
+			return;
+		}
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new AdmissionRejectedException("Driver launcher is at capacity");
+		}
+		queue.add(new Launch(driver, body));
+		// Capacity may have freed up before the body was queued
+		drain();
+	}
+
+	/**
+	 * Returns the number of drivers started by this launcher that have not yet
+	 * completed, failed or been cancelled.
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns the total number of history entries held by the drivers in
+	 * flight.
+	 */
+	public long getHistoryEntryCount() {
+		return historyEntries.get();
+	}
+
+	/**
+	 * Returns the number of bodies waiting to start.
+	 */
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns the number of bodies started since construction.
+	 */
+	public long getAdmittedCount() {
+		return admitted.get();
+	}
+
+	/**
+	 * Returns the number of bodies turned away since construction.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	private boolean tryReserve() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= maxInFlight || historyEntries.get() >= maxHistoryEntries) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void launch(JasyncDriver driver, DriverBody body) {
+		admitted.incrementAndGet();
+		driver.setHistoryGauge(historyEntries);
+		driver.addFinishHook(release);
+		driver.execute(body);
+	}
+
+	/**
+	 * Starts queued bodies while capacity allows. Only one thread drains at a
+	 * time, and bodies that finish inline release their slot into the same
+	 * loop, so the stack does not grow with the queue. A body that fails here
+	 * has its failure recorded and torn down by its own driver. It is not
+	 * rethrown, since the draining thread is running some other driver.
+	 */
+	private void drain() {
+		if (drainClaims.getAndIncrement() != 0) {
+			return;
+		}
+		int claims = 1;
+		while (true) {
+			while (!queue.isEmpty() && tryReserve()) {
+				Launch next = queue.poll();
+				if (next == null) {
+					inFlight.decrementAndGet();
+					break;
+				}
+				queued.decrementAndGet();
+				if (next.driver.isCancelled()) {
+					inFlight.decrementAndGet();
+					continue;
+				}
+				try {
+					launch(next.driver, next.body);
+				} catch (RuntimeException e) {
+					// Already recorded by the failed driver, which has left
+					// flight
+				}
+			}
+			claims = drainClaims.addAndGet(-claims);
+			if (claims == 0) {
+				return;
+			}
+		}
+	}
+
+	private static class Launch {
+		final JasyncDriver driver;
+		final DriverBody body;
+
+		Launch(JasyncDriver driver, DriverBody body) {
+			this.driver = driver;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A {@link ResumeExecutor} that runs every {@link DriverBody} on one of a
+ * fixed set of event loop threads (by default, one per core). Each driver is
+ * pinned to a single loop for its whole life, so its state is only ever
+ * touched by one thread, needs no locks and stays in that core's cache.
+ * </p>
+ * 
+ * <p>
+ * Results reported from any thread are handed to the driver's loop through a
+ * lock-free multi-producer/single-consumer queue, and the loop runs queued
+ * resumptions in batches. Start drivers through {@link #execute(JasyncDriver,
+ * DriverBody)}:
+ * </p>
+ * 
+ * <pre>
+ * DriverRuntime runtime = new DriverRuntime();
+ * JasyncDriver driver = new JasyncDriver(onComplete);
+ * runtime.execute(driver, body);
+ * </pre>
+ * 
+ * <p>
+ * Since the loops run every body, neither bodies nor {@link SyncTask}s should
+ * block.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class DriverRuntime implements ResumeExecutor {
+
+	/**
+	 * The most resumptions a loop runs before checking for shutdown.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	private final EventLoop[] loops;
+
+	/**
+	 * Constructs a runtime with one event loop per available processor.
+	 */
+	public DriverRuntime() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a runtime with the provided number of event loops.
+	 */
+	public DriverRuntime(int loopCount) {
+		if (loopCount < 1) {
+			throw new IllegalArgumentException("loopCount must be at least 1");
+		}
+		loops = new EventLoop[loopCount];
+		for (int i = 0; i < loopCount; i++) {
+			loops[i] = new EventLoop("jasync-driver-loop-" + i);
+			loops[i].thread.start();
+		}
+	}
+
+	/**
+	 * Binds the provided driver to this runtime and executes the provided
+	 * {@link DriverBody} on the driver's event loop. Returns immediately.
+	 */
+	public void execute(final JasyncDriver driver, final DriverBody body) {
+		driver.setResumeExecutor(this);
+		loopFor(driver).execute(new Runnable() {
+			public void run() {
+				driver.execute(body);
+			}
+		});
+	}
+
+	@Override
+	public void resume(JasyncDriver driver, Runnable resumption) {
+		loopFor(driver).execute(resumption);
+	}
+
+	/**
+	 * Returns the number of event loops in this runtime.
+	 */
+	public int getLoopCount() {
+		return loops.length;
+	}
+
+	/**
+	 * Returns the total number of resumptions run by all loops.
+	 */
+	public long getCompletedCount() {
+		long total = 0;
+		for (EventLoop loop : loops) {
+			total += loop.completedCount.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Stops all event loops once they have run the work already queued. Work
+	 * submitted afterwards is never run.
+	 */
+	public void shutdown() {
+		for (EventLoop loop : loops) {
+			loop.running = false;
+			LockSupport.unpark(loop.thread);
+		}
+	}
+
+	/**
+	 * Waits for all event loops to stop after {@link #shutdown()}.
+	 * 
+	 * @return True if all loops stopped within the provided time.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (EventLoop loop : loops) {
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remainingMillis <= 0) {
+				return !loop.thread.isAlive();
+			}
+			loop.thread.join(remainingMillis);
+			if (loop.thread.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the loop a driver is pinned to. The identity hash of a driver
+	 * never changes, so neither does its loop.
+	 */
+	private EventLoop loopFor(JasyncDriver driver) {
+		int hash = System.identityHashCode(driver);
+		hash ^= (hash >>> 16);
+		return loops[(hash & Integer.MAX_VALUE) % loops.length];
+	}
+
+	private static class EventLoop implements Runnable {
+		private final MpscQueue<Runnable> queue = new MpscQueue<>();
+		private final Thread thread;
+		private final AtomicLong completedCount = new AtomicLong();
+		private volatile boolean parked;
+		private volatile boolean running = true;
+
+		EventLoop(String name) {
+			thread = new Thread(this, name);
+			thread.setDaemon(true);
+		}
+
+		void execute(Runnable task) {
+			queue.offer(task);
+			if (parked) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (running || !queue.isEmpty()) {
+				int ran = 0;
+				Runnable task;
+				while (ran < BATCH_SIZE && (task = queue.poll()) != null) {
+					runSafely(task);
+					ran++;
+				}
+				completedCount.addAndGet(ran);
+				if (ran > 0) {
+					continue;
+				}
+				// Announce the park before the final check, so that a producer
+				// either sees the announcement or its work is seen here.
+				parked = true;
+				if (queue.isEmpty() && running) {
+					LockSupport.park(this);
+				}
+				parked = false;
+			}
+		}
+
+		private void runSafely(Runnable task) {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				// A failed body must not take the other drivers on this loop
+				// down with it, even if it failed with an Error.
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+}
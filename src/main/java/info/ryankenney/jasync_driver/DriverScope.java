@@ -0,0 +1,272 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that runs a list of {@link ChildBody}s, each in its own
+ * {@link JasyncDriver}, with a cap on how many run at once. The task completes
+ * when all children (or a quorum of them) have completed, reporting the
+ * results of all children as a single entry in the parent's history.
+ * </p>
+ *
+ * <p>
+ * The lifetime of the children is tied to the parent: if the parent driver is
+ * cancelled, or its {@link DriverBody} fails, the children still running are
+ * cancelled and the children not yet started are never started. If a child
+ * fails or is cancelled, its siblings are cancelled and the task reports the
+ * failure to the parent. Children inherit the {@link Deadline},
+ * {@link Priority}, {@link ResumeExecutor} and offload executors of the
+ * parent.
+ * </p>
+ *
+ * <p>
+ * Since {@link JasyncDriver} matches tasks by identity, construct the scope
+ * outside of the {@link DriverBody} and build the list of children inside it:
+ * </p>
+ *
+ * <pre>
+ * final DriverScope&lt;Status&gt; scope = new DriverScope&lt;&gt;(driver, 4);
+ * driver.execute(new DriverBody() {
+ *     public void run() {
+ *         List&lt;ChildBody&lt;Status&gt;&gt; children = new ArrayList&lt;&gt;();
+ *         for (LineItem item : driver.execute(readLineItems, order)) {
+ *             children.add(new StoreLineItem(item));
+ *         }
+ *         List&lt;Status&gt; statuses = driver.execute(scope, children);
+ *     }
+ * });
+ * </pre>
+ *
+ * @author rkenney
+ *
+ * @param <R>
+ *            The type of result produced by each child.
+ */
+public class DriverScope<R> implements AsyncTask<List<? extends ChildBody<R>>, List<R>> {
+
+	private final JasyncDriver parent;
+	private final int maxConcurrency;
+	private int quorum;
+
+	/**
+	 * Constructs a scope whose children are bound to the provided parent.
+	 *
+	 * @param parent
+	 *            The driver whose {@link DriverBody} executes this task.
+	 * @param maxConcurrency
+	 *            The maximum number of children running at once.
+	 */
+	public DriverScope(JasyncDriver parent, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be at least 1");
+		}
+		this.parent = parent;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * Completes the task once the provided number of children have completed,
+	 * cancelling the rest. The results of children that did not complete are
+	 * reported as null. By default (or when set to 0), all children must
+	 * complete.
+	 *
+	 * @return This scope.
+	 */
+	public DriverScope<R> setQuorum(int quorum) {
+		if (quorum < 0) {
+			throw new IllegalArgumentException("quorum must not be negative");
+		}
+		this.quorum = quorum;
+		return this;
+	}
+
+	@Override
+	public void run(List<? extends ChildBody<R>> children, ResultHandler<List<R>> resultHandler) {
+		new ScopeRun(new ArrayList<ChildBody<R>>(children), resultHandler).start();
+	}
+
+	/**
+	 * The state of a single execution of the scope.
+	 */
+	private class ScopeRun implements Runnable {
+		private final List<ChildBody<R>> children;
+		private final ResultHandler<List<R>> resultHandler;
+		private final Object[] results;
+		private final JasyncDriver[] drivers;
+		private final boolean[] completed;
+		private final int required;
+		private int nextChild;
+		private int activeCount;
+		private int completedCount;
+		private boolean finished;
+		private boolean pumping;
+
+		ScopeRun(List<ChildBody<R>> children, ResultHandler<List<R>> resultHandler) {
+			this.children = children;
+			this.resultHandler = resultHandler;
+			this.results = new Object[children.size()];
+			this.drivers = new JasyncDriver[children.size()];
+			this.completed = new boolean[children.size()];
+			this.required = (quorum == 0 || quorum > children.size()) ? children.size() : quorum;
+		}
+
+		void start() {
+			if (required == 0) {
+				resultHandler.reportComplete(Collections.<R>emptyList());
+				return;
+			}
+			parent.addAbandonHook(this);
+			pump();
+		}
+
+		/**
+		 * Invoked when the parent is abandoned.
+		 */
+		@Override
+		public void run() {
+			finish();
+		}
+
+		/**
+		 * Launches children until the concurrency limit is reached. Children
+		 * that complete during launch free their slot for the same loop, so
+		 * the stack never grows with the number of children.
+		 */
+		private void pump() {
+			synchronized (this) {
+				if (pumping) {
+					return;
+				}
+				pumping = true;
+			}
+			while (true) {
+				int index;
+				synchronized (this) {
+					if (finished || activeCount >= maxConcurrency || nextChild >= children.size()) {
+						pumping = false;
+						return;
+					}
+					index = nextChild++;
+					activeCount++;
+				}
+				launch(index);
+			}
+		}
+
+		private void launch(final int index) {
+			final ChildBody<R> child = children.get(index);
+			final Object[] childResult = new Object[1];
+			final JasyncDriver driver = new JasyncDriver(new Runnable() {
+				public void run() {
+					onChildComplete(index, childResult[0]);
+				}
+			})
+				.setDeadline(parent.getDeadline())
+				.setPriority(parent.getPriority())
+				.setResumeExecutor(parent.getResumeExecutor())
+				.setBlockingExecutor(parent.getBlockingExecutor())
+				.setComputeExecutor(parent.getComputeExecutor());
+			driver.addAbandonHook(new Runnable() {
+				public void run() {
+					onChildAbandoned(driver);
+				}
+			});
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				drivers[index] = driver;
+			}
+			final DriverBody body = new DriverBody() {
+				public void run() {
+					childResult[0] = child.run(driver);
+				}
+			};
+			ResumeExecutor resumeExecutor = driver.getResumeExecutor();
+			if (resumeExecutor == null) {
+				driver.execute(body);
+				return;
+			}
+			// Start the child where it will resume (its own event loop, with a
+			// DriverRuntime), rather than on the thread running the parent.
+			resumeExecutor.resume(driver, new Runnable() {
+				public void run() {
+					if (!driver.isCancelled()) {
+						driver.execute(body);
+					}
+				}
+			});
+		}
+
+		private void onChildComplete(int index, Object result) {
+			boolean done;
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				activeCount--;
+				completedCount++;
+				completed[index] = true;
+				results[index] = result;
+				done = completedCount >= required;
+			}
+			if (!done) {
+				pump();
+				return;
+			}
+			if (!finish()) {
+				// A sibling failed meanwhile, and reported it
+				return;
+			}
+			@SuppressWarnings("unchecked")
+			List<R> resultList = (List<R>) Arrays.asList(results.clone());
+			resultHandler.reportComplete(resultList);
+		}
+
+		private void onChildAbandoned(JasyncDriver driver) {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+			}
+			if (!finish()) {
+				return;
+			}
+			Throwable cause = driver.getFailure();
+			if (cause == null) {
+				cause = new CancellationException("Child driver was cancelled");
+			}
+			resultHandler.reportFailure(cause);
+		}
+
+		/**
+		 * Stops launching children and cancels those still running. Returns
+		 * true only to the caller that finished the run, which alone may
+		 * report its outcome.
+		 */
+		private boolean finish() {
+			List<JasyncDriver> running = new ArrayList<>();
+			synchronized (this) {
+				if (finished) {
+					return false;
+				}
+				finished = true;
+				for (int i = 0; i < drivers.length; i++) {
+					if (drivers[i] != null && !completed[i]) {
+						running.add(drivers[i]);
+					}
+				}
+			}
+			parent.removeAbandonHook(this);
+			for (JasyncDriver driver : running) {
+				driver.cancel();
+			}
+			return true;
+		}
+	}
+}
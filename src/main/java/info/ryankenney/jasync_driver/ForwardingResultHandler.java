@@ -0,0 +1,49 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * A {@link ResultHandler} that passes everything on to another
+ * {@link ResultHandler}. Task decorators extend it to observe or intercept
+ * the outcome of the task they wrap, overriding only the methods they care
+ * about.
+ * </p>
+ * 
+ * <p>
+ * Extend this class rather than implementing {@link ResultHandler} directly
+ * when wrapping another handler, so that methods later added to the
+ * interface are forwarded without any change to the wrapper.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <R>
+ *            The type of data reported.
+ */
+public class ForwardingResultHandler<R> implements ResultHandler<R> {
+
+	private final ResultHandler<R> delegate;
+
+	public ForwardingResultHandler(ResultHandler<R> delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void reportComplete(R result) {
+		delegate.reportComplete(result);
+	}
+
+	@Override
+	public void reportComplete() {
+		reportComplete(null);
+	}
+
+	@Override
+	public void reportFailure(Throwable cause) {
+		delegate.reportFailure(cause);
+	}
+
+	@Override
+	public TaskContext getContext() {
+		return delegate.getContext();
+	}
+}
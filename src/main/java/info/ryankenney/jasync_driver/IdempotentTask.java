@@ -0,0 +1,28 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that is safe to start early, or to start and then
+ * discard. This is generally true of idempotent reads, such as fetching a
+ * record from a server.
+ * </p>
+ *
+ * <p>
+ * When a {@link JasyncDriver} has a {@link TaskProfile} attached, it may run
+ * tasks of this type before the {@link DriverBody} actually reaches them, and
+ * hand over the result when it does. If the {@link DriverBody} takes a
+ * different path, the early result is simply dropped.
+ * </p>
+ *
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <R>
+ *            The type returned by the task. Use the {@link Void} type if you
+ *            have no use for a return.
+ */
+public interface IdempotentTask<A,R> extends AsyncTask<A,R> {
+
+}
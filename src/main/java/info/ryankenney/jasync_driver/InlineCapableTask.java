@@ -0,0 +1,30 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that often reports its result before
+ * {@link AsyncTask#run(Object, ResultHandler)} returns, such as a task served
+ * from a cache. When it does, the {@link JasyncDriver} records the result and
+ * carries on through the {@link DriverBody} immediately, rather than
+ * suspending the body and replaying it from the top.
+ * </p>
+ * 
+ * <p>
+ * Since the body is not replayed after such a step, the driver cannot detect
+ * non-local state read by the body changing underneath it at that point (see
+ * {@link UnstableConditionsException}). The usual rules for
+ * {@link DriverBody#run()} still apply.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <R>
+ *            The type returned by the task. Use the {@link Void} type if you
+ *            have no use for a return.
+ */
+public interface InlineCapableTask<A,R> extends AsyncTask<A,R> {
+
+}
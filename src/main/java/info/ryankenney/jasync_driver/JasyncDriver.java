@@ -1,7 +1,14 @@
 package info.ryankenney.jasync_driver;
 
+import info.ryankenney.jasync_driver.TaskProfile.ProfiledStep;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The central class of the jasync-driver library. See <a
@@ -17,6 +24,28 @@ public class JasyncDriver {
 	private DriverBody body;
 	private List<HistoryEntry> historyOfExecutedTasks = new ArrayList<>();
 	int stepInLogicGraph;
+	private TaskProfile taskProfile;
+	private Prefetch prefetch;
+	private volatile boolean cancelled;
+	private RuntimeException failure;
+	private boolean abandoned;
+	private final List<Runnable> abandonHooks = new ArrayList<>();
+	private final List<Runnable> finishHooks = new ArrayList<>();
+	private AtomicLong historyGauge;
+	private int historyCounted;
+	private volatile Deadline deadline;
+	private final TaskContext context = new TaskContext(this);
+	private Priority priority = Priority.NORMAL;
+	private ResumeExecutor resumeExecutor;
+	private Executor blockingExecutor;
+	private Executor computeExecutor;
+	private final Runnable resumption = new Runnable() {
+		public void run() {
+			if (!cancelled) {
+				execute(body);
+			}
+		}
+	};
 
 	/**
 	 * Constructs a driver instance with no final callback.
@@ -36,6 +65,270 @@ public class JasyncDriver {
 		this.onComplete = onComplete;
 	}
 
+	/**
+	 * Attaches a {@link TaskProfile} to this driver. The driver records every
+	 * task it executes into the profile, and uses the profile to start
+	 * {@link IdempotentTask}s early while the preceding {@link AsyncTask} is
+	 * still in flight. Should be called before {@link #execute(DriverBody)}.
+	 * 
+	 * @param taskProfile
+	 *            The profile shared by all drivers running the same
+	 *            {@link DriverBody} logic, or null to disable profiling.
+	 * @return This driver.
+	 */
+	public JasyncDriver setTaskProfile(TaskProfile taskProfile) {
+		this.taskProfile = taskProfile;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Sets the point in time by which the {@link DriverBody} should complete.
+	 * Each {@link AsyncTask} can read the deadline through
+	 * {@link ResultHandler#getContext()}, to pass it on to downstream calls or
+	 * adapt to the remaining budget. Once the deadline has passed, or if a
+	 * {@link TimedTask} could not possibly complete before it, the driver
+	 * throws a {@link DeadlineExceededException} instead of starting the next
+	 * {@link AsyncTask}.
+	 * </p>
+	 * 
+	 * <p>
+	 * Note that the {@link DriverBody} itself should only read the deadline
+	 * through a {@link SyncTask}, since the result changes from one recursive
+	 * execution to the next.
+	 * </p>
+	 * 
+	 * @param deadline
+	 *            The deadline, or null for none.
+	 * @return This driver.
+	 */
+	public JasyncDriver setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	/**
+	 * Returns the deadline set by {@link #setDeadline(Deadline)}, or null if
+	 * there is none.
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Sets the scheduling class of this driver, used by a
+	 * {@link ResumeExecutor} such as {@link ResumeDispatcher} to order the
+	 * resumptions of many drivers. Defaults to {@link Priority#NORMAL}.
+	 * 
+	 * @return This driver.
+	 */
+	public JasyncDriver setPriority(Priority priority) {
+		this.priority = priority;
+		return this;
+	}
+
+	/**
+	 * Returns the scheduling class of this driver.
+	 */
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets where and when this driver resumes its {@link DriverBody} after an
+	 * {@link AsyncTask} reports its result. By default (or when set to null)
+	 * the body resumes immediately, on whatever thread reported the result.
+	 * 
+	 * @return This driver.
+	 */
+	public JasyncDriver setResumeExecutor(ResumeExecutor resumeExecutor) {
+		this.resumeExecutor = resumeExecutor;
+		return this;
+	}
+
+	/**
+	 * Returns the {@link ResumeExecutor} of this driver, or null if it has
+	 * none.
+	 */
+	public ResumeExecutor getResumeExecutor() {
+		return resumeExecutor;
+	}
+
+	/**
+	 * Sets where this driver runs {@link BlockingSyncTask}s. By default (or
+	 * when set to null) they run on a pool of threads shared by all drivers,
+	 * which grows as needed.
+	 * 
+	 * @return This driver.
+	 */
+	public JasyncDriver setBlockingExecutor(Executor blockingExecutor) {
+		this.blockingExecutor = blockingExecutor;
+		return this;
+	}
+
+	/**
+	 * Returns the executor set by {@link #setBlockingExecutor(Executor)}, or
+	 * null if there is none.
+	 */
+	public Executor getBlockingExecutor() {
+		return blockingExecutor;
+	}
+
+	/**
+	 * Sets where this driver runs {@link ComputeSyncTask}s. By default (or
+	 * when set to null) they run on a {@link java.util.concurrent.ForkJoinPool}
+	 * with one thread per core, shared by all drivers.
+	 * 
+	 * @return This driver.
+	 */
+	public JasyncDriver setComputeExecutor(Executor computeExecutor) {
+		this.computeExecutor = computeExecutor;
+		return this;
+	}
+
+	/**
+	 * Returns the executor set by {@link #setComputeExecutor(Executor)}, or
+	 * null if there is none.
+	 */
+	public Executor getComputeExecutor() {
+		return computeExecutor;
+	}
+
+	/**
+	 * <p>
+	 * Cancels this driver. Any {@link AsyncTask} still in flight is left to
+	 * finish, but its result is ignored, the {@link DriverBody} is never
+	 * resumed and the final callback is never executed. Any {@link DriverScope}
+	 * in flight on behalf of this driver cancels its children.
+	 * </p>
+	 * 
+	 * <p>
+	 * A cancelled driver cannot be reused.
+	 * </p>
+	 */
+	public void cancel() {
+		cancelled = true;
+		abandon();
+	}
+
+	/**
+	 * Returns true if {@link #cancel()} has been called on this driver.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the exception that ended the {@link DriverBody}, or null if it
+	 * has not failed.
+	 */
+	RuntimeException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Registers an action to run when this driver is cancelled or its
+	 * {@link DriverBody} fails with an exception. If that has already
+	 * happened, the action runs immediately.
+	 */
+	void addAbandonHook(Runnable hook) {
+		synchronized (abandonHooks) {
+			if (!abandoned) {
+				abandonHooks.add(hook);
+				return;
+			}
+		}
+		hook.run();
+	}
+
+	/**
+	 * Removes an action registered with {@link #addAbandonHook(Runnable)}.
+	 */
+	void removeAbandonHook(Runnable hook) {
+		synchronized (abandonHooks) {
+			abandonHooks.remove(hook);
+		}
+	}
+
+	private void abandon() {
+		List<Runnable> hooks;
+		synchronized (abandonHooks) {
+			if (abandoned) {
+				return;
+			}
+			abandoned = true;
+			hooks = new ArrayList<>(abandonHooks);
+			abandonHooks.clear();
+		}
+		for (Runnable hook : hooks) {
+			hook.run();
+		}
+		finish();
+	}
+
+	/**
+	 * Registers an action to run once, when the current run of this driver
+	 * ends, whether it completed (just before the final callback), failed or
+	 * was cancelled.
+	 */
+	void addFinishHook(Runnable hook) {
+		synchronized (finishHooks) {
+			finishHooks.add(hook);
+		}
+	}
+
+	private void finish() {
+		releaseHistory();
+		List<Runnable> hooks;
+		synchronized (finishHooks) {
+			hooks = new ArrayList<>(finishHooks);
+			finishHooks.clear();
+		}
+		for (Runnable hook : hooks) {
+			hook.run();
+		}
+	}
+
+	/**
+	 * Returns the number of {@link Task} results currently held in the history
+	 * of this driver.
+	 */
+	public int getHistorySize() {
+		return historyOfExecutedTasks.size();
+	}
+
+	/**
+	 * Keeps the provided counter up to date with the number of entries in the
+	 * history of this driver, until the current run ends.
+	 */
+	void setHistoryGauge(AtomicLong historyGauge) {
+		synchronized (finishHooks) {
+			this.historyGauge = historyGauge;
+		}
+	}
+
+	private void addHistory(HistoryEntry entry) {
+		historyOfExecutedTasks.add(entry);
+		if (historyGauge != null) {
+			synchronized (finishHooks) {
+				if (historyGauge != null) {
+					historyGauge.incrementAndGet();
+					historyCounted++;
+				}
+			}
+		}
+	}
+
+	private void releaseHistory() {
+		synchronized (finishHooks) {
+			if (historyGauge != null) {
+				historyGauge.addAndGet(-historyCounted);
+				historyGauge = null;
+				historyCounted = 0;
+			}
+		}
+	}
+
 	/**
 	 * Executes the asynchronous/synchronous logic defined within the provided
 	 * {@link DriverBody}. Note that this method will return as soon as the
@@ -60,15 +353,26 @@ public class JasyncDriver {
 		stepInLogicGraph = 0;
 		try {
 			driverBody.run();
+			// Any prefetch still outstanding was never reached.
+			discardPrefetch();
 			// Reset for possible reuse.
 			body = null;
 			historyOfExecutedTasks = new ArrayList<>();
+			finish();
 			// The body completed. Execute any on-complete callback and return.
 			if (onComplete != null) {
 				onComplete.run();
 			}
 		} catch (JasyncActionSubmittedInterrupt a) {
 			// OK. Suspend the logic until the async's callback wakes us back up.
+		} catch (RuntimeException e) {
+			// The body failed and will never complete. Tear down anything
+			// started on its behalf before reporting the failure.
+			if (failure == null) {
+				failure = e;
+			}
+			abandon();
+			throw e;
 		}
 	}
 
@@ -145,47 +449,397 @@ public class JasyncDriver {
 	 */
 	public <A,R> R execute(final Task<A,R> task, final A arg) throws UnstableConditionsException {
 		if (stepInLogicGraph < historyOfExecutedTasks.size()) {
-			HistoryEntry previousTaskExecution = historyOfExecutedTasks.get(stepInLogicGraph);
-			if (task != previousTaskExecution.task) {
-				throw new UnstableConditionsException(String.format(
-						"Task #%s in the execution path differs from the execution history", stepInLogicGraph+1));
-			}
-			stepInLogicGraph++;
 			@SuppressWarnings("unchecked")
-			R result = (R) previousTaskExecution.result;
+			R result = (R) replay(task);
 			return result;
 		}
+		if (task instanceof StreamingTask) {
+			throw new IllegalArgumentException("StreamingTasks must be executed with forEachStreamed()");
+		}
+		if (taskProfile != null) {
+			taskProfile.record(stepInLogicGraph, task, arg);
+			Prefetch early = prefetch;
+			prefetch = null;
+			if (early != null) {
+				if (early.step.matches(task, arg) && !early.isFailed()) {
+					taskProfile.countHit();
+					return takePrefetchedResult(early, task);
+				}
+				taskProfile.countMiss();
+			}
+		}
 		if (task instanceof AsyncTask) {
 			AsyncTask<A,R> asyncTask = ((AsyncTask<A,R>) task);
-			asyncTask.run(arg, new ResultHandler<R>() {
-				@Override
-				public void reportComplete(R result) {
-					historyOfExecutedTasks.add(new HistoryEntry(task, result));
-					execute(body);
-				}
-				@Override
-				public void reportComplete() {
-					historyOfExecutedTasks.add(new HistoryEntry(task, null));
-					execute(body);
-				}
-			});
-			throw new JasyncActionSubmittedInterrupt();
+			checkDeadline(asyncTask);
+			startPrefetch(stepInLogicGraph+1);
+			StepResultHandler<R> resultHandler = new StepResultHandler<>(task, task instanceof InlineCapableTask);
+			asyncTask.run(arg, resultHandler);
+			return takeInlineResult(resultHandler);
+		} else if (task instanceof BlockingSyncTask || task instanceof ComputeSyncTask) {
+			checkDeadline(task);
+			return takeInlineResult(offload((SyncTask<A,R>) task, arg));
 		} else {
 			SyncTask<A,R> syncTask = ((SyncTask<A,R>) task);
 			R result = syncTask.run(arg);
 			stepInLogicGraph++;
-			historyOfExecutedTasks.add(new HistoryEntry(task, result));
+			addHistory(new HistoryEntry(task, result));
 			return result;
 		}
 	}
+
+	/**
+	 * <p>Consumes the stream of the provided {@link StreamingTask}, executing
+	 * the consumer {@link AsyncTask}/{@link SyncTask} once per item, in order,
+	 * as the items arrive. The next item is only requested once the consumer
+	 * is done with the previous one, so only one item is held at a time.</p>
+	 * 
+	 * <p>The whole stream counts as a single {@link Task} in the execution
+	 * path of the {@link DriverBody}: the body is suspended until the stream
+	 * ends, and only the number of items consumed is kept in the history. The
+	 * consumer runs outside the body, on whatever thread reports the items,
+	 * and its results are discarded. If the stream or the consumer fails,
+	 * this method throws a {@link TaskFailedException}.</p>
+	 * 
+	 * @param <A>
+	 *            The type of argument that the {@link StreamingTask} accepts.
+	 * @param <T>
+	 *            The type of item streamed.
+	 * @param task
+	 *            The stream to consume.
+	 * @param arg
+	 *            The argument to pass to the task.
+	 * @param consumer
+	 *            Handles each item.
+	 * @return The number of items consumed.
+	 * 
+	 * @throws UnstableConditionsException
+	 *             If the execution path through {@link DriverBody#run()}
+	 *             changes, as for {@link #execute(Task, Object)}.
+	 */
+	public <A,T> long forEachStreamed(StreamingTask<A,T> task, A arg, Task<T,?> consumer)
+			throws UnstableConditionsException {
+		if (stepInLogicGraph < historyOfExecutedTasks.size()) {
+			return (Long) replay(task);
+		}
+		if (taskProfile != null) {
+			taskProfile.record(stepInLogicGraph, task, arg);
+			discardPrefetch();
+		}
+		checkDeadline(task);
+		StepResultHandler<Long> resultHandler = new StepResultHandler<>(task, true);
+		new StreamRun<>(this, consumer, resultHandler).start(task, arg);
+		return takeInlineResult(resultHandler);
+	}
+
+	/**
+	 * Returns the recorded result of the task at the current step of the
+	 * execution path, after checking that the {@link DriverBody} took the
+	 * same path as before.
+	 */
+	private Object replay(Task<?,?> task) {
+		HistoryEntry previousTaskExecution = historyOfExecutedTasks.get(stepInLogicGraph);
+		if (task != previousTaskExecution.task) {
+			throw new UnstableConditionsException(String.format(
+					"Task #%s in the execution path differs from the execution history", stepInLogicGraph+1));
+		}
+		if (previousTaskExecution.failure != null) {
+			throw new TaskFailedException(String.format(
+					"Task #%s in the execution path failed", stepInLogicGraph+1), previousTaskExecution.failure);
+		}
+		stepInLogicGraph++;
+		return previousTaskExecution.result;
+	}
+
+	/**
+	 * Fails fast if the provided task cannot complete before the deadline.
+	 */
+	private void checkDeadline(Task<?,?> task) {
+		Deadline deadline = this.deadline;
+		if (deadline == null) {
+			return;
+		}
+		long remainingNanos = deadline.timeRemaining(TimeUnit.NANOSECONDS);
+		if (remainingNanos <= 0) {
+			throw new DeadlineExceededException(String.format(
+					"Deadline passed before task #%s in the execution path", stepInLogicGraph+1));
+		}
+		if (task instanceof TimedTask
+				&& ((TimedTask<?,?>) task).getMinimumDuration(TimeUnit.NANOSECONDS) > remainingNanos) {
+			throw new DeadlineExceededException(String.format(
+					"Task #%s in the execution path cannot complete before the deadline", stepInLogicGraph+1));
+		}
+	}
+
+	/**
+	 * Runs a {@link BlockingSyncTask} or {@link ComputeSyncTask} on its
+	 * executor, reporting the outcome as if it were an {@link AsyncTask}.
+	 */
+	private <A,R> StepResultHandler<R> offload(final SyncTask<A,R> task, final A arg) {
+		Executor executor;
+		if (task instanceof BlockingSyncTask) {
+			executor = blockingExecutor != null ? blockingExecutor : OffloadExecutors.blocking();
+		} else {
+			executor = computeExecutor != null ? computeExecutor : OffloadExecutors.compute();
+		}
+		final StepResultHandler<R> resultHandler = new StepResultHandler<>(task, true);
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					R result;
+					try {
+						result = task.run(arg);
+					} catch (Throwable e) {
+						// Errors too, or the body would wait forever
+						resultHandler.reportFailure(e);
+						return;
+					}
+					resultHandler.reportComplete(result);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			resultHandler.reportFailure(e);
+		}
+		return resultHandler;
+	}
+
+	/**
+	 * Suspends the {@link DriverBody} until the task of the provided handler
+	 * reports its result, or if the task already reported it before returning
+	 * (a cache hit, for instance), records it and carries on without a
+	 * suspension and replay.
+	 */
+	private <R> R takeInlineResult(StepResultHandler<R> resultHandler) {
+		if (resultHandler.suspend()) {
+			throw new JasyncActionSubmittedInterrupt();
+		}
+		stepInLogicGraph++;
+		if (resultHandler.failure != null) {
+			addHistory(HistoryEntry.failed(resultHandler.task, resultHandler.failure));
+			throw new TaskFailedException(String.format(
+					"Task #%s in the execution path failed", stepInLogicGraph), resultHandler.failure);
+		}
+		addHistory(new HistoryEntry(resultHandler.task, resultHandler.result));
+		return resultHandler.result;
+	}
+
+	/**
+	 * Creates the callback that records the result of the provided task and
+	 * wakes the {@link DriverBody} back up.
+	 */
+	private <R> ResultHandler<R> createResultHandler(Task<?,R> task) {
+		return new StepResultHandler<>(task, false);
+	}
+
+	/**
+	 * Re-executes the {@link DriverBody}, through the {@link ResumeExecutor}
+	 * if there is one.
+	 */
+	private void resume() {
+		ResumeExecutor resumeExecutor = this.resumeExecutor;
+		if (resumeExecutor == null) {
+			execute(body);
+		} else {
+			resumeExecutor.resume(this, resumption);
+		}
+	}
+
+	/**
+	 * Starts the task the profile predicts for the provided step, if it is
+	 * safe to start early.
+	 */
+	private void startPrefetch(int step) {
+		if (taskProfile == null || prefetch != null) {
+			return;
+		}
+		ProfiledStep predicted = taskProfile.predict(step);
+		if (predicted == null || !(predicted.task instanceof IdempotentTask)) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		IdempotentTask<Object,Object> idempotentTask = (IdempotentTask<Object,Object>) predicted.task;
+		prefetch = new Prefetch(predicted);
+		taskProfile.countPrefetch();
+		idempotentTask.run(predicted.arg, prefetch);
+	}
+
+	/**
+	 * Hands the result of a prefetch over to the {@link DriverBody}, either
+	 * immediately (if it has already arrived) or by suspending until it does.
+	 */
+	private <R> R takePrefetchedResult(Prefetch early, Task<?,R> task) {
+		@SuppressWarnings("unchecked")
+		ResultHandler<Object> resultHandler = (ResultHandler<Object>) createResultHandler(task);
+		if (early.handOff(resultHandler)) {
+			throw new JasyncActionSubmittedInterrupt();
+		}
+		stepInLogicGraph++;
+		addHistory(new HistoryEntry(task, early.result));
+		@SuppressWarnings("unchecked")
+		R result = (R) early.result;
+		return result;
+	}
+
+	private void discardPrefetch() {
+		if (prefetch != null) {
+			taskProfile.countMiss();
+			prefetch = null;
+		}
+	}
+
+	/**
+	 * An {@link IdempotentTask} started ahead of the {@link DriverBody}. The
+	 * result may arrive before or after the body reaches the task, so the
+	 * hand-off between the two is synchronized.
+	 */
+	private class Prefetch implements ResultHandler<Object> {
+		private final ProfiledStep step;
+		private boolean complete;
+		private Object result;
+		private Throwable failure;
+		private ResultHandler<Object> waiter;
+
+		Prefetch(ProfiledStep step) {
+			this.step = step;
+		}
+
+		@Override
+		public void reportComplete(Object result) {
+			ResultHandler<Object> waiter;
+			synchronized (this) {
+				this.complete = true;
+				this.result = result;
+				waiter = this.waiter;
+			}
+			if (waiter != null) {
+				waiter.reportComplete(result);
+			}
+		}
+
+		@Override
+		public void reportComplete() {
+			reportComplete(null);
+		}
+
+		@Override
+		public void reportFailure(Throwable cause) {
+			ResultHandler<Object> waiter;
+			synchronized (this) {
+				this.complete = true;
+				this.failure = cause;
+				waiter = this.waiter;
+			}
+			if (waiter != null) {
+				waiter.reportFailure(cause);
+			}
+		}
+
+		@Override
+		public TaskContext getContext() {
+			return context;
+		}
+
+		synchronized boolean isFailed() {
+			return failure != null;
+		}
+
+		/**
+		 * Registers the handler to be called when the result arrives. Returns
+		 * false, without registering, if the result has already arrived.
+		 */
+		synchronized boolean handOff(ResultHandler<Object> waiter) {
+			if (complete) {
+				return false;
+			}
+			this.waiter = waiter;
+			return true;
+		}
+	}
 	
+	/**
+	 * The callback handed to a task for a single step of the
+	 * {@link DriverBody}. A handler created for an inline run holds on to a
+	 * result reported before the task returns, for
+	 * {@link JasyncDriver#takeInlineResult(StepResultHandler)} to pick up.
+	 * Otherwise, it records the result and resumes the body.
+	 */
+	private class StepResultHandler<R> implements ResultHandler<R> {
+		private static final int RUNNING = 0;
+		private static final int SUSPENDED = 1;
+		private static final int COMPLETED_INLINE = 2;
+
+		private final Task<?,R> task;
+		private final AtomicInteger state;
+		private R result;
+		private Throwable failure;
+
+		StepResultHandler(Task<?,R> task, boolean inline) {
+			this.task = task;
+			this.state = new AtomicInteger(inline ? RUNNING : SUSPENDED);
+		}
+
+		/**
+		 * Marks the step as suspended, returning false if the result has
+		 * already been reported inline.
+		 */
+		boolean suspend() {
+			return state.compareAndSet(RUNNING, SUSPENDED) || state.get() == SUSPENDED;
+		}
+
+		@Override
+		public void reportComplete(R result) {
+			if (cancelled) {
+				return;
+			}
+			if (state.get() == RUNNING) {
+				this.result = result;
+				if (state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+					return;
+				}
+			}
+			addHistory(new HistoryEntry(task, result));
+			resume();
+		}
+
+		@Override
+		public void reportComplete() {
+			reportComplete(null);
+		}
+
+		@Override
+		public void reportFailure(Throwable cause) {
+			if (cancelled) {
+				return;
+			}
+			if (state.get() == RUNNING) {
+				this.failure = cause;
+				if (state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+					return;
+				}
+			}
+			addHistory(HistoryEntry.failed(task, cause));
+			resume();
+		}
+
+		@Override
+		public TaskContext getContext() {
+			return context;
+		}
+	}
+
 	private static class HistoryEntry {
 		private Task<?,?> task;
 		private Object result;
+		private Throwable failure;
 
 		HistoryEntry(Task<?,?> task, Object result) {
 			this.task = task;
 			this.result = result;
 		}
+
+		static HistoryEntry failed(Task<?,?> task, Throwable failure) {
+			HistoryEntry entry = new HistoryEntry(task, null);
+			entry.failure = failure;
+			return entry;
+		}
 	}
 }
\ No newline at end of file
@@ -6,4 +6,8 @@ public class JasyncDriverException extends RuntimeException {
 	public JasyncDriverException(String message) {
 		super(message);
 	}
+
+	public JasyncDriverException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
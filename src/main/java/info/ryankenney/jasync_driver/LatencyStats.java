@@ -0,0 +1,85 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A thread-safe, fixed-size record of observed durations. Durations are
+ * counted in power-of-two buckets, so percentiles are approximate (within a
+ * factor of two), but recording never allocates or locks.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class LatencyStats {
+
+	private static final int BUCKET_COUNT = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a single observed duration.
+	 */
+	public void record(long duration, TimeUnit unit) {
+		long nanos = Math.max(0, unit.toNanos(duration));
+		// Bucket i holds durations within [2^i, 2^(i+1))
+		buckets.incrementAndGet(nanos == 0 ? 0 : BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Returns the number of durations recorded.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the mean of the durations recorded, in the provided unit.
+	 */
+	public long getMean(TimeUnit unit) {
+		long n = count.get();
+		return n == 0 ? 0 : unit.convert(totalNanos.get() / n, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the longest duration recorded, in the provided unit.
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns an upper bound of the provided percentile of the durations
+	 * recorded, in the provided unit.
+	 * 
+	 * @param percentile
+	 *            The percentile, such as 99.0 or 99.9.
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold) {
+				long upperBound = i >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+				return unit.convert(Math.min(upperBound, maxNanos.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return getMax(unit);
+	}
+}
@@ -0,0 +1,74 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * An unbounded, lock-free, multi-producer/single-consumer FIFO queue (after
+ * Dmitry Vyukov's intrusive MPSC node queue). Any thread may {@link #offer},
+ * but only one thread at a time may {@link #poll}.
+ * </p>
+ * 
+ * <p>
+ * A producer links its node in two steps, so {@link #poll()} can briefly
+ * report an empty queue while an offer is in progress. Callers that park the
+ * consumer must therefore have producers wake it after offering.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <T>
+ *            The type of element queued.
+ */
+class MpscQueue<T> {
+
+	private final AtomicReference<Node<T>> tail;
+	private Node<T> head;
+
+	MpscQueue() {
+		Node<T> stub = new Node<>(null);
+		head = stub;
+		tail = new AtomicReference<>(stub);
+	}
+
+	/**
+	 * Adds an element to the end of the queue. Safe to call from any thread.
+	 */
+	void offer(T value) {
+		Node<T> node = new Node<>(value);
+		Node<T> previous = tail.getAndSet(node);
+		previous.next = node;
+	}
+
+	/**
+	 * Removes and returns the element at the front of the queue, or null if
+	 * there is none. Must only be called by the consumer thread.
+	 */
+	T poll() {
+		Node<T> next = head.next;
+		if (next == null) {
+			return null;
+		}
+		head = next;
+		T value = next.value;
+		next.value = null;
+		return value;
+	}
+
+	/**
+	 * Returns true if {@link #poll()} would return null. Must only be called by
+	 * the consumer thread.
+	 */
+	boolean isEmpty() {
+		return head.next == null;
+	}
+
+	private static class Node<T> {
+		private T value;
+		private volatile Node<T> next;
+
+		Node(T value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executors, shared by all {@link JasyncDriver}s, on which
+ * {@link BlockingSyncTask}s and {@link ComputeSyncTask}s run. Each is created
+ * on first use.
+ * 
+ * @author rkenney
+ */
+class OffloadExecutors {
+
+	/**
+	 * Returns an unbounded pool of daemon threads, created on demand and
+	 * retired after a minute idle, so a blocked task never holds up another.
+	 */
+	static Executor blocking() {
+		return BlockingHolder.INSTANCE;
+	}
+
+	/**
+	 * Returns a {@link ForkJoinPool} with one thread per core.
+	 */
+	static Executor compute() {
+		return ComputeHolder.INSTANCE;
+	}
+
+	private static class BlockingHolder {
+		static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "jasync-driver-blocking-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	private static class ComputeHolder {
+		static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,29 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * The scheduling class of a {@link JasyncDriver}. When resumptions of many
+ * drivers compete for the same threads (see {@link ResumeDispatcher}), drivers
+ * of a higher class are resumed first.
+ * 
+ * @author rkenney
+ */
+public enum Priority {
+
+	/**
+	 * For drivers that a user is actively waiting on, such as those started
+	 * by a click.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * The default class.
+	 */
+	NORMAL,
+
+	/**
+	 * For bulk background work, which should only use threads that higher
+	 * classes leave idle.
+	 */
+	BATCH
+
+}
@@ -1,8 +1,19 @@
 package info.ryankenney.jasync_driver;
 
 /**
+ * <p>
  * A callback that handles the result of an asynchronous action. Asynchronous
- * actions should call one of the two provided methods to indicate completion.
+ * actions should call one of the provided report methods (exactly once) to
+ * indicate completion.
+ * </p>
+ * 
+ * <p>
+ * Most code only calls a handler, which {@link JasyncDriver} provides. Code
+ * that implements one to wrap another handler (to observe or intercept the
+ * outcome of a task) should extend {@link ForwardingResultHandler}, so that
+ * methods added to this interface, such as {@link #reportFailure(Throwable)}
+ * and {@link #getContext()}, are forwarded rather than breaking the build.
+ * </p>
  * 
  * @author rkenney
  *
@@ -26,4 +37,20 @@ public interface ResultHandler<R> {
 	 * {@link Void}.
 	 */
 	void reportComplete();
+
+	/**
+	 * Called when an asynchronous action has failed. When the
+	 * {@link DriverBody} reaches the failed task, {@link JasyncDriver} throws a
+	 * {@link TaskFailedException} with the provided cause, ending the body.
+	 * 
+	 * @param cause
+	 *            The reason for the failure.
+	 */
+	void reportFailure(Throwable cause);
+
+	/**
+	 * Returns information about the driver run on whose behalf the action is
+	 * executing, such as its {@link Deadline}.
+	 */
+	TaskContext getContext();
 }
@@ -0,0 +1,159 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A {@link ResumeExecutor} that queues the resumptions of many drivers and
+ * runs them on a shared {@link Executor}, highest {@link Priority} first. Use
+ * it to keep interactive drivers responsive while batch drivers share the
+ * same threads:
+ * </p>
+ * 
+ * <pre>
+ * ResumeDispatcher dispatcher = new ResumeDispatcher(callbackThreads);
+ * new JasyncDriver(onComplete)
+ *     .setPriority(Priority.INTERACTIVE)
+ *     .setResumeExecutor(dispatcher)
+ *     .execute(body);
+ * </pre>
+ * 
+ * <p>
+ * To protect lower classes from starvation, a resumption that has waited
+ * longer than the configured maximum is run ahead of higher classes. The time
+ * each resumption spends queued is recorded per class.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class ResumeDispatcher implements ResumeExecutor {
+
+	private final Executor executor;
+	private final long maxWaitNanos;
+	private final List<Queue<QueuedResumption>> queues = new ArrayList<>();
+	private final List<AtomicInteger> queueDepths = new ArrayList<>();
+	private final List<LatencyStats> queueTimes = new ArrayList<>();
+	private final Runnable runNext = new Runnable() {
+		public void run() {
+			QueuedResumption next = poll();
+			if (next != null) {
+				next.resumption.run();
+			}
+		}
+	};
+
+	/**
+	 * Constructs a dispatcher that runs a lower class ahead of higher classes
+	 * once it has waited 100 milliseconds.
+	 * 
+	 * @param executor
+	 *            The threads on which drivers are resumed.
+	 */
+	public ResumeDispatcher(Executor executor) {
+		this(executor, 100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructs a dispatcher with a custom starvation threshold.
+	 * 
+	 * @param executor
+	 *            The threads on which drivers are resumed.
+	 * @param maxWait
+	 *            How long a resumption may wait before it is run ahead of
+	 *            higher classes.
+	 * @param unit
+	 *            The unit of maxWait.
+	 */
+	public ResumeDispatcher(Executor executor, long maxWait, TimeUnit unit) {
+		this.executor = executor;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+		for (int i = 0; i < Priority.values().length; i++) {
+			queues.add(new ConcurrentLinkedQueue<QueuedResumption>());
+			queueDepths.add(new AtomicInteger());
+			queueTimes.add(new LatencyStats());
+		}
+	}
+
+	@Override
+	public void resume(JasyncDriver driver, Runnable resumption) {
+		int priority = driver.getPriority().ordinal();
+		queueDepths.get(priority).incrementAndGet();
+		queues.get(priority).add(new QueuedResumption(resumption, priority, System.nanoTime()));
+		// Each resumption submits one request to run "the next" resumption,
+		// which is chosen when a thread is actually available.
+		executor.execute(runNext);
+	}
+
+	/**
+	 * Returns the number of resumptions of the provided class waiting to run.
+	 */
+	public int getQueueDepth(Priority priority) {
+		return queueDepths.get(priority.ordinal()).get();
+	}
+
+	/**
+	 * Returns the time spent queued by resumptions of the provided class.
+	 */
+	public LatencyStats getQueueTimeStats(Priority priority) {
+		return queueTimes.get(priority.ordinal());
+	}
+
+	private QueuedResumption poll() {
+		while (true) {
+			Queue<QueuedResumption> queue = selectQueue(System.nanoTime());
+			if (queue == null) {
+				return null;
+			}
+			QueuedResumption next = queue.poll();
+			if (next != null) {
+				queueDepths.get(next.priority).decrementAndGet();
+				queueTimes.get(next.priority).record(System.nanoTime() - next.enqueuedNanos, TimeUnit.NANOSECONDS);
+				return next;
+			}
+			// Another thread took it first. Choose again.
+		}
+	}
+
+	/**
+	 * Returns the queue holding the longest-starved resumption, if any has
+	 * waited beyond the limit, or else the highest-priority non-empty queue.
+	 */
+	private Queue<QueuedResumption> selectQueue(long now) {
+		Queue<QueuedResumption> highest = null;
+		Queue<QueuedResumption> starved = null;
+		long longestWait = maxWaitNanos;
+		for (Queue<QueuedResumption> queue : queues) {
+			QueuedResumption head = queue.peek();
+			if (head == null) {
+				continue;
+			}
+			if (highest == null) {
+				highest = queue;
+			}
+			long wait = now - head.enqueuedNanos;
+			if (wait > longestWait) {
+				longestWait = wait;
+				starved = queue;
+			}
+		}
+		return starved != null ? starved : highest;
+	}
+
+	private static class QueuedResumption {
+		final Runnable resumption;
+		final int priority;
+		final long enqueuedNanos;
+
+		QueuedResumption(Runnable resumption, int priority, long enqueuedNanos) {
+			this.resumption = resumption;
+			this.priority = priority;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+}
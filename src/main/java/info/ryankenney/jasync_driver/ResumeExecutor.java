@@ -0,0 +1,23 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * Decides where and when a {@link JasyncDriver} resumes its
+ * {@link DriverBody} after an {@link AsyncTask} reports its result. Without
+ * one, the body resumes immediately, on whatever thread called the
+ * {@link ResultHandler}.
+ * 
+ * @author rkenney
+ */
+public interface ResumeExecutor {
+
+	/**
+	 * Arranges for the provided resumption to be run, exactly once.
+	 * 
+	 * @param driver
+	 *            The driver being resumed.
+	 * @param resumption
+	 *            Re-executes the {@link DriverBody} of the driver.
+	 */
+	void resume(JasyncDriver driver, Runnable resumption);
+
+}
@@ -0,0 +1,39 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * A callback that receives the items of a stream opened by a
+ * {@link StreamingTask}. The stream should call {@link #reportNext(Object)}
+ * once per item requested, then exactly one of {@link #reportEnd()} or
+ * {@link #reportFailure(Throwable)}.
+ * 
+ * @author rkenney
+ *
+ * @param <T>
+ *            The type of item reported.
+ */
+public interface StreamHandler<T> {
+
+	/**
+	 * Called with the next item of the stream.
+	 */
+	void reportNext(T item);
+
+	/**
+	 * Called once the stream has reported all of its items.
+	 */
+	void reportEnd();
+
+	/**
+	 * Called when the stream has failed. When the {@link DriverBody} reaches
+	 * the stream, {@link JasyncDriver} throws a {@link TaskFailedException} with
+	 * the provided cause.
+	 */
+	void reportFailure(Throwable cause);
+
+	/**
+	 * Returns information about the driver run on whose behalf the stream is
+	 * executing, such as its {@link Deadline}.
+	 */
+	TaskContext getContext();
+
+}
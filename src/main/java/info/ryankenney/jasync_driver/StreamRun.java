@@ -0,0 +1,156 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a single consumption of a {@link StreamingTask}. Items are
+ * requested one at a time, and the next is only requested once the consumer
+ * {@link Task} is done with the previous one. Streams that report items inline
+ * from {@link StreamSubscription#request(long)} are looped over rather than
+ * recursed into, so the stack never grows with the number of items. The end
+ * of the stream is only reported once the consumer is done with every item,
+ * so the count reported is final even when an {@link AsyncTask} consumer is
+ * still working on the last item when the stream ends.
+ * 
+ * @author rkenney
+ *
+ * @param <T>
+ *            The type of item streamed.
+ */
+class StreamRun<T> implements StreamHandler<T>, Runnable {
+
+	private final JasyncDriver driver;
+	private final Task<T,?> consumer;
+	private final ResultHandler<Long> resultHandler;
+	private final AtomicInteger demandClaims = new AtomicInteger();
+	private final AtomicBoolean ended = new AtomicBoolean();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong consumedCount = new AtomicLong();
+	private volatile boolean endReported;
+	private volatile StreamSubscription subscription;
+
+	StreamRun(JasyncDriver driver, Task<T,?> consumer, ResultHandler<Long> resultHandler) {
+		this.driver = driver;
+		this.consumer = consumer;
+		this.resultHandler = resultHandler;
+	}
+
+	<A> void start(StreamingTask<A,T> task, A arg) {
+		driver.addAbandonHook(this);
+		subscription = task.open(arg, this);
+		requestNext();
+	}
+
+	/**
+	 * Invoked when the driver is abandoned.
+	 */
+	@Override
+	public void run() {
+		if (end()) {
+			subscription.cancel();
+		}
+	}
+
+	@Override
+	public void reportNext(T item) {
+		if (ended.get()) {
+			return;
+		}
+		inFlight.incrementAndGet();
+		if (consumer instanceof AsyncTask) {
+			@SuppressWarnings("unchecked")
+			AsyncTask<T,Object> asyncConsumer = (AsyncTask<T,Object>) consumer;
+			asyncConsumer.run(item, new ResultHandler<Object>() {
+				@Override
+				public void reportComplete(Object result) {
+					itemConsumed();
+				}
+				@Override
+				public void reportComplete() {
+					itemConsumed();
+				}
+				@Override
+				public void reportFailure(Throwable cause) {
+					consumerFailed(cause);
+				}
+				@Override
+				public TaskContext getContext() {
+					return resultHandler.getContext();
+				}
+			});
+		} else {
+			try {
+				((SyncTask<T,?>) consumer).run(item);
+			} catch (RuntimeException e) {
+				consumerFailed(e);
+				return;
+			}
+			itemConsumed();
+		}
+	}
+
+	@Override
+	public void reportEnd() {
+		endReported = true;
+		if (inFlight.get() == 0) {
+			complete();
+		}
+	}
+
+	@Override
+	public void reportFailure(Throwable cause) {
+		if (end()) {
+			resultHandler.reportFailure(cause);
+		}
+	}
+
+	@Override
+	public TaskContext getContext() {
+		return resultHandler.getContext();
+	}
+
+	private void itemConsumed() {
+		consumedCount.incrementAndGet();
+		// Whichever of this and reportEnd() comes last completes the run
+		if (inFlight.decrementAndGet() == 0 && endReported) {
+			complete();
+			return;
+		}
+		requestNext();
+	}
+
+	private void complete() {
+		if (end()) {
+			resultHandler.reportComplete(consumedCount.get());
+		}
+	}
+
+	private void consumerFailed(Throwable cause) {
+		if (end()) {
+			subscription.cancel();
+			resultHandler.reportFailure(cause);
+		}
+	}
+
+	private boolean end() {
+		if (!ended.compareAndSet(false, true)) {
+			return false;
+		}
+		driver.removeAbandonHook(this);
+		return true;
+	}
+
+	private void requestNext() {
+		if (demandClaims.getAndIncrement() != 0) {
+			return;
+		}
+		do {
+			if (ended.get()) {
+				return;
+			}
+			subscription.request(1);
+		} while (demandClaims.decrementAndGet() != 0);
+	}
+}
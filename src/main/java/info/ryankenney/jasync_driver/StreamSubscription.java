@@ -0,0 +1,22 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * The consumer's side of a stream opened by a {@link StreamingTask}.
+ * 
+ * @author rkenney
+ */
+public interface StreamSubscription {
+
+	/**
+	 * Allows the stream to report up to the provided number of further items.
+	 * May be called from within {@link StreamHandler#reportNext(Object)}.
+	 */
+	void request(long count);
+
+	/**
+	 * Asks the stream to stop and release its resources. Items reported after
+	 * this are ignored.
+	 */
+	void cancel();
+
+}
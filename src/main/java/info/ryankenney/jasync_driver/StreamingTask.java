@@ -0,0 +1,42 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * <p>
+ * Used to define an asynchronous task that produces its result as a stream of
+ * items (pages, chunks, rows) rather than as a single object. A
+ * {@link DriverBody} consumes the stream with
+ * {@link JasyncDriver#forEachStreamed(StreamingTask, Object, Task)}, which
+ * hands each item to a consumer {@link Task} as it arrives, so only one item
+ * needs to be held in memory at a time.
+ * </p>
+ * 
+ * <p>
+ * The stream is driven by demand: the task must not report more items than
+ * have been requested through the returned {@link StreamSubscription}, and
+ * must report them one at a time, never concurrently.
+ * </p>
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <T>
+ *            The type of item produced by the stream.
+ */
+public interface StreamingTask<A,T> extends Task<A,Long> {
+
+	/**
+	 * Opens the stream. No items should be reported until they are requested.
+	 * 
+	 * @param arg
+	 *            Any argument passed into the task.
+	 * @param streamHandler
+	 *            Receives the items, then the end of the stream or its
+	 *            failure.
+	 * @return The subscription through which the consumer requests items or
+	 *         cancels the stream.
+	 */
+	StreamSubscription open(A arg, StreamHandler<T> streamHandler);
+
+}
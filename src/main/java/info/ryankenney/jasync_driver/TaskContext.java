@@ -0,0 +1,61 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Information about the {@link JasyncDriver} run on whose behalf an
+ * {@link AsyncTask} is executing. Available to the task through
+ * {@link ResultHandler#getContext()}, so it can be passed on to downstream
+ * calls and nested drivers.
+ * 
+ * @author rkenney
+ */
+public final class TaskContext {
+
+	private final JasyncDriver driver;
+
+	TaskContext(JasyncDriver driver) {
+		this.driver = driver;
+	}
+
+	/**
+	 * Returns the deadline of the driver run, or null if it has none.
+	 */
+	public Deadline getDeadline() {
+		return driver.getDeadline();
+	}
+
+	/**
+	 * Returns the scheduling class of the driver run.
+	 */
+	public Priority getPriority() {
+		return driver.getPriority();
+	}
+
+	/**
+	 * Returns the time remaining before the deadline of the driver run, in the
+	 * provided unit, or {@link Long#MAX_VALUE} if it has no deadline.
+	 */
+	public long getTimeRemaining(TimeUnit unit) {
+		Deadline deadline = driver.getDeadline();
+		return deadline == null ? Long.MAX_VALUE : deadline.timeRemaining(unit);
+	}
+
+	/**
+	 * Returns true if the deadline of the driver run has passed.
+	 */
+	public boolean isExpired() {
+		Deadline deadline = driver.getDeadline();
+		return deadline != null && deadline.isExpired();
+	}
+
+	/**
+	 * Registers an action to run once the driver run ends, whether its
+	 * {@link DriverBody} completed, failed or the driver was cancelled. Used
+	 * to release resources handed to the body, such as pooled buffers, that
+	 * must outlive the task but not the run.
+	 */
+	public void onRunComplete(Runnable action) {
+		driver.addFinishHook(action);
+	}
+}
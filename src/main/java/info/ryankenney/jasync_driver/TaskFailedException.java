@@ -0,0 +1,16 @@
+package info.ryankenney.jasync_driver;
+
+/**
+ * Thrown when a {@link DriverBody} reaches an {@link AsyncTask} that reported
+ * failure via {@link ResultHandler#reportFailure(Throwable)}. The failure
+ * reported by the task is available as the cause.
+ * 
+ * @author rkenney
+ */
+@SuppressWarnings("serial")
+public class TaskFailedException extends JasyncDriverException {
+
+	public TaskFailedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,213 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A record of the task sequences observed across many runs of one kind of
+ * {@link DriverBody}. Share a single instance between every
+ * {@link JasyncDriver} that executes the same body logic, via
+ * {@link JasyncDriver#setTaskProfile(TaskProfile)}.
+ * </p>
+ *
+ * <p>
+ * While a driver is suspended on an {@link AsyncTask}, it asks the profile
+ * which task is almost certain to come next. If that task is an
+ * {@link IdempotentTask}, and it has always been called with the same
+ * argument at that point in the body, the driver starts it early. The result
+ * is handed over when the body actually reaches the task, and dropped if the
+ * body goes somewhere else.
+ * </p>
+ *
+ * <p>
+ * Tasks are matched by identity (just as the driver's own history is), so
+ * prefetching only pays off for task instances that outlive a single run, such
+ * as tasks held in fields.
+ * </p>
+ *
+ * <p>
+ * Every task execution of every driver sharing the profile records into it,
+ * so the counts are kept per step in concurrent maps of atomic counters,
+ * rather than behind a single lock. Predictions read them without locking,
+ * and so may lag the latest observations slightly.
+ * </p>
+ *
+ * @author rkenney
+ */
+public class TaskProfile {
+
+	/**
+	 * The number of distinct task/argument pairs tracked for any one step of
+	 * the body. Steps that see more variety than this are never predicted.
+	 */
+	private static final int MAX_CANDIDATES_PER_STEP = 8;
+
+	private final double minConfidence;
+	private final int minSamples;
+	private final ConcurrentMap<Integer, StepStats> steps = new ConcurrentHashMap<>();
+	private final AtomicLong prefetchCount = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Constructs a profile that predicts a step once it has been observed at
+	 * least 20 times, and the same task/argument pair was seen in 99% of those
+	 * observations.
+	 */
+	public TaskProfile() {
+		this(0.99, 20);
+	}
+
+	/**
+	 * Constructs a profile with custom prediction thresholds.
+	 *
+	 * @param minConfidence
+	 *            The fraction (0.0-1.0] of observations of a step that must
+	 *            agree before the step is predicted.
+	 * @param minSamples
+	 *            The minimum number of times a step must be observed before it
+	 *            is predicted.
+	 */
+	public TaskProfile(double minConfidence, int minSamples) {
+		if (minConfidence <= 0.0 || minConfidence > 1.0) {
+			throw new IllegalArgumentException("minConfidence must be within (0.0, 1.0]");
+		}
+		this.minConfidence = minConfidence;
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * Returns the number of prefetches started on behalf of this profile.
+	 */
+	public long getPrefetchCount() {
+		return prefetchCount.get();
+	}
+
+	/**
+	 * Returns the number of prefetched results that were handed over to a
+	 * {@link DriverBody}.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of prefetched results that were discarded, because
+	 * the {@link DriverBody} took a different path or used a different
+	 * argument.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Records that the provided task/argument pair was executed as the
+	 * provided step of the body.
+	 */
+	void record(int step, Task<?,?> task, Object arg) {
+		StepStats stats = steps.get(step);
+		if (stats == null) {
+			StepStats created = new StepStats();
+			stats = steps.putIfAbsent(step, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		stats.record(new ProfiledStep(task, arg));
+	}
+
+	/**
+	 * Returns the task/argument pair that is almost certain to execute as the
+	 * provided step of the body, or null if there is no such pair.
+	 */
+	ProfiledStep predict(int step) {
+		StepStats stats = steps.get(step);
+		if (stats == null) {
+			return null;
+		}
+		return stats.predict(minConfidence, minSamples);
+	}
+
+	void countPrefetch() {
+		prefetchCount.incrementAndGet();
+	}
+
+	void countHit() {
+		hitCount.incrementAndGet();
+	}
+
+	void countMiss() {
+		missCount.incrementAndGet();
+	}
+
+	/**
+	 * A task and the argument it was executed with.
+	 */
+	static class ProfiledStep {
+		final Task<?,?> task;
+		final Object arg;
+
+		ProfiledStep(Task<?,?> task, Object arg) {
+			this.task = task;
+			this.arg = arg;
+		}
+
+		boolean matches(Task<?,?> task, Object arg) {
+			return this.task == task && Objects.equals(this.arg, arg);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ProfiledStep)) {
+				return false;
+			}
+			ProfiledStep other = (ProfiledStep) obj;
+			return matches(other.task, other.arg);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(task) + Objects.hashCode(arg);
+		}
+	}
+
+	private static class StepStats {
+		private final ConcurrentMap<ProfiledStep, AtomicLong> counts = new ConcurrentHashMap<>();
+		private final AtomicLong total = new AtomicLong();
+
+		void record(ProfiledStep step) {
+			total.incrementAndGet();
+			AtomicLong count = counts.get(step);
+			if (count == null) {
+				// Racing threads may push a step slightly past the cap, which
+				// only costs a few more candidates
+				if (counts.size() >= MAX_CANDIDATES_PER_STEP) {
+					return;
+				}
+				AtomicLong created = new AtomicLong();
+				count = counts.putIfAbsent(step, created);
+				if (count == null) {
+					count = created;
+				}
+			}
+			count.incrementAndGet();
+		}
+
+		ProfiledStep predict(double minConfidence, int minSamples) {
+			long observed = total.get();
+			if (observed < minSamples) {
+				return null;
+			}
+			for (Map.Entry<ProfiledStep, AtomicLong> entry : counts.entrySet()) {
+				if (entry.getValue().get() >= observed * minConfidence) {
+					return entry.getKey();
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AsyncTask} that knows how long it takes at minimum. A
+ * {@link JasyncDriver} with a {@link Deadline} fails fast, with a
+ * {@link DeadlineExceededException}, instead of starting such a task when
+ * less than that time remains.
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument passed into this task. Use the {@link Void}
+ *            type if you have no use for an argument.
+ * @param <R>
+ *            The type returned by the task. Use the {@link Void} type if you
+ *            have no use for a return.
+ */
+public interface TimedTask<A,R> extends AsyncTask<A,R> {
+
+	/**
+	 * Returns the shortest time in which this task could possibly complete,
+	 * in the provided unit.
+	 */
+	long getMinimumDuration(TimeUnit unit);
+
+}
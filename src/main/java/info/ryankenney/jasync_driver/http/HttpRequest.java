@@ -0,0 +1,50 @@
+package info.ryankenney.jasync_driver.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The argument of an {@link HttpTask}: a request to send to its
+ * {@link HttpTarget}.
+ * 
+ * @author rkenney
+ */
+public class HttpRequest {
+
+	final String method;
+	final String path;
+	final List<String[]> headers = new ArrayList<>();
+	byte[] body;
+
+	/**
+	 * @param method
+	 *            The request method, such as "GET".
+	 * @param path
+	 *            The path (and query) of the request, resolved against the
+	 *            base URL of the target.
+	 */
+	public HttpRequest(String method, String path) {
+		this.method = method;
+		this.path = path;
+	}
+
+	/**
+	 * Adds a request header.
+	 * 
+	 * @return This request.
+	 */
+	public HttpRequest addHeader(String name, String value) {
+		headers.add(new String[] {name, value});
+		return this;
+	}
+
+	/**
+	 * Sets the request body.
+	 * 
+	 * @return This request.
+	 */
+	public HttpRequest setBody(byte[] body) {
+		this.body = body;
+		return this;
+	}
+}
@@ -0,0 +1,88 @@
+package info.ryankenney.jasync_driver.http;
+
+import info.ryankenney.jasync_driver.nio.BufferLease;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of an {@link HttpTask}. The body is held in buffers leased from
+ * a {@link info.ryankenney.jasync_driver.nio.BufferPool}, which are released
+ * once the run of the calling driver ends, so the body must be consumed (or
+ * copied) within the run. See {@link BufferLease} for how to read the buffers
+ * from a body that is executed repeatedly.
+ * 
+ * @author rkenney
+ */
+public class HttpResponse {
+
+	private final int status;
+	private final Map<String, List<String>> headers;
+	private final List<BufferLease> body;
+	private final long bodyLength;
+
+	HttpResponse(int status, Map<String, List<String>> headers, List<BufferLease> body, long bodyLength) {
+		this.status = status;
+		this.headers = headers;
+		this.body = body;
+		this.bodyLength = bodyLength;
+	}
+
+	/**
+	 * Returns the status code.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the response headers, keyed by name.
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the first value of the provided header, or null if it is
+	 * absent.
+	 */
+	public String getHeader(String name) {
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+				return header.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the body, in order, as flipped buffers.
+	 */
+	public List<BufferLease> getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the length of the body, in bytes.
+	 */
+	public long getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * Copies the body into a new array. Convenient for small bodies, but
+	 * defeats the point of pooled buffers for large ones.
+	 */
+	public byte[] getBodyBytes() {
+		byte[] bytes = new byte[(int) bodyLength];
+		int offset = 0;
+		for (BufferLease lease : body) {
+			ByteBuffer view = lease.getBuffer().duplicate();
+			int length = view.remaining();
+			view.get(bytes, offset, length);
+			offset += length;
+		}
+		return bytes;
+	}
+}
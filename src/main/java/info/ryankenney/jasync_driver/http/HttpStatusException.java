@@ -0,0 +1,27 @@
+package info.ryankenney.jasync_driver.http;
+
+import info.ryankenney.jasync_driver.JasyncDriverException;
+
+/**
+ * Reported by an {@link HttpTask} when the backend answers with an error
+ * status (400 or above).
+ * 
+ * @author rkenney
+ */
+@SuppressWarnings("serial")
+public class HttpStatusException extends JasyncDriverException {
+
+	private final int status;
+
+	public HttpStatusException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * Returns the status code of the response.
+	 */
+	public int getStatus() {
+		return status;
+	}
+}
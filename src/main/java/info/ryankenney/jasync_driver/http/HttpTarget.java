@@ -0,0 +1,116 @@
+package info.ryankenney.jasync_driver.http;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * One HTTP backend (scheme, host and port), shared by all the
+ * {@link HttpTask}s that call it. The target owns a fixed number of
+ * connection threads, so at most that many requests are sent to the backend
+ * at once and the rest queue up. Since every response body is read to the
+ * end and closed, the JDK keeps the connections of these threads alive and
+ * reuses them from one request to the next.
+ * </p>
+ * 
+ * <pre>
+ * HttpTarget users = new HttpTarget(new URL("http://users.internal:8080"), 16)
+ *     .setConnectTimeout(1, TimeUnit.SECONDS)
+ *     .setReadTimeout(5, TimeUnit.SECONDS);
+ * HttpTask readUser = new HttpTask(users, bufferPool);
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class HttpTarget {
+
+	private final URL baseUrl;
+	private final int maxConnections;
+	private final ExecutorService connectionThreads;
+	private volatile int connectTimeoutMillis = 10000;
+	private volatile int readTimeoutMillis = 30000;
+
+	/**
+	 * @param baseUrl
+	 *            The URL that request paths are resolved against.
+	 * @param maxConnections
+	 *            The number of requests sent to the backend at once.
+	 */
+	public HttpTarget(URL baseUrl, int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be at least 1");
+		}
+		this.baseUrl = baseUrl;
+		this.maxConnections = maxConnections;
+		final String threadName = "jasync-http-" + baseUrl.getHost() + ":" + baseUrl.getPort() + "-";
+		this.connectionThreads = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, threadName + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		((ThreadPoolExecutor) connectionThreads).allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Sets how long to wait for a connection to be established. Defaults to 10
+	 * seconds.
+	 * 
+	 * @return This target.
+	 */
+	public HttpTarget setConnectTimeout(long timeout, TimeUnit unit) {
+		this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+		return this;
+	}
+
+	/**
+	 * Sets how long to wait for the response between reads. Defaults to 30
+	 * seconds. The time left before the deadline of the calling driver, if
+	 * shorter, is used instead.
+	 * 
+	 * @return This target.
+	 */
+	public HttpTarget setReadTimeout(long timeout, TimeUnit unit) {
+		this.readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+		return this;
+	}
+
+	/**
+	 * Returns the number of requests sent to the backend at once.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Stops the connection threads once the requests already queued are done.
+	 */
+	public void shutdown() {
+		connectionThreads.shutdown();
+	}
+
+	URL resolve(String path) throws MalformedURLException {
+		return new URL(baseUrl, path);
+	}
+
+	ExecutorService getConnectionThreads() {
+		return connectionThreads;
+	}
+
+	int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+}
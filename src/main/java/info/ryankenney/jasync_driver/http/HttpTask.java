@@ -0,0 +1,171 @@
+package info.ryankenney.jasync_driver.http;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+import info.ryankenney.jasync_driver.nio.BufferLease;
+import info.ryankenney.jasync_driver.nio.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that sends an {@link HttpRequest} to an
+ * {@link HttpTarget} and reports the {@link HttpResponse}. The request runs on
+ * one of the connection threads of the target, and the response body is
+ * streamed straight into buffers leased from a {@link BufferPool}, with no
+ * intermediate copies or strings.
+ * </p>
+ * 
+ * <p>
+ * Connection failures, timeouts and (unless disabled) error statuses are
+ * reported through {@link ResultHandler#reportFailure(Throwable)}, the latter
+ * as an {@link HttpStatusException}. If the calling driver has a
+ * {@link info.ryankenney.jasync_driver.Deadline} nearer than the read timeout
+ * of the target, the time left is used as the read timeout instead.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class HttpTask implements AsyncTask<HttpRequest, HttpResponse> {
+
+	private final HttpTarget target;
+	private final BufferPool pool;
+	private volatile boolean failOnErrorStatus = true;
+	private final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[Math.min(pool.getBufferSize(), 8192)];
+		}
+	};
+
+	public HttpTask(HttpTarget target, BufferPool pool) {
+		this.target = target;
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets whether responses with a status of 400 or above are reported as
+	 * failures (the default) or as results.
+	 * 
+	 * @return This task.
+	 */
+	public HttpTask setFailOnErrorStatus(boolean failOnErrorStatus) {
+		this.failOnErrorStatus = failOnErrorStatus;
+		return this;
+	}
+
+	@Override
+	public void run(final HttpRequest request, final ResultHandler<HttpResponse> resultHandler) {
+		try {
+			target.getConnectionThreads().execute(new Runnable() {
+				public void run() {
+					send(request, resultHandler);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			resultHandler.reportFailure(e);
+		}
+	}
+
+	private void send(HttpRequest request, ResultHandler<HttpResponse> resultHandler) {
+		List<BufferLease> body = new ArrayList<>();
+		HttpResponse response;
+		try {
+			HttpURLConnection connection = (HttpURLConnection) target.resolve(request.path).openConnection();
+			connection.setRequestMethod(request.method);
+			connection.setConnectTimeout(target.getConnectTimeoutMillis());
+			connection.setReadTimeout(readTimeoutMillis(resultHandler.getContext()));
+			for (String[] header : request.headers) {
+				connection.addRequestProperty(header[0], header[1]);
+			}
+			if (request.body != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(request.body.length);
+				OutputStream out = connection.getOutputStream();
+				try {
+					out.write(request.body);
+				} finally {
+					out.close();
+				}
+			}
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			long length = in == null ? 0 : readBody(in, body, resultHandler.getContext());
+			response = new HttpResponse(status, connection.getHeaderFields(), body, length);
+		} catch (IOException | RuntimeException e) {
+			release(body);
+			resultHandler.reportFailure(e);
+			return;
+		}
+		if (failOnErrorStatus && response.getStatus() >= 400) {
+			release(body);
+			resultHandler.reportFailure(new HttpStatusException(response.getStatus(), String.format(
+					"%s %s returned %s", request.method, request.path, response.getStatus())));
+			return;
+		}
+		resultHandler.reportComplete(response);
+	}
+
+	/**
+	 * Reads the stream to the end, which lets the connection be reused, into
+	 * as many pooled buffers as needed. Each connection thread copies through
+	 * a single scratch array of its own.
+	 */
+	private long readBody(InputStream in, List<BufferLease> body, TaskContext context) throws IOException {
+		long length = 0;
+		try {
+			byte[] chunk = chunks.get();
+			ByteBuffer buffer = null;
+			int count;
+			while ((count = in.read(chunk)) != -1) {
+				int offset = 0;
+				while (offset < count) {
+					if (buffer == null || !buffer.hasRemaining()) {
+						BufferLease lease = pool.acquire();
+						if (context != null) {
+							context.onRunComplete(lease);
+						}
+						body.add(lease);
+						buffer = lease.getBuffer();
+					}
+					int copied = Math.min(buffer.remaining(), count - offset);
+					buffer.put(chunk, offset, copied);
+					offset += copied;
+				}
+				length += count;
+			}
+		} finally {
+			in.close();
+		}
+		for (BufferLease lease : body) {
+			lease.getBuffer().flip();
+		}
+		return length;
+	}
+
+	private int readTimeoutMillis(TaskContext context) {
+		int timeout = target.getReadTimeoutMillis();
+		if (context != null && context.getDeadline() != null) {
+			long remaining = Math.max(1, context.getTimeRemaining(TimeUnit.MILLISECONDS));
+			if (timeout == 0 || remaining < timeout) {
+				return (int) remaining;
+			}
+		}
+		return timeout;
+	}
+
+	private static void release(List<BufferLease> body) {
+		for (BufferLease lease : body) {
+			lease.release();
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package info.ryankenney.jasync_driver.light;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -8,7 +11,8 @@ package info.ryankenney.jasync_driver.light;
  * </p>
  * 
  * <ul>
- * <li>Provides a lot of helper methods for constructing if/then/series logic.</li>
+ * <li>Provides a lot of helper methods for constructing
+ * if/then/series/parallel/loop logic.</li>
  * <li>Represents the scope of interruption if the process hits an
  * {@InterruptDriverAction} (e.g. the logic includes a
  * call to {@link #stop()}.</li>
@@ -18,11 +22,19 @@ package info.ryankenney.jasync_driver.light;
  * Note that this class can be used as a generic {@link Runnable} or as an
  * {@link AsyncAction} within the body of another {@link ActionDriver}.
  * </p>
+ * 
+ * <p>
+ * A driver and its body form a plan that can be built once and executed any
+ * number of times, concurrently. Each run gets its own {@link RunContext},
+ * which holds the values of the {@link Ref}s for that run.
+ * </p>
  */
 public class ActionDriver implements AsyncAction, Runnable {
 
     private AsyncAction body;
-    private Runnable onComplete;
+    private ErrorHandler onError;
+    private final Set<RunContext> activeRuns =
+            Collections.newSetFromMap(new ConcurrentHashMap<RunContext, Boolean>());
 
     /**
      * Sets the body of this driver. Should be called once, and before
@@ -36,6 +48,69 @@ public class ActionDriver implements AsyncAction, Runnable {
         return this;
     }
 
+    AsyncAction getBody() {
+        return body;
+    }
+
+    /**
+     * Sets the handler that is handed the failure of a run of this driver,
+     * when an action reports one with {@link RunContext#fail(Throwable)} or
+     * throws from its {@code run} method. The remaining actions of the body
+     * are skipped, and the run then completes as usual, executing its "on
+     * complete" callback. Without a handler, the failure propagates to the
+     * run this driver is nested in. A run that is not nested then records
+     * the failure (see {@link RunContext#getFailure()}) and never executes
+     * its "on complete" callback; a failure that happens before
+     * {@link #run(Runnable)} returns is rethrown from it.
+     * 
+     * @return This driver.
+     */
+    public ActionDriver setOnError(ErrorHandler handler) {
+        this.onError = handler;
+        return this;
+    }
+
+    ErrorHandler getOnError() {
+        return onError;
+    }
+
+    /**
+     * Cancels all runs of this driver that are in flight (see
+     * {@link RunContext#cancel()}), executing the cancel hooks of the actions
+     * they are waiting on, including the children of any
+     * {@link #parallel(AsyncAction...)}.
+     */
+    public void cancel() {
+        for (RunContext context : activeRuns.toArray(new RunContext[0])) {
+            context.cancel();
+        }
+    }
+
+    /**
+     * Returns the number of runs of this driver that have started and not yet
+     * ended.
+     */
+    public int getActiveRunCount() {
+        return activeRuns.size();
+    }
+
+    void addActiveRun(RunContext context) {
+        activeRuns.add(context);
+    }
+
+    void removeActiveRun(RunContext context) {
+        activeRuns.remove(context);
+    }
+
+    /**
+     * Returns the only run of this driver in flight, or null if there are
+     * none or several.
+     */
+    RunContext getSoleActiveRun() {
+        RunContext[] runs = activeRuns.toArray(new RunContext[0]);
+        return runs.length == 1 ? runs[0] : null;
+    }
+
     /**
      * Creates a an {@link AsyncAction} that executes a series of
      * {@link AsyncAction} in serial.
@@ -47,13 +122,108 @@ public class ActionDriver implements AsyncAction, Runnable {
         return new ActionSeries(actions);
     }
 
+    /**
+     * Creates an {@link AsyncAction} that starts all of the provided
+     * {@link AsyncAction}s at once, and completes when all of them have
+     * completed.
+     */
+    public AsyncAction parallel(AsyncAction... actions) {
+        return new ParallelAction(Math.max(actions.length, 1), actions.length, actions);
+    }
+
+    /**
+     * Creates an {@link AsyncAction} that executes the provided
+     * {@link AsyncAction}s with at most the provided number running at once,
+     * starting them in order, and completes when all of them have completed.
+     */
+    public AsyncAction parallel(int maxConcurrency, AsyncAction... actions) {
+        return new ParallelAction(maxConcurrency, actions.length, actions);
+    }
+
+    /**
+     * Creates an {@link AsyncAction} that starts all of the provided
+     * {@link AsyncAction}s at once, and completes as soon as the first of them
+     * completes. The others are left to run, but their completion is ignored.
+     */
+    public AsyncAction anyOf(AsyncAction... actions) {
+        return new ParallelAction(Math.max(actions.length, 1), 1, actions);
+    }
+
+    /**
+     * <p>
+     * Creates an {@link AsyncAction} that executes the provided steps with the
+     * same outcome as {@link #series(AsyncAction...)}, but overlaps the steps
+     * that do not depend on one another. Declare the {@link Ref}s each step
+     * reads and writes with {@link #step(AsyncAction)}:
+     * </p>
+     * 
+     * <pre>
+     * driver.dataflow(
+     *         driver.step(loadUser).reads(userId).writes(user),
+     *         driver.step(loadOrders).reads(userId).writes(orders),
+     *         driver.step(render).reads(user, orders).writes(page));
+     * </pre>
+     * 
+     * <p>
+     * Here the two loads run at once, and the rendering starts once both
+     * have completed. A step that declares nothing, whether a plain action or
+     * a {@link DataflowStep} with no reads or writes, is a barrier: it is
+     * executed after all steps before it, and before all steps after it.
+     * </p>
+     */
+    public AsyncAction dataflow(AsyncAction... steps) {
+        return new DataflowAction(steps);
+    }
+
+    /**
+     * Wraps the provided {@link AsyncAction}, so the {@link Ref}s it reads and
+     * writes can be declared for {@link #dataflow(AsyncAction...)}.
+     */
+    public DataflowStep step(AsyncAction action) {
+        return new DataflowStep(action);
+    }
+
+    /**
+     * Returns an {@link AsyncAction} that executes the provided body for as
+     * long as the provided condition reference points to a value of true in
+     * the current run, checking it before each iteration. The condition
+     * should never point to a value of null at that time.
+     */
+    public AsyncAction whileLoop(Ref<Boolean> condition, AsyncAction body) {
+        return new LoopAction.WhileLoop(condition, body);
+    }
+
+    /**
+     * Returns an {@link AsyncAction} that executes the provided body once for
+     * each of the provided items, in order, setting the provided reference to
+     * the item in the current run before each iteration. The items are
+     * iterated anew by each run.
+     */
+    public <T> AsyncAction forEach(Iterable<? extends T> items, Ref<T> item, AsyncAction body) {
+        return new LoopAction.ForEachLoop<T>(items, item, body);
+    }
+
+    /**
+     * Returns an {@link AsyncAction} that executes the provided body the
+     * provided number of times.
+     */
+    public AsyncAction repeat(int count, AsyncAction body) {
+        return new LoopAction.RepeatLoop(count, body);
+    }
+
     /**
      * Creates a an {@link AsyncAction} that will stop the entire body of this
      * {@link ActionDriver}. Note that if this {@link ActionDriver} was launched
      * with {@link #run(Runnable)}, and a callback was provided, that callback
      * will still be run. In other words, this method short-circuits all actions
      * in the body of the driver, but it doesn't prevent the execution of the
-     * callback provided by it's caller.
+     * callback provided by it's caller. Actions still in flight, such as the
+     * siblings of a {@link #parallel(AsyncAction...)}, are aborted through
+     * their cancel hooks (see {@link RunContext#addCancelHook(Runnable)}).
+     * The action finds its run through the callback it is handed, so if a
+     * custom action wraps that callback without implementing
+     * {@link ContextCarrier}, it can only stop the driver while a single run
+     * is in flight.
      */
     public AsyncAction stop() {
         return new InterruptDriverAction(this);
@@ -90,16 +260,49 @@ public class ActionDriver implements AsyncAction, Runnable {
         return new IfAction(condition, onTrue, onFalse);
     }
 
+    /**
+     * <p>
+     * Returns an {@link AsyncAction} that executes the provided condition
+     * action, which sets the provided condition reference, followed by one of
+     * the provided branches, like
+     * {@code series(conditionAction, doIfElse(condition, onTrue, onFalse))}.
+     * Branches that are {@link IdempotentAction}s are started speculatively,
+     * at the same time as the condition action, in isolation from the run;
+     * only the values set by the branch that is chosen are kept.
+     * </p>
+     * 
+     * <p>
+     * Either of the provided branches may be null. The returned action keeps
+     * counters of how often speculation paid off.
+     * </p>
+     */
+    public SpeculativeIfAction doIfElseSpeculatively(AsyncAction conditionAction, Ref<Boolean> condition,
+            AsyncAction onTrue, AsyncAction onFalse) {
+        return new SpeculativeIfAction(conditionAction, condition, onTrue, onFalse);
+    }
+
     /**
      * Returns an {@link AsyncAction} that simply wraps a {@link SyncAction}, so
      * it can be used with the other features of this library.
      */
     public AsyncAction exec(final SyncAction action) {
-        return new AsyncAction() {
+        return new SyncStep() {
             @Override
-            public void run(Runnable onComplete) {
+            void apply(RunContext context) {
                 action.run();
-                RunUtil.I.runIfDefined(onComplete);
+            }
+        };
+    }
+
+    /**
+     * Returns an {@link AsyncAction} that wraps a {@link ContextSyncAction},
+     * handing it the {@link RunContext} of the current run.
+     */
+    public AsyncAction exec(final ContextSyncAction action) {
+        return new SyncStep() {
+            @Override
+            void apply(RunContext context) {
+                action.run(context);
             }
         };
     }
@@ -113,6 +316,31 @@ public class ActionDriver implements AsyncAction, Runnable {
         return action;
     }
 
+    /**
+     * <p>
+     * Compiles the body of this driver into a flat list of instructions, which
+     * is then executed in place of the original body. Nested series are
+     * flattened, branches with nothing to execute are removed, consecutive
+     * actions created by {@link #exec(SyncAction)} or
+     * {@link #exec(ContextSyncAction)} are fused into one, and
+     * {@link #doIf(Ref, AsyncAction)} and its variants become conditional
+     * jumps. A run then walks the list with a program counter, and only hops
+     * through an "on complete" callback at each remaining {@link AsyncAction}.
+     * </p>
+     * 
+     * <p>
+     * Call this once the body is fully built, since actions added to it
+     * afterwards are not seen. Custom {@link AsyncAction}s and nested
+     * {@link ActionDriver}s are executed as they are.
+     * </p>
+     * 
+     * @return This driver.
+     */
+    public ActionDriver compile() {
+        this.body = PlanCompiler.compile(body);
+        return this;
+    }
+
     /**
      * Executes the body of the driver, with no overall "on complete" callback.
      */
@@ -127,25 +355,22 @@ public class ActionDriver implements AsyncAction, Runnable {
      */
     @Override
     public void run(Runnable onComplete) {
-        if (onComplete == null) {
-            onComplete = new NoOpRunnable();
-        }
-        setOnComplete(onComplete);
-        body.run(onComplete);
+        prepare(onComplete).start();
     }
 
     /**
-     * Executes any overall "on complete" callback that was registered with this
-     * driver
+     * Creates the context of a new run of the body, without starting it, so
+     * that the values of {@link Ref}s can be set for the run first:
+     * 
+     * <pre>
+     * driver.prepare(onComplete).set(userRef, user).start();
+     * </pre>
+     * 
+     * If the provided callback is itself part of a run (this driver is
+     * nested in the body of another), the new run shares the {@link Ref}
+     * values of that run.
      */
-    void doOnComplete() {
-        RunUtil.I.runIfDefined(onComplete);
-    }
-
-    private void setOnComplete(Runnable onComplete) {
-        if (this.onComplete != null) {
-            throw new RuntimeException("onComplete set multiple times. Was the class reused?");
-        }
-        this.onComplete = onComplete;
+    public RunContext prepare(Runnable onComplete) {
+        return new RunContext(this, body, RunContext.of(onComplete), onComplete);
     }
 }
@@ -0,0 +1,399 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Pushes a stream of items through one {@link ActionDriver} plan, running the
+ * plan once per item, with at most a fixed number of runs in flight. Each
+ * item is handed to its run through a {@link Ref}, and each finished run is
+ * delivered to a {@link PipelineSink}:
+ * </p>
+ *
+ * <pre>
+ * new ActionPipeline&lt;&gt;(plan, eventRef, 64)
+ *         .setOrdered(true)
+ *         .setSink(sink)
+ *         .subscribe(source);
+ * </pre>
+ *
+ * <p>
+ * Items are never pulled faster than they are processed. The pipeline asks
+ * its {@link PipelineSource} for exactly as many items as it has free
+ * slots, so however fast the source can produce, no more than the fixed
+ * number of items are held at once, whether queued, in flight or waiting to
+ * be delivered. In ordered mode, finished runs are parked in a ring buffer
+ * with one slot per in-flight item, and delivered in the order their items
+ * arrived; a slot (and so demand upstream) is only freed once its item is
+ * delivered. A run cancelled by anything other than {@link #cancel()}, such
+ * as {@link ActionDriver#cancel()}, is delivered like any other.
+ * </p>
+ *
+ * <p>
+ * Items, completions and demand are all handled by a single loop, guarded by
+ * an atomic counter. Whichever thread signals an event (the source pushing an
+ * item, a run completing) either runs the loop or hands the event to the
+ * thread already running it, so calls to the sink and the source are never
+ * concurrent, and runs that complete synchronously do not grow the stack.
+ * </p>
+ *
+ * @param <T>
+ *            The type of item.
+ */
+public class ActionPipeline<T> {
+
+    private final ActionDriver plan;
+    private final Ref<T> itemRef;
+    private final int maxInFlight;
+    /** The runs in flight in ordered mode, by sequence: always ItemRuns */
+    private final Object[] ring;
+    private final AtomicInteger wip = new AtomicInteger();
+    private boolean ordered;
+    private PipelineSink<T> sink;
+    private PipelineSource source;
+
+    // Guarded by this
+    private final Queue<T> pendingItems = new ArrayDeque<>();
+    private final Queue<ItemRun> finishedRuns = new ArrayDeque<>();
+    private final Set<ItemRun> runningRuns = Collections.newSetFromMap(new IdentityHashMap<ItemRun, Boolean>());
+    private int outstandingDemand;
+    private int occupiedSlots;
+    private long nextSequence;
+    private long nextDelivery;
+    private boolean sourceEnded;
+    private boolean endDelivered;
+    private boolean cancelled;
+    private long deliveredCount;
+
+    /**
+     * @param plan
+     *            The plan executed for each item.
+     * @param itemRef
+     *            The reference set to the item in each run.
+     * @param maxInFlight
+     *            The maximum number of items held at once.
+     */
+    public ActionPipeline(ActionDriver plan, Ref<T> itemRef, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.plan = plan;
+        this.itemRef = itemRef;
+        this.maxInFlight = maxInFlight;
+        this.ring = new Object[maxInFlight];
+    }
+
+    /**
+     * Delivers items to the sink in the order they arrived from the source,
+     * rather than in the order their runs finish. Defaults to false.
+     *
+     * @return This pipeline.
+     */
+    public ActionPipeline<T> setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * @return This pipeline.
+     */
+    public ActionPipeline<T> setSink(PipelineSink<T> sink) {
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * Starts pulling items from the provided source. Call once, after the
+     * pipeline is configured.
+     *
+     * @return This pipeline.
+     */
+    public ActionPipeline<T> subscribe(PipelineSource source) {
+        synchronized (this) {
+            if (this.source != null) {
+                throw new IllegalStateException("Pipeline is already subscribed");
+            }
+            this.source = source;
+        }
+        drain();
+        return this;
+    }
+
+    /**
+     * Starts pulling items from the provided iterator, which is read only as
+     * fast as the pipeline has room for items.
+     *
+     * @return This pipeline.
+     */
+    public ActionPipeline<T> subscribe(final Iterator<? extends T> items) {
+        return subscribe(new PipelineSource() {
+            @Override
+            public void request(int count) {
+                // Only ever called from the loop, which folds the items
+                // pushed here into its next pass
+                for (int i = 0; i < count; i++) {
+                    if (!items.hasNext()) {
+                        onEnd();
+                        return;
+                    }
+                    onNext(items.next());
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+    }
+
+    /**
+     * Pushes an item into the pipeline. Called by the source, only as many
+     * times as the pipeline has requested.
+     *
+     * @throws IllegalStateException
+     *             If the item was not requested.
+     */
+    public void onNext(T item) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            if (outstandingDemand == 0) {
+                throw new IllegalStateException("Item pushed without demand");
+            }
+            outstandingDemand--;
+            pendingItems.add(item);
+        }
+        drain();
+    }
+
+    /**
+     * Signals that the source has no more items. Called by the source.
+     */
+    public void onEnd() {
+        synchronized (this) {
+            sourceEnded = true;
+            // Release the slots reserved for items that will never come
+            occupiedSlots -= outstandingDemand;
+            outstandingDemand = 0;
+        }
+        drain();
+    }
+
+    /**
+     * Stops pulling items, cancels the source and cancels the runs in flight.
+     * Nothing more is delivered to the sink.
+     */
+    public void cancel() {
+        PipelineSource cancelledSource;
+        List<ItemRun> running;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelledSource = source;
+            running = new ArrayList<>(runningRuns);
+            runningRuns.clear();
+            pendingItems.clear();
+            finishedRuns.clear();
+        }
+        if (cancelledSource != null) {
+            cancelledSource.cancel();
+        }
+        for (ItemRun run : running) {
+            run.context.cancel();
+        }
+    }
+
+    /**
+     * Returns the number of slots in use: items requested from the source and
+     * not yet delivered to the sink, whether still to arrive, queued, in
+     * flight or waiting for earlier items.
+     */
+    public synchronized int getInFlightCount() {
+        return occupiedSlots;
+    }
+
+    /**
+     * Returns the number of items delivered to the sink.
+     */
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Runs the loop, unless another thread already is. A sink that throws does
+     * not stop the loop; the first exception is rethrown once it has exited.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        RuntimeException thrown = null;
+        do {
+            RuntimeException e = deliverFinished();
+            if (thrown == null) {
+                thrown = e;
+            }
+            launchPending();
+            requestMore();
+        } while (wip.decrementAndGet() != 0);
+        if (thrown != null) {
+            throw thrown;
+        }
+    }
+
+    /**
+     * Delivers the finished runs to the sink, returning the first exception
+     * the sink threw, if any.
+     */
+    private RuntimeException deliverFinished() {
+        RuntimeException thrown = null;
+        while (true) {
+            ItemRun run;
+            boolean end = false;
+            synchronized (this) {
+                if (cancelled) {
+                    return thrown;
+                }
+                run = ordered ? takeNextInOrder() : finishedRuns.poll();
+                if (run != null) {
+                    occupiedSlots--;
+                    deliveredCount++;
+                } else if (sourceEnded && occupiedSlots == 0 && !endDelivered) {
+                    endDelivered = true;
+                    end = true;
+                }
+            }
+            try {
+                if (run != null) {
+                    if (sink != null) {
+                        sink.onResult(run.item, run.context);
+                    }
+                } else {
+                    if (end && sink != null) {
+                        sink.onEnd();
+                    }
+                    return thrown;
+                }
+            } catch (RuntimeException e) {
+                if (thrown == null) {
+                    thrown = e;
+                }
+                if (run == null) {
+                    return thrown;
+                }
+            }
+        }
+    }
+
+    private ItemRun takeNextInOrder() {
+        int slot = (int) (nextDelivery % maxInFlight);
+        @SuppressWarnings("unchecked")
+        ItemRun run = (ItemRun) ring[slot];
+        if (run == null || !run.finished) {
+            return null;
+        }
+        ring[slot] = null;
+        nextDelivery++;
+        return run;
+    }
+
+    private void launchPending() {
+        while (true) {
+            ItemRun run;
+            synchronized (this) {
+                T item = pendingItems.poll();
+                if (cancelled || item == null) {
+                    return;
+                }
+                run = new ItemRun(item, nextSequence++);
+                run.context = plan.prepare(run).set(itemRef, item);
+                run.context.addCancelHook(run.cancelHook);
+                runningRuns.add(run);
+                if (ordered) {
+                    ring[(int) (run.sequence % maxInFlight)] = run;
+                }
+            }
+            try {
+                run.context.start();
+            } catch (RuntimeException e) {
+                // Recorded as the failure of the run, which is delivered to
+                // the sink through its cancel hook
+            }
+        }
+    }
+
+    private void requestMore() {
+        int credit;
+        PipelineSource currentSource;
+        synchronized (this) {
+            if (cancelled || sourceEnded || source == null) {
+                return;
+            }
+            credit = maxInFlight - occupiedSlots;
+            occupiedSlots += credit;
+            outstandingDemand += credit;
+            currentSource = source;
+        }
+        if (credit > 0) {
+            currentSource.request(credit);
+        }
+    }
+
+    private void onRunFinished(ItemRun run) {
+        synchronized (this) {
+            if (!runningRuns.remove(run)) {
+                return;
+            }
+            run.finished = true;
+            if (!ordered) {
+                finishedRuns.add(run);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * A single item, and the callback of its run.
+     */
+    private class ItemRun implements Runnable {
+
+        final T item;
+        final long sequence;
+        RunContext context;
+        boolean finished;
+        /**
+         * Finishes the run if it is cancelled by anything other than the
+         * pipeline (such as {@link ActionDriver#cancel()}), or fails with no
+         * error handler, since its callback is then never executed
+         */
+        final Runnable cancelHook = new Runnable() {
+            @Override
+            public void run() {
+                if (context.isEndedWithoutCallback()) {
+                    onRunFinished(ItemRun.this);
+                }
+            }
+        };
+
+        ItemRun(T item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            onRunFinished(this);
+        }
+    }
+}
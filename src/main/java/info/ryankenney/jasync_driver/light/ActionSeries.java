@@ -1,32 +1,114 @@
 package info.ryankenney.jasync_driver.light;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Contains a series of 
+ * <p>
+ * Contains a series of {@link AsyncAction}s, executed one after the other. The
+ * series itself is immutable; each run keeps its own position, so a series
+ * may be executed any number of times, concurrently.
+ * </p>
+ * 
+ * <p>
+ * Actions that complete synchronously (calling their "on complete" callback
+ * before returning) are stepped through in a loop, rather than by recursing
+ * from one callback into the next action, so the stack depth does not grow
+ * with the length of the series. Actions that complete asynchronously
+ * resume the loop from whatever thread calls their callback.
+ * </p>
+ * 
+ * <p>
+ * Once the run the series is part of has ended (see {@link RunContext}), the
+ * remaining actions are skipped. An exception thrown by an action fails the
+ * run, rather than escaping to the thread that happens to execute it.
+ * </p>
+ * 
  * @author rkenney
  *
  */
 public class ActionSeries implements AsyncAction {
 
-    private LinkedList<AsyncAction> remainingActions = new LinkedList<>();
+    private final AsyncAction[] actions;
     
     public ActionSeries(AsyncAction... actions) {
-        remainingActions.addAll(Arrays.asList(actions));
+        this.actions = actions.clone();
     }
     
+    /**
+     * Returns the actions of the series. The array must not be modified.
+     */
+    AsyncAction[] getActions() {
+        return actions;
+    }
+
     @Override
     public void run(final Runnable onComplete) {
-        if (remainingActions.size() < 1) {
-            RunUtil.I.runIfDefined(onComplete);
-            return;
+        new SeriesRun(onComplete).next();
+    }
+
+    /**
+     * The callback handed to each action of the series, which also drives the
+     * loop over the actions.
+     */
+    private class SeriesRun implements Runnable, ContextCarrier {
+
+        private static final int RUNNING = 0;
+        private static final int SUSPENDED = 1;
+        private static final int COMPLETED_INLINE = 2;
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        private final AtomicInteger state = new AtomicInteger();
+        private int position;
+
+        SeriesRun(Runnable onComplete) {
+            this.onComplete = onComplete;
+            this.context = RunContext.of(onComplete);
         }
-        remainingActions.removeFirst().run(new Runnable() {
-            @Override
-            public void run() {
-                ActionSeries.this.run(onComplete);
+
+        /**
+         * Called by the current action when it completes. If the action is
+         * still on the stack, the loop in {@link #next()} picks up from here
+         * once it returns.
+         */
+        @Override
+        public void run() {
+            if (state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+                return;
             }
-        });
+            next();
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return context;
+        }
+
+        void next() {
+            while (true) {
+                if (context != null && context.isEnded()) {
+                    // Stopped, failed or cancelled: skip the rest
+                    return;
+                }
+                if (position >= actions.length) {
+                    RunUtil.I.runIfDefined(onComplete);
+                    return;
+                }
+                state.set(RUNNING);
+                try {
+                    actions[position++].run(this);
+                } catch (RuntimeException e) {
+                    if (context == null) {
+                        throw e;
+                    }
+                    context.fail(e);
+                    return;
+                }
+                if (state.compareAndSet(RUNNING, SUSPENDED)) {
+                    // The action completes asynchronously, and calls back in
+                    return;
+                }
+            }
+        }
     }
 }
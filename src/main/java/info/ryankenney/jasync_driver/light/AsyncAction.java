@@ -5,6 +5,16 @@ package info.ryankenney.jasync_driver.light;
  * Represents a single asynchronous action that is to be chained together with
  * other {@link AsyncAction}s and/or {@link SyncAction}s in the body of an
  * {@link ActionDriver}.
+ * 
+ * <p>
+ * The "on complete" callback carries the {@link RunContext} of the run the
+ * action is part of. An action that hands other actions a callback of its own,
+ * wrapping the one it received, should implement {@link ContextCarrier} in
+ * that wrapper. Otherwise the actions it runs lose track of the run: they read
+ * and write the values held by the {@link Ref}s themselves, and
+ * {@link ActionDriver#stop()} can only find the run while it is the only one
+ * of its driver in flight.
+ * </p>
  */
 public interface AsyncAction {
 
@@ -0,0 +1,166 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The flat form of an {@link ActionDriver} body, produced by the
+ * {@link PlanCompiler}. Each instruction is an opcode, an operand and (for
+ * jumps) a target index. A run walks the instructions with a program
+ * counter, executing fused synchronous steps and jumps in place, and only
+ * handing out its "on complete" callback to the remaining
+ * {@link AsyncAction}s.
+ * </p>
+ *
+ * <p>
+ * Like {@link ActionSeries}, an action that completes synchronously resumes
+ * the loop rather than recursing into the next instruction, and the plan
+ * itself is immutable, so it may be executed by any number of runs at once.
+ * Once the run has ended, the remaining instructions are skipped, and an
+ * exception thrown by an action fails the run.
+ * </p>
+ */
+final class CompiledPlan implements AsyncAction {
+
+    /** Executes an array of {@link SyncStep}s. */
+    static final int SYNC = 0;
+    /** Executes an {@link AsyncAction}, and waits for its callback. */
+    static final int ASYNC = 1;
+    /** Jumps to the target. */
+    static final int JUMP = 2;
+    /** Jumps to the target if the condition {@link Ref} is true. */
+    static final int JUMP_IF_TRUE = 3;
+    /** Jumps to the target if the condition {@link Ref} is false. */
+    static final int JUMP_IF_FALSE = 4;
+
+    private final int[] opcodes;
+    private final Object[] operands;
+    private final int[] targets;
+
+    CompiledPlan(int[] opcodes, Object[] operands, int[] targets) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.targets = targets;
+    }
+
+    /**
+     * Returns the number of instructions in the plan.
+     */
+    int getInstructionCount() {
+        return opcodes.length;
+    }
+
+    /**
+     * Returns the opcode of the instruction at the provided index.
+     */
+    int getOpcode(int index) {
+        return opcodes[index];
+    }
+
+    @Override
+    public void run(Runnable onComplete) {
+        new PlanRun(onComplete).next();
+    }
+
+    /**
+     * The program counter of a single run, which also serves as the callback
+     * handed to each {@link AsyncAction} of the plan.
+     */
+    private class PlanRun implements Runnable, ContextCarrier {
+
+        private static final int RUNNING = 0;
+        private static final int SUSPENDED = 1;
+        private static final int COMPLETED_INLINE = 2;
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        private final AtomicInteger state = new AtomicInteger();
+        private int pc;
+
+        PlanRun(Runnable onComplete) {
+            this.onComplete = onComplete;
+            this.context = RunContext.of(onComplete);
+        }
+
+        /**
+         * Called by the current action when it completes. If the action is
+         * still on the stack, the loop in {@link #next()} picks up from here
+         * once it returns.
+         */
+        @Override
+        public void run() {
+            if (state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+                return;
+            }
+            next();
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return context;
+        }
+
+        void next() {
+            while (true) {
+                if (context != null && context.isEnded()) {
+                    // Stopped, failed or cancelled: skip the rest
+                    return;
+                }
+                if (pc >= opcodes.length) {
+                    RunUtil.I.runIfDefined(onComplete);
+                    return;
+                }
+                try {
+                    if (!execute(pc++)) {
+                        // The action completes asynchronously, and calls back in
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    if (context == null) {
+                        throw e;
+                    }
+                    context.fail(e);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Executes the instruction at the provided index.
+         * 
+         * @return False if the run must wait for an action to call back.
+         */
+        private boolean execute(int index) {
+            switch (opcodes[index]) {
+            case SYNC:
+                for (SyncStep step : (SyncStep[]) operands[index]) {
+                    step.apply(context);
+                }
+                return true;
+            case JUMP:
+                pc = targets[index];
+                return true;
+            case JUMP_IF_TRUE:
+                if (condition(index)) {
+                    pc = targets[index];
+                }
+                return true;
+            case JUMP_IF_FALSE:
+                if (!condition(index)) {
+                    pc = targets[index];
+                }
+                return true;
+            default:
+                state.set(RUNNING);
+                ((AsyncAction) operands[index]).run(this);
+                return !state.compareAndSet(RUNNING, SUSPENDED);
+            }
+        }
+
+        private boolean condition(int index) {
+            @SuppressWarnings("unchecked")
+            Ref<Boolean> condition = (Ref<Boolean>) operands[index];
+            return condition.get(context);
+        }
+    }
+}
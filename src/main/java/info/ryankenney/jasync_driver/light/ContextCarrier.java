@@ -0,0 +1,17 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * Implemented by the "on complete" callbacks that the constructs of this
+ * package hand to their actions, so that any action can find the
+ * {@link RunContext} of the run it is part of (see
+ * {@link RunContext#of(Runnable)}). Custom {@link AsyncAction}s that wrap the
+ * callback they receive in their own {@link Runnable} should implement this as
+ * well, returning the context of the wrapped callback.
+ */
+public interface ContextCarrier {
+
+    /**
+     * Returns the context of the run, or null if there is none.
+     */
+    public RunContext getRunContext();
+}
@@ -0,0 +1,18 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * A {@link SyncAction} that is handed the {@link RunContext} of the current
+ * run, so it can read and write the values of {@link Ref}s for that run alone.
+ * Convert it to an {@link AsyncAction} with
+ * {@link ActionDriver#exec(ContextSyncAction)}.
+ */
+public interface ContextSyncAction {
+    /**
+     * The body of the action.
+     * 
+     * @param context
+     *            The context of the current run, or null if the action was
+     *            executed outside of one.
+     */
+    public void run(RunContext context);
+}
@@ -0,0 +1,187 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>
+ * Executes a list of steps with the same outcome as executing them in
+ * series, but starts each step as soon as the earlier steps it depends on
+ * have completed, rather than waiting for all earlier steps. A step depends
+ * on an earlier one if they conflict over a {@link Ref} (see
+ * {@link DataflowStep}); a step that declares nothing (any other
+ * {@link AsyncAction}, or a {@link DataflowStep} with no reads or writes)
+ * depends on every earlier step, and every later step depends on it. The
+ * dependency graph is built once, when the action is created, so the latency
+ * of a run approaches the longest chain of dependent steps rather than the
+ * sum of all steps.
+ * </p>
+ *
+ * <p>
+ * As with {@link ParallelAction}, steps may complete on any thread, and are
+ * launched from a single loop guarded by an atomic counter, so steps that
+ * complete synchronously do not grow the stack. Once the run has ended (see
+ * {@link RunContext}), no further steps are started.
+ * </p>
+ */
+class DataflowAction implements AsyncAction {
+
+    private final AsyncAction[] steps;
+    /** The number of earlier steps each step depends on */
+    private final int[] dependencyCounts;
+    /** The later steps that depend on each step */
+    private final int[][] dependents;
+
+    DataflowAction(AsyncAction... steps) {
+        this.steps = steps.clone();
+        this.dependencyCounts = new int[steps.length];
+        List<List<Integer>> dependentLists = new ArrayList<>();
+        for (int later = 0; later < steps.length; later++) {
+            dependentLists.add(new ArrayList<Integer>());
+            for (int earlier = 0; earlier < later; earlier++) {
+                if (conflict(steps[earlier], steps[later])) {
+                    dependentLists.get(earlier).add(later);
+                    dependencyCounts[later]++;
+                }
+            }
+        }
+        this.dependents = new int[steps.length][];
+        for (int i = 0; i < steps.length; i++) {
+            List<Integer> list = dependentLists.get(i);
+            dependents[i] = new int[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                dependents[i][j] = list.get(j);
+            }
+        }
+    }
+
+    private static boolean conflict(AsyncAction earlier, AsyncAction later) {
+        if (!(earlier instanceof DataflowStep) || !(later instanceof DataflowStep)) {
+            return true;
+        }
+        return ((DataflowStep) earlier).conflictsWith((DataflowStep) later);
+    }
+
+    /**
+     * Returns the number of steps that depend on no earlier step, and so start
+     * together at the beginning of each run.
+     */
+    int getRootCount() {
+        int count = 0;
+        for (int dependencyCount : dependencyCounts) {
+            if (dependencyCount == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void run(Runnable onComplete) {
+        if (steps.length == 0) {
+            RunUtil.I.runIfDefined(onComplete);
+            return;
+        }
+        new DataflowRun(onComplete).pump();
+    }
+
+    /**
+     * The state of a single run of the action.
+     */
+    private class DataflowRun {
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        private final AtomicIntegerArray remainingDependencies = new AtomicIntegerArray(dependencyCounts);
+        private final Queue<Integer> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger completedCount = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        DataflowRun(Runnable onComplete) {
+            this.onComplete = onComplete;
+            this.context = RunContext.of(onComplete);
+            for (int i = 0; i < steps.length; i++) {
+                if (dependencyCounts[i] == 0) {
+                    ready.add(i);
+                }
+            }
+        }
+
+        /**
+         * Launches the steps that are ready. A call made while another thread
+         * (or a step completing inline) holds the loop is folded into that
+         * loop.
+         */
+        void pump() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                Integer index;
+                while (!isEnded() && (index = ready.poll()) != null) {
+                    try {
+                        steps[index].run(new StepCallback(this, index));
+                    } catch (RuntimeException e) {
+                        if (context == null) {
+                            throw e;
+                        }
+                        // Ends the run, which stops the loop
+                        context.fail(e);
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private boolean isEnded() {
+            return context != null && context.isEnded();
+        }
+
+        void onStepComplete(int index) {
+            if (isEnded()) {
+                return;
+            }
+            for (int dependent : dependents[index]) {
+                if (remainingDependencies.decrementAndGet(dependent) == 0) {
+                    ready.add(dependent);
+                }
+            }
+            if (completedCount.incrementAndGet() == steps.length) {
+                RunUtil.I.runIfDefined(onComplete);
+                return;
+            }
+            pump();
+        }
+    }
+
+    /**
+     * The callback handed to a single step.
+     */
+    private static class StepCallback implements Runnable, ContextCarrier {
+
+        private final DataflowRun run;
+        private final int index;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        StepCallback(DataflowRun run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            if (completed.compareAndSet(false, true)) {
+                run.onStepComplete(index);
+            }
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return run.context;
+        }
+    }
+}
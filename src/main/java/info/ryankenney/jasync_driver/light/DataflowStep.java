@@ -0,0 +1,75 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * <p>
+ * Wraps an {@link AsyncAction} with the {@link Ref}s it reads and writes, so
+ * that {@link ActionDriver#dataflow(AsyncAction...)} can tell which steps are
+ * independent of one another. Created by {@link ActionDriver#step(AsyncAction)}:
+ * </p>
+ *
+ * <pre>
+ * driver.step(loadUser).reads(userId).writes(user)
+ * </pre>
+ *
+ * <p>
+ * The declarations must cover every {@link Ref} the action (including any
+ * action nested in it) reads or writes, and must be complete before the step
+ * is handed to {@link ActionDriver#dataflow(AsyncAction...)}. A step that
+ * declares nothing is taken to touch everything, so it never overlaps another
+ * step.
+ * </p>
+ */
+public final class DataflowStep implements AsyncAction {
+
+    private final AsyncAction action;
+    private final Set<Ref<?>> reads = Collections.newSetFromMap(new IdentityHashMap<Ref<?>, Boolean>());
+    private final Set<Ref<?>> writes = Collections.newSetFromMap(new IdentityHashMap<Ref<?>, Boolean>());
+
+    DataflowStep(AsyncAction action) {
+        this.action = action;
+    }
+
+    /**
+     * Declares references read by the action.
+     *
+     * @return This step.
+     */
+    public DataflowStep reads(Ref<?>... refs) {
+        Collections.addAll(reads, refs);
+        return this;
+    }
+
+    /**
+     * Declares references written by the action.
+     *
+     * @return This step.
+     */
+    public DataflowStep writes(Ref<?>... refs) {
+        Collections.addAll(writes, refs);
+        return this;
+    }
+
+    /**
+     * Returns true if the provided step must not overlap this one: one of
+     * them declares nothing, or writes a reference the other reads or writes.
+     */
+    boolean conflictsWith(DataflowStep other) {
+        return declaresNothing() || other.declaresNothing()
+                || !Collections.disjoint(writes, other.reads)
+                || !Collections.disjoint(writes, other.writes)
+                || !Collections.disjoint(reads, other.writes);
+    }
+
+    private boolean declaresNothing() {
+        return reads.isEmpty() && writes.isEmpty();
+    }
+
+    @Override
+    public void run(Runnable onComplete) {
+        action.run(onComplete);
+    }
+}
@@ -0,0 +1,19 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * Handles the failure of a run of an {@link ActionDriver}. See
+ * {@link ActionDriver#setOnError(ErrorHandler)}.
+ */
+public interface ErrorHandler {
+
+    /**
+     * Called once, after the run has ended and its remaining actions have been
+     * skipped, and before its "on complete" callback is executed.
+     * 
+     * @param failure
+     *            The exception reported or thrown by the action that failed.
+     * @param context
+     *            The context of the failed run.
+     */
+    public void onError(Throwable failure, RunContext context);
+}
@@ -0,0 +1,21 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * <p>
+ * Marks an {@link AsyncAction} as safe to execute speculatively: it has no
+ * effects outside of the {@link Ref}s it sets in its {@link RunContext}, so
+ * executing it when its result ends up unused costs nothing but the work
+ * itself. See
+ * {@link ActionDriver#doIfElseSpeculatively(AsyncAction, Ref, AsyncAction, AsyncAction)}.
+ * </p>
+ *
+ * <p>
+ * An idempotent action must not read the {@link Ref}s written by the action
+ * it overlaps with, and must not call {@link ActionDriver#stop()}. If it can
+ * abort its work, it should register a cancel hook (see
+ * {@link RunContext#addCancelHook(Runnable)}), which runs when its result is
+ * discarded.
+ * </p>
+ */
+public interface IdempotentAction extends AsyncAction {
+}
@@ -1,11 +1,15 @@
 package info.ryankenney.jasync_driver.light;
 
 
+/**
+ * Executes one of two {@link AsyncAction}s, depending upon the value of a
+ * condition {@link Ref} in the current run.
+ */
 public class IfAction implements AsyncAction {
 
-    private Ref<Boolean> condition;
-    private AsyncAction trueAction;
-    private AsyncAction falseAction;
+    private final Ref<Boolean> condition;
+    private final AsyncAction trueAction;
+    private final AsyncAction falseAction;
 
     public IfAction(Ref<Boolean> condition, AsyncAction trueAction, AsyncAction falseAction) {
         this.condition = condition;
@@ -13,9 +17,21 @@ public class IfAction implements AsyncAction {
         this.falseAction = falseAction;
     }
 
+    Ref<Boolean> getCondition() {
+        return condition;
+    }
+
+    AsyncAction getTrueAction() {
+        return trueAction;
+    }
+
+    AsyncAction getFalseAction() {
+        return falseAction;
+    }
+
     @Override
     public void run(Runnable onComplete) {
-        boolean conditionTrue = condition.get(); 
+        boolean conditionTrue = condition.get(RunContext.of(onComplete));
         if (conditionTrue && trueAction != null) {
             trueAction.run(onComplete);
         } else if (!conditionTrue && falseAction != null) {
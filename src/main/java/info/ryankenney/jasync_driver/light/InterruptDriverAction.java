@@ -7,13 +7,25 @@ package info.ryankenney.jasync_driver.light;
  */
 class InterruptDriverAction implements AsyncAction {
 
-    private ActionDriver driver;
+    private final ActionDriver driver;
     
     public InterruptDriverAction(ActionDriver driver) {
         this.driver = driver;
     }
 
     public void run(final Runnable onComplete) {
-        driver.doOnComplete();
+        RunContext context = RunContext.of(onComplete);
+        RunContext driverContext = context == null ? null : context.forDriver(driver);
+        if (driverContext == null) {
+            // The callback was wrapped by an action that does not carry the
+            // context along (see ContextCarrier). If the driver has a single
+            // run in flight, this can only be part of it.
+            driverContext = driver.getSoleActiveRun();
+        }
+        if (driverContext == null) {
+            throw new IllegalStateException("stop() executed outside of a run of its driver, or with a callback "
+                    + "that does not implement ContextCarrier while several runs are in flight");
+        }
+        driverContext.run();
     }
 }
@@ -0,0 +1,209 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Executes a body {@link AsyncAction} repeatedly, for as long as the
+ * {@link Cursor} of the run says so. The same body is executed by every
+ * iteration, and no actions are created per iteration; only the cursor and
+ * the callback handed to the body are created per run. See
+ * {@link ActionDriver#whileLoop(Ref, AsyncAction)},
+ * {@link ActionDriver#forEach(Iterable, Ref, AsyncAction)} and
+ * {@link ActionDriver#repeat(int, AsyncAction)}.
+ * </p>
+ *
+ * <p>
+ * Like {@link ActionSeries}, iterations that complete synchronously are
+ * stepped through in a loop, rather than by recursing from the callback of one
+ * iteration into the next, so the stack depth does not grow with the number
+ * of iterations. Once the run has ended (see {@link RunContext}), no further
+ * iterations are started.
+ * </p>
+ */
+abstract class LoopAction implements AsyncAction {
+
+    /**
+     * Decides, before each iteration of a single run, whether to execute the
+     * body again.
+     */
+    interface Cursor {
+        boolean advance();
+    }
+
+    private final AsyncAction body;
+
+    LoopAction(AsyncAction body) {
+        this.body = body;
+    }
+
+    /**
+     * Creates the cursor of a new run.
+     */
+    abstract Cursor open(RunContext context);
+
+    @Override
+    public void run(Runnable onComplete) {
+        RunContext context = RunContext.of(onComplete);
+        Cursor cursor;
+        try {
+            cursor = open(context);
+        } catch (RuntimeException e) {
+            if (context == null) {
+                throw e;
+            }
+            context.fail(e);
+            return;
+        }
+        new LoopRun(onComplete, context, cursor).next();
+    }
+
+    /**
+     * The callback handed to the body, which also drives the loop over the
+     * iterations.
+     */
+    private class LoopRun implements Runnable, ContextCarrier {
+
+        private static final int RUNNING = 0;
+        private static final int SUSPENDED = 1;
+        private static final int COMPLETED_INLINE = 2;
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        private final Cursor cursor;
+        private final AtomicInteger state = new AtomicInteger();
+
+        LoopRun(Runnable onComplete, RunContext context, Cursor cursor) {
+            this.onComplete = onComplete;
+            this.context = context;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Called by the body when an iteration completes. If the body is still
+         * on the stack, the loop in {@link #next()} picks up from here once
+         * it returns.
+         */
+        @Override
+        public void run() {
+            if (state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+                return;
+            }
+            next();
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return context;
+        }
+
+        void next() {
+            while (true) {
+                if (context != null && context.isEnded()) {
+                    // Stopped, failed or cancelled: skip the rest
+                    return;
+                }
+                state.set(RUNNING);
+                try {
+                    if (!cursor.advance()) {
+                        break;
+                    }
+                    body.run(this);
+                } catch (RuntimeException e) {
+                    if (context == null) {
+                        throw e;
+                    }
+                    context.fail(e);
+                    return;
+                }
+                if (state.compareAndSet(RUNNING, SUSPENDED)) {
+                    // The iteration completes asynchronously, and calls back in
+                    return;
+                }
+            }
+            RunUtil.I.runIfDefined(onComplete);
+        }
+    }
+
+    /**
+     * See {@link ActionDriver#whileLoop(Ref, AsyncAction)}.
+     */
+    static class WhileLoop extends LoopAction {
+
+        private final Ref<Boolean> condition;
+
+        WhileLoop(Ref<Boolean> condition, AsyncAction body) {
+            super(body);
+            this.condition = condition;
+        }
+
+        @Override
+        Cursor open(final RunContext context) {
+            return new Cursor() {
+                @Override
+                public boolean advance() {
+                    return condition.get(context);
+                }
+            };
+        }
+    }
+
+    /**
+     * See {@link ActionDriver#forEach(Iterable, Ref, AsyncAction)}.
+     */
+    static class ForEachLoop<T> extends LoopAction {
+
+        private final Iterable<? extends T> items;
+        private final Ref<T> item;
+
+        ForEachLoop(Iterable<? extends T> items, Ref<T> item, AsyncAction body) {
+            super(body);
+            this.items = items;
+            this.item = item;
+        }
+
+        @Override
+        Cursor open(final RunContext context) {
+            final Iterator<? extends T> iterator = items.iterator();
+            return new Cursor() {
+                @Override
+                public boolean advance() {
+                    if (!iterator.hasNext()) {
+                        return false;
+                    }
+                    item.set(context, iterator.next());
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * See {@link ActionDriver#repeat(int, AsyncAction)}.
+     */
+    static class RepeatLoop extends LoopAction {
+
+        private final int count;
+
+        RepeatLoop(int count, AsyncAction body) {
+            super(body);
+            if (count < 0) {
+                throw new IllegalArgumentException("count must not be negative");
+            }
+            this.count = count;
+        }
+
+        @Override
+        Cursor open(RunContext context) {
+            return new Cursor() {
+                private int remaining = count;
+
+                @Override
+                public boolean advance() {
+                    return remaining-- > 0;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Starts a set of {@link AsyncAction}s without waiting for one another, and
+ * completes once a given number of them have completed: all of them for
+ * {@link ActionDriver#parallel(AsyncAction...)}, or the first for
+ * {@link ActionDriver#anyOf(AsyncAction...)}. At most a given number of
+ * children run at once; the rest are started as running children complete.
+ * </p>
+ *
+ * <p>
+ * Children may complete on any thread, so each run counts completions with
+ * atomic counters rather than locks. Children that complete synchronously
+ * free their slot for the same launch loop, so the stack does not grow with
+ * the number of children. Each child is handed a callback carrying the
+ * {@link RunContext} of the run, so the {@link Ref}s it reads and writes are
+ * those of the run. Once the action has completed, children not yet started
+ * are never started, and late completions are ignored.
+ * </p>
+ *
+ * <p>
+ * If a child fails, the whole run fails (see {@link RunContext#fail(Throwable)}),
+ * which aborts the siblings still in flight through their cancel hooks, and
+ * children not yet started are never started. The same goes for a run that is
+ * stopped or cancelled.
+ * </p>
+ */
+class ParallelAction implements AsyncAction {
+
+    private final AsyncAction[] actions;
+    private final int maxConcurrency;
+    private final int required;
+
+    /**
+     * @param maxConcurrency
+     *            The maximum number of children running at once.
+     * @param required
+     *            The number of children that must complete before this
+     *            action completes.
+     */
+    ParallelAction(int maxConcurrency, int required, AsyncAction... actions) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.actions = actions.clone();
+        this.maxConcurrency = maxConcurrency;
+        this.required = Math.min(required, actions.length);
+    }
+
+    @Override
+    public void run(Runnable onComplete) {
+        if (required == 0) {
+            RunUtil.I.runIfDefined(onComplete);
+            return;
+        }
+        new ParallelRun(onComplete).pump();
+    }
+
+    /**
+     * The state of a single run of the action.
+     */
+    private class ParallelRun {
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        private final AtomicInteger completedCount = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        /** Only modified by the thread holding the launch loop */
+        private int launchedCount;
+
+        ParallelRun(Runnable onComplete) {
+            this.onComplete = onComplete;
+            this.context = RunContext.of(onComplete);
+        }
+
+        /**
+         * Launches children until the concurrency limit is reached. A call
+         * made while another thread (or a child completing inline) holds the
+         * loop is folded into that loop.
+         */
+        void pump() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!isEnded() && launchedCount < actions.length
+                        && launchedCount - completedCount.get() < maxConcurrency) {
+                    try {
+                        actions[launchedCount++].run(new Branch(this));
+                    } catch (RuntimeException e) {
+                        if (context == null) {
+                            throw e;
+                        }
+                        // Ends the run, which stops the loop
+                        context.fail(e);
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private boolean isEnded() {
+            return finished.get() || (context != null && context.isEnded());
+        }
+
+        void onBranchComplete() {
+            if (context != null && context.isEnded()) {
+                return;
+            }
+            if (completedCount.incrementAndGet() < required) {
+                pump();
+                return;
+            }
+            if (finished.compareAndSet(false, true)) {
+                RunUtil.I.runIfDefined(onComplete);
+            }
+        }
+    }
+
+    /**
+     * The callback handed to a single child.
+     */
+    private static class Branch implements Runnable, ContextCarrier {
+
+        private final ParallelRun run;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        Branch(ParallelRun run) {
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            if (completed.compareAndSet(false, true)) {
+                run.onBranchComplete();
+            }
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return run.context;
+        }
+    }
+}
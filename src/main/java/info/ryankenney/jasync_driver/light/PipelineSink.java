@@ -0,0 +1,27 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * The downstream end of an {@link ActionPipeline}, which receives each item
+ * once the plan has completed for it. Calls are never made concurrently.
+ *
+ * @param <T>
+ *            The type of item.
+ */
+public interface PipelineSink<T> {
+
+    /**
+     * Called once the run of the plan for the provided item has ended.
+     * 
+     * @param context
+     *            The context of the run, from which the {@link Ref}s written
+     *            by the plan can be read. Check
+     *            {@link RunContext#getFailure()} for failed runs, and
+     *            {@link RunContext#isCancelled()} for cancelled ones.
+     */
+    public void onResult(T item, RunContext context);
+
+    /**
+     * Called once the source has ended and every item has been delivered.
+     */
+    public void onEnd();
+}
@@ -0,0 +1,23 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * The upstream end of an {@link ActionPipeline}: a source of items that only
+ * pushes items once the pipeline has asked for them. Passed to
+ * {@link ActionPipeline#subscribe(PipelineSource)}.
+ */
+public interface PipelineSource {
+
+    /**
+     * Signals that the pipeline can accept the provided number of items, in
+     * addition to those requested earlier and not yet pushed. The source
+     * pushes them, now or later, from any thread, with
+     * {@link ActionPipeline#onNext(Object)}, and calls
+     * {@link ActionPipeline#onEnd()} once it has no more items.
+     */
+    public void request(int count);
+
+    /**
+     * Signals that the pipeline accepts no more items.
+     */
+    public void cancel();
+}
@@ -0,0 +1,144 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Lowers the body of an {@link ActionDriver} to a {@link CompiledPlan}. See
+ * {@link ActionDriver#compile()}.
+ * </p>
+ *
+ * <p>
+ * {@link ActionSeries} are flattened into the surrounding code,
+ * {@link IfAction}s become conditional jumps around their branches (or
+ * disappear when both branches are empty), and runs of consecutive
+ * {@link SyncStep}s are fused into a single instruction. Every other
+ * {@link AsyncAction} becomes an instruction of its own, and is executed
+ * unchanged.
+ * </p>
+ */
+final class PlanCompiler {
+
+    private int[] opcodes = new int[16];
+    private Object[] operands = new Object[16];
+    private int[] targets = new int[16];
+    private int count;
+    private final List<SyncStep> pendingSteps = new ArrayList<>();
+
+    private PlanCompiler() {
+    }
+
+    static CompiledPlan compile(AsyncAction body) {
+        if (body instanceof CompiledPlan) {
+            return (CompiledPlan) body;
+        }
+        PlanCompiler compiler = new PlanCompiler();
+        compiler.emit(body);
+        compiler.flushSteps();
+        return new CompiledPlan(
+                Arrays.copyOf(compiler.opcodes, compiler.count),
+                Arrays.copyOf(compiler.operands, compiler.count),
+                Arrays.copyOf(compiler.targets, compiler.count));
+    }
+
+    private void emit(AsyncAction action) {
+        if (action == null) {
+            return;
+        }
+        if (action instanceof ActionSeries) {
+            for (AsyncAction child : ((ActionSeries) action).getActions()) {
+                emit(child);
+            }
+        } else if (action instanceof SyncStep) {
+            pendingSteps.add((SyncStep) action);
+        } else if (action instanceof IfAction) {
+            emitIf((IfAction) action);
+        } else {
+            add(CompiledPlan.ASYNC, action);
+        }
+    }
+
+    private void emitIf(IfAction action) {
+        AsyncAction onTrue = action.getTrueAction();
+        AsyncAction onFalse = action.getFalseAction();
+        boolean hasTrue = !isEmpty(onTrue);
+        boolean hasFalse = !isEmpty(onFalse);
+        if (!hasTrue && !hasFalse) {
+            return;
+        }
+        if (!hasTrue) {
+            int skipFalse = add(CompiledPlan.JUMP_IF_TRUE, action.getCondition());
+            emit(onFalse);
+            setTarget(skipFalse);
+            return;
+        }
+        int skipTrue = add(CompiledPlan.JUMP_IF_FALSE, action.getCondition());
+        emit(onTrue);
+        if (hasFalse) {
+            int skipFalse = add(CompiledPlan.JUMP, null);
+            setTarget(skipTrue);
+            emit(onFalse);
+            setTarget(skipFalse);
+        } else {
+            setTarget(skipTrue);
+        }
+    }
+
+    /**
+     * Returns true if executing the provided action would have no effect.
+     */
+    private static boolean isEmpty(AsyncAction action) {
+        if (action == null) {
+            return true;
+        }
+        if (action instanceof ActionSeries) {
+            for (AsyncAction child : ((ActionSeries) action).getActions()) {
+                if (!isEmpty(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (action instanceof IfAction) {
+            IfAction ifAction = (IfAction) action;
+            return isEmpty(ifAction.getTrueAction()) && isEmpty(ifAction.getFalseAction());
+        }
+        return false;
+    }
+
+    /**
+     * Points the provided jump at the next instruction. Steps pending fusion
+     * are emitted first, so that they are not skipped.
+     */
+    private void setTarget(int jump) {
+        flushSteps();
+        targets[jump] = count;
+    }
+
+    private void flushSteps() {
+        if (pendingSteps.isEmpty()) {
+            return;
+        }
+        SyncStep[] steps = pendingSteps.toArray(new SyncStep[pendingSteps.size()]);
+        pendingSteps.clear();
+        append(CompiledPlan.SYNC, steps);
+    }
+
+    private int add(int opcode, Object operand) {
+        flushSteps();
+        return append(opcode, operand);
+    }
+
+    private int append(int opcode, Object operand) {
+        if (count == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, count * 2);
+            operands = Arrays.copyOf(operands, count * 2);
+            targets = Arrays.copyOf(targets, count * 2);
+        }
+        opcodes[count] = opcode;
+        operands[count] = operand;
+        return count++;
+    }
+}
@@ -1,8 +1,17 @@
 package info.ryankenney.jasync_driver.light;
 
 /**
+ * <p>
  * A basic reference to an object. Used in cases where we need a final
  * reference, but a dynamic value.
+ * </p>
+ * 
+ * <p>
+ * When a plan is executed by several runs at once, use
+ * {@link #get(RunContext)} and {@link #set(RunContext, Object)} to give each
+ * run its own value. The value held by the reference itself then serves as
+ * the initial value of every run.
+ * </p>
  */
 public class Ref<T> {
 
@@ -24,4 +33,24 @@ public class Ref<T> {
         this.obj = obj;
         return this;
     }
+
+    /**
+     * Returns the value of this reference in the provided run, or the value
+     * held by the reference itself if the context is null.
+     */
+    public T get(RunContext context) {
+        return context == null ? obj : context.get(this);
+    }
+
+    /**
+     * Sets the value of this reference in the provided run, or the value held
+     * by the reference itself if the context is null.
+     */
+    public Ref<T> set(RunContext context, T obj) {
+        if (context == null) {
+            return set(obj);
+        }
+        context.set(this, obj);
+        return this;
+    }
 }
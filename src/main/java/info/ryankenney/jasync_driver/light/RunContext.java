@@ -0,0 +1,371 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * The state of a single run of an {@link ActionDriver}: the values of the
+ * {@link Ref}s read and written during the run, and the callback to execute
+ * when it completes. The actions themselves hold no state of their own, so a
+ * single plan can be executed any number of times, concurrently, each run
+ * with its own context.
+ * </p>
+ * 
+ * <p>
+ * A context is created by {@link ActionDriver#prepare(Runnable)} (or
+ * implicitly by {@link ActionDriver#run(Runnable)}), and reaches each action
+ * through the "on complete" callback it is handed. A driver nested in the
+ * body of another shares the {@link Ref} values of the outer run.
+ * </p>
+ * 
+ * <p>
+ * A run ends when its body completes, when it reaches
+ * {@link ActionDriver#stop()}, when an action reports a failure through
+ * {@link #fail(Throwable)} (or throws from its {@code run} method), or when it
+ * is cancelled. A cancelled run, and an outermost run that fails with no error
+ * handler, never execute their "on complete" callback. Once it has ended, the remaining actions of the body are
+ * skipped, callbacks from actions still in flight are ignored, and the hooks
+ * registered with {@link #addCancelHook(Runnable)} are executed, so that
+ * those actions can abort their work.
+ * </p>
+ */
+public final class RunContext implements Runnable, ContextCarrier {
+
+    private final ActionDriver driver;
+    private final AsyncAction body;
+    private final RunContext parent;
+    private final Runnable onComplete;
+    private final boolean isolated;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final List<Runnable> cancelHooks = new ArrayList<>();
+    private final Runnable parentHook = new Runnable() {
+        @Override
+        public void run() {
+            end(null);
+        }
+    };
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private volatile Thread startingThread;
+    private boolean rethrow;
+    private Map<Ref<?>, Object> values;
+
+    RunContext(ActionDriver driver, AsyncAction body, RunContext parent, Runnable onComplete) {
+        this(driver, body, parent, onComplete, false);
+    }
+
+    private RunContext(ActionDriver driver, AsyncAction body, RunContext parent, Runnable onComplete,
+            boolean isolated) {
+        this.driver = driver;
+        this.body = body;
+        this.parent = parent;
+        this.onComplete = onComplete;
+        this.isolated = isolated;
+    }
+
+    /**
+     * Returns the context carried by the provided callback, or null if it
+     * carries none.
+     */
+    public static RunContext of(Runnable onComplete) {
+        if (onComplete instanceof ContextCarrier) {
+            return ((ContextCarrier) onComplete).getRunContext();
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value of the provided reference for this run only.
+     * 
+     * @return This context.
+     */
+    public <T> RunContext set(Ref<T> ref, T value) {
+        RunContext scope = scope();
+        synchronized (scope) {
+            if (scope.values == null) {
+                scope.values = new IdentityHashMap<>();
+            }
+            scope.values.put(ref, value);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the value of the provided reference for this run. If the run
+     * never set it, this is the value held by the reference itself.
+     */
+    public <T> T get(Ref<T> ref) {
+        for (RunContext scope = scope(); scope != null; scope = scope.parent == null ? null : scope.parent.scope()) {
+            synchronized (scope) {
+                if (scope.values != null && scope.values.containsKey(ref)) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) scope.values.get(ref);
+                    return value;
+                }
+            }
+        }
+        return ref.get();
+    }
+
+    /**
+     * Starts the run.
+     * 
+     * @throws RuntimeException
+     *             If the run fails before this returns, with nothing to
+     *             handle the failure (see {@link #fail(Throwable)}).
+     */
+    public void start() {
+        if (parent != null) {
+            parent.addCancelHook(parentHook);
+        }
+        if (driver != null) {
+            driver.addActiveRun(this);
+        }
+        startingThread = Thread.currentThread();
+        try {
+            body.run(this);
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            startingThread = null;
+        }
+        if (rethrow) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Completes the run, executing its "on complete" callback. Has no effect
+     * after the run has ended.
+     */
+    @Override
+    public void run() {
+        if (end(null)) {
+            RunUtil.I.runIfDefined(onComplete);
+        }
+    }
+
+    /**
+     * <p>
+     * Ends the run with a failure. Actions report failures by calling this
+     * instead of their "on complete" callback:
+     * </p>
+     * 
+     * <pre>
+     * RunContext.of(onComplete).fail(cause);
+     * </pre>
+     * 
+     * <p>
+     * If the driver of the run has an error handler (see
+     * {@link ActionDriver#setOnError(ErrorHandler)}), it is handed the failure
+     * and the run then completes, so a driver nested in the body of another
+     * lets the outer run continue. Otherwise the failure ends the outer run as
+     * well, up to the outermost run, which records the failure (see
+     * {@link #getFailure()}) without executing its "on complete" callback. If
+     * {@link #start()} of that run has not yet returned on the thread
+     * reporting the failure, the failure is rethrown from there. Has no effect
+     * after the run has ended.
+     * </p>
+     */
+    public void fail(Throwable cause) {
+        if (!end(cause)) {
+            return;
+        }
+        ErrorHandler handler = driver == null ? null : driver.getOnError();
+        if (handler != null) {
+            handler.onError(cause, this);
+        } else if (parent != null && !isolated) {
+            parent.fail(cause);
+            return;
+        } else if (parent == null) {
+            if (startingThread == Thread.currentThread()) {
+                rethrow = true;
+            }
+            return;
+        }
+        RunUtil.I.runIfDefined(onComplete);
+    }
+
+    /**
+     * Cancels the run. The "on complete" callback is never executed, and any
+     * error handler is bypassed. If this run is nested in another, the outer
+     * run fails with a {@link CancellationException}. Has no effect after the
+     * run has ended.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (end(null) && parent != null) {
+            parent.fail(new CancellationException("Nested run was cancelled"));
+        }
+    }
+
+    /**
+     * Returns true if {@link #cancel()} ended this run.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the failure that ended this run, or null if it has not failed.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Registers an action to run if this run ends while the hook is still
+     * registered, for whatever reason. Actions that can abort their work (an
+     * I/O request, a timer, ...) register a hook when they start, and remove
+     * it when they complete. If the run has already ended, the hook runs
+     * immediately.
+     */
+    public void addCancelHook(Runnable hook) {
+        synchronized (cancelHooks) {
+            if (!completed.get()) {
+                cancelHooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    /**
+     * Removes an action registered with {@link #addCancelHook(Runnable)}.
+     */
+    public void removeCancelHook(Runnable hook) {
+        synchronized (cancelHooks) {
+            cancelHooks.remove(hook);
+        }
+    }
+
+    /**
+     * Returns true if this run has ended without executing its "on complete"
+     * callback, either because it was cancelled or because it failed with
+     * nothing to handle the failure.
+     */
+    boolean isEndedWithoutCallback() {
+        if (cancelled) {
+            return true;
+        }
+        return failure != null && parent == null && (driver == null || driver.getOnError() == null);
+    }
+
+    /**
+     * Returns true if this run, or any run it is nested in, has ended, in
+     * which case the remaining actions of the body are skipped.
+     */
+    boolean isEnded() {
+        for (RunContext context = this; context != null; context = context.parent) {
+            if (context.completed.get()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the run as ended, and executes the cancel hooks still registered.
+     * 
+     * @return False if the run had already ended.
+     */
+    private boolean end(Throwable cause) {
+        List<Runnable> hooks;
+        synchronized (cancelHooks) {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
+            }
+            failure = cause;
+            hooks = new ArrayList<>(cancelHooks);
+            cancelHooks.clear();
+        }
+        if (parent != null) {
+            parent.removeCancelHook(parentHook);
+        }
+        if (driver != null) {
+            driver.removeActiveRun(this);
+        }
+        for (Runnable hook : hooks) {
+            hook.run();
+        }
+        return true;
+    }
+
+    @Override
+    public RunContext getRunContext() {
+        return this;
+    }
+
+    /**
+     * Returns the context of the run of the provided driver that this context
+     * is part of, or null if there is none.
+     */
+    RunContext forDriver(ActionDriver driver) {
+        for (RunContext context = this; context != null; context = context.parent) {
+            if (context.driver == driver) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates an isolated context nested in this one, to execute the provided
+     * action speculatively. {@link Ref} values set in it stay in it until
+     * {@link #commit()} is called, and a failure in it is recorded rather
+     * than propagated, executing the provided callback either way.
+     */
+    RunContext fork(AsyncAction action, Runnable onComplete) {
+        return new RunContext(null, action, this, onComplete, true);
+    }
+
+    /**
+     * Copies the {@link Ref} values set in this isolated context into the
+     * context it is nested in.
+     */
+    void commit() {
+        Map<Ref<?>, Object> committed;
+        synchronized (this) {
+            if (values == null) {
+                return;
+            }
+            committed = new IdentityHashMap<>(values);
+        }
+        for (Map.Entry<Ref<?>, Object> entry : committed.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Ref<Object> ref = (Ref<Object>) entry.getKey();
+            parent.set(ref, entry.getValue());
+        }
+    }
+
+    /**
+     * Ends the run without executing its "on complete" callback, and without
+     * affecting the context it is nested in.
+     */
+    void abandon() {
+        end(null);
+    }
+
+    /**
+     * Returns the context that holds the {@link Ref} values set in this run:
+     * the outermost run, or the nearest isolated one.
+     */
+    private RunContext scope() {
+        RunContext scope = this;
+        while (!scope.isolated && scope.parent != null) {
+            scope = scope.parent;
+        }
+        return scope;
+    }
+}
@@ -0,0 +1,216 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * An {@link IfAction} whose condition is computed by a preceding (typically
+ * slow) action, and whose branches are started while that action is still
+ * running, when they are {@link IdempotentAction}s. Created by
+ * {@link ActionDriver#doIfElseSpeculatively(AsyncAction, Ref, AsyncAction, AsyncAction)}.
+ * </p>
+ *
+ * <p>
+ * Each speculative branch runs in an isolated {@link RunContext}, so the
+ * {@link Ref}s it sets are invisible to the run. Once the condition action
+ * completes, the losing branch is abandoned (executing its cancel hooks) and
+ * its values discarded, while the winning branch, once complete, has its
+ * values committed to the run. A branch that is not idempotent is only
+ * started once the condition is known, as with a plain {@link IfAction}.
+ * </p>
+ *
+ * <p>
+ * Speculation pays off only when the condition action and the branches are
+ * slow enough to overlap, and the work of the losing branch is cheap enough
+ * to waste. The counters of this action show how often it does, to decide
+ * whether to keep it.
+ * </p>
+ */
+public class SpeculativeIfAction implements AsyncAction {
+
+    private final AsyncAction conditionAction;
+    private final Ref<Boolean> condition;
+    private final AsyncAction trueAction;
+    private final AsyncAction falseAction;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong wasteCount = new AtomicLong();
+
+    SpeculativeIfAction(AsyncAction conditionAction, Ref<Boolean> condition, AsyncAction trueAction,
+            AsyncAction falseAction) {
+        this.conditionAction = conditionAction;
+        this.condition = condition;
+        this.trueAction = trueAction;
+        this.falseAction = falseAction;
+    }
+
+    /**
+     * Returns the number of speculative branches whose result was used.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of speculative branches whose result was discarded.
+     */
+    public long getWasteCount() {
+        return wasteCount.get();
+    }
+
+    /**
+     * Returns the fraction of speculative branches whose result was used, or
+     * 0 if none has been started.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + wasteCount.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public void run(Runnable onComplete) {
+        RunContext context = RunContext.of(onComplete);
+        if (context == null) {
+            // Nowhere to isolate the branches in, so don't speculate
+            new IfAction(condition, trueAction, falseAction).run(onComplete);
+            return;
+        }
+        new SpeculationRun(onComplete, context).start();
+    }
+
+    /**
+     * The state of a single run of the action.
+     */
+    private class SpeculationRun implements Runnable, ContextCarrier {
+
+        private final Runnable onComplete;
+        private final RunContext context;
+        // Guarded by this
+        private RunContext trueBranch;
+        private RunContext falseBranch;
+        private boolean decided;
+        private RunContext winner;
+        private boolean trueFinished;
+        private boolean falseFinished;
+        private boolean delivered;
+
+        SpeculationRun(Runnable onComplete, RunContext context) {
+            this.onComplete = onComplete;
+            this.context = context;
+        }
+
+        void start() {
+            RunContext trueSpeculation = speculate(trueAction);
+            RunContext falseSpeculation = speculate(falseAction);
+            synchronized (this) {
+                trueBranch = trueSpeculation;
+                falseBranch = falseSpeculation;
+            }
+            if (trueSpeculation != null) {
+                trueSpeculation.start();
+            }
+            if (falseSpeculation != null) {
+                falseSpeculation.start();
+            }
+            conditionAction.run(this);
+        }
+
+        private RunContext speculate(AsyncAction action) {
+            if (!(action instanceof IdempotentAction)) {
+                return null;
+            }
+            final RunContext[] branch = new RunContext[1];
+            branch[0] = context.fork(action, new Runnable() {
+                @Override
+                public void run() {
+                    onBranchFinished(branch[0]);
+                }
+            });
+            return branch[0];
+        }
+
+        /**
+         * Called when the condition action completes.
+         */
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (decided) {
+                    return;
+                }
+                decided = true;
+            }
+            if (context.isEnded()) {
+                return;
+            }
+            boolean conditionTrue = condition.get(context);
+            RunContext chosen;
+            RunContext discarded;
+            synchronized (this) {
+                chosen = conditionTrue ? trueBranch : falseBranch;
+                discarded = conditionTrue ? falseBranch : trueBranch;
+            }
+            if (discarded != null) {
+                wasteCount.incrementAndGet();
+                discarded.abandon();
+            }
+            if (chosen == null) {
+                // Not speculated: execute the branch now, if there is one
+                AsyncAction action = conditionTrue ? trueAction : falseAction;
+                if (action != null) {
+                    action.run(onComplete);
+                } else {
+                    RunUtil.I.runIfDefined(onComplete);
+                }
+                return;
+            }
+            hitCount.incrementAndGet();
+            synchronized (this) {
+                winner = chosen;
+                if (!(chosen == trueBranch ? trueFinished : falseFinished)) {
+                    // Delivered once the branch finishes
+                    return;
+                }
+            }
+            deliver();
+        }
+
+        @Override
+        public RunContext getRunContext() {
+            return context;
+        }
+
+        private void onBranchFinished(RunContext branch) {
+            synchronized (this) {
+                if (branch == trueBranch) {
+                    trueFinished = true;
+                } else {
+                    falseFinished = true;
+                }
+                if (branch != winner) {
+                    return;
+                }
+            }
+            deliver();
+        }
+
+        private void deliver() {
+            synchronized (this) {
+                if (delivered) {
+                    return;
+                }
+                delivered = true;
+            }
+            if (context.isEnded()) {
+                return;
+            }
+            Throwable failure = winner.getFailure();
+            if (failure != null) {
+                context.fail(failure);
+                return;
+            }
+            winner.commit();
+            RunUtil.I.runIfDefined(onComplete);
+        }
+    }
+}
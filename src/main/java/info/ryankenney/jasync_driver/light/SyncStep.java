@@ -0,0 +1,21 @@
+package info.ryankenney.jasync_driver.light;
+
+/**
+ * The {@link AsyncAction} created by {@link ActionDriver#exec(SyncAction)} and
+ * {@link ActionDriver#exec(ContextSyncAction)}. It is a class of its own so
+ * that the {@link PlanCompiler} can recognize synchronous steps and fuse
+ * consecutive ones into a single instruction.
+ */
+abstract class SyncStep implements AsyncAction {
+
+    /**
+     * Executes the wrapped action in the provided run.
+     */
+    abstract void apply(RunContext context);
+
+    @Override
+    public void run(Runnable onComplete) {
+        apply(RunContext.of(onComplete));
+        RunUtil.I.runIfDefined(onComplete);
+    }
+}
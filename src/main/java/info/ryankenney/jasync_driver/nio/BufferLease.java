@@ -0,0 +1,59 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A buffer borrowed from a {@link BufferPool}. The channel tasks of this
+ * package release the leases they return once the {@link JasyncDriver} run
+ * that requested them ends, so a {@link DriverBody} never releases them
+ * itself. The buffer must not be used after that.
+ * </p>
+ * 
+ * <p>
+ * Since a {@link DriverBody} is executed repeatedly, reading the buffer with
+ * relative gets would leave it drained on the next execution. Read it
+ * through {@link ByteBuffer#duplicate()} or with absolute gets.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class BufferLease implements Runnable {
+
+	private final BufferPool pool;
+	private final ByteBuffer buffer;
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	BufferLease(BufferPool pool, ByteBuffer buffer) {
+		this.pool = pool;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Returns the leased buffer.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the buffer to its pool. Has no effect after the first call.
+	 */
+	public void release() {
+		if (released.compareAndSet(false, true)) {
+			pool.recycle(buffer);
+		}
+	}
+
+	/**
+	 * Releases the lease, for use as a run-complete hook.
+	 */
+	@Override
+	public void run() {
+		release();
+	}
+}
@@ -0,0 +1,99 @@
+package info.ryankenney.jasync_driver.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A pool of direct {@link ByteBuffer}s of a fixed size, handed out as
+ * {@link BufferLease}s. Direct buffers are costly to allocate and are only
+ * freed by the garbage collector, so recycling them keeps channel I/O free of
+ * per-call allocation.
+ * </p>
+ * 
+ * <p>
+ * A pool never blocks: when it is empty, a new buffer is allocated, and when
+ * it already holds its maximum, a returned buffer is dropped.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class BufferPool {
+
+	private final int bufferSize;
+	private final int maxPooled;
+	private final Queue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooledCount = new AtomicInteger();
+	private final AtomicInteger leasedCount = new AtomicInteger();
+	private final AtomicLong allocatedCount = new AtomicLong();
+
+	/**
+	 * @param bufferSize
+	 *            The capacity of each buffer, in bytes.
+	 * @param maxPooled
+	 *            The maximum number of idle buffers kept for reuse.
+	 */
+	public BufferPool(int bufferSize, int maxPooled) {
+		if (bufferSize < 1 || maxPooled < 0) {
+			throw new IllegalArgumentException("bufferSize must be positive and maxPooled not negative");
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Leases a cleared buffer from the pool, allocating one if none is idle.
+	 */
+	public BufferLease acquire() {
+		ByteBuffer buffer = pooled.poll();
+		if (buffer == null) {
+			allocatedCount.incrementAndGet();
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		} else {
+			pooledCount.decrementAndGet();
+		}
+		leasedCount.incrementAndGet();
+		return new BufferLease(this, buffer);
+	}
+
+	/**
+	 * Returns the capacity of each buffer, in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns the number of buffers currently leased.
+	 */
+	public int getLeasedCount() {
+		return leasedCount.get();
+	}
+
+	/**
+	 * Returns the number of idle buffers held for reuse.
+	 */
+	public int getPooledCount() {
+		return pooledCount.get();
+	}
+
+	/**
+	 * Returns the number of buffers allocated since construction.
+	 */
+	public long getAllocatedCount() {
+		return allocatedCount.get();
+	}
+
+	void recycle(ByteBuffer buffer) {
+		leasedCount.decrementAndGet();
+		if (pooledCount.incrementAndGet() > maxPooled) {
+			pooledCount.decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		pooled.offer(buffer);
+	}
+}
@@ -0,0 +1,51 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers shared by the channel tasks.
+ * 
+ * @author rkenney
+ */
+class ChannelSupport {
+
+	/**
+	 * Leases a buffer, to be released when the run of the calling driver
+	 * ends.
+	 */
+	static BufferLease acquire(BufferPool pool, ResultHandler<?> resultHandler) {
+		BufferLease lease = pool.acquire();
+		TaskContext context = resultHandler.getContext();
+		if (context != null) {
+			context.onRunComplete(lease);
+		}
+		return lease;
+	}
+
+	/**
+	 * Returns the time left before the deadline of the calling driver, in
+	 * milliseconds, or 0 (no timeout) if it has none.
+	 */
+	static long timeoutMillis(ResultHandler<?> resultHandler) {
+		TaskContext context = resultHandler.getContext();
+		if (context == null || context.getDeadline() == null) {
+			return 0;
+		}
+		return Math.max(1, context.getTimeRemaining(TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Returns the index of the first buffer with bytes remaining, or the
+	 * number of buffers if there is none.
+	 */
+	static int firstRemaining(ByteBuffer[] buffers, int from) {
+		while (from < buffers.length && !buffers[from].hasRemaining()) {
+			from++;
+		}
+		return from;
+	}
+}
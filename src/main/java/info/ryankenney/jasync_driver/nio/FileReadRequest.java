@@ -0,0 +1,30 @@
+package info.ryankenney.jasync_driver.nio;
+
+import java.nio.channels.AsynchronousFileChannel;
+
+/**
+ * The argument of a {@link FileReadTask}: a region of a file to read.
+ * 
+ * @author rkenney
+ */
+public class FileReadRequest {
+
+	final AsynchronousFileChannel channel;
+	final long position;
+	final int length;
+
+	/**
+	 * @param channel
+	 *            The file to read.
+	 * @param position
+	 *            The file position at which to start reading.
+	 * @param length
+	 *            The number of bytes to read, at most the buffer size of the
+	 *            {@link BufferPool} of the task.
+	 */
+	public FileReadRequest(AsynchronousFileChannel channel, long position, int length) {
+		this.channel = channel;
+		this.position = position;
+		this.length = length;
+	}
+}
@@ -0,0 +1,59 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that reads a region of a file into a buffer leased
+ * from a {@link BufferPool}. Partial reads are continued from the channel's
+ * completion handler, so the driver is only resumed once, with the whole
+ * region (or as much of it as precedes the end of the file).
+ * </p>
+ * 
+ * <p>
+ * The result is flipped, ready to be read, and released once the run of the
+ * calling driver ends.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class FileReadTask implements AsyncTask<FileReadRequest, BufferLease> {
+
+	private final BufferPool pool;
+
+	public FileReadTask(BufferPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void run(final FileReadRequest request, final ResultHandler<BufferLease> resultHandler) {
+		if (request.length > pool.getBufferSize()) {
+			resultHandler.reportFailure(new IllegalArgumentException(String.format(
+					"Cannot read %s bytes into buffers of %s", request.length, pool.getBufferSize())));
+			return;
+		}
+		final BufferLease lease = ChannelSupport.acquire(pool, resultHandler);
+		final ByteBuffer buffer = lease.getBuffer();
+		buffer.limit(request.length);
+		request.channel.read(buffer, request.position, null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer count, Void attachment) {
+				if (count >= 0 && buffer.hasRemaining()) {
+					request.channel.read(buffer, request.position + buffer.position(), null, this);
+					return;
+				}
+				buffer.flip();
+				resultHandler.reportComplete(lease);
+			}
+			@Override
+			public void failed(Throwable cause, Void attachment) {
+				lease.release();
+				resultHandler.reportFailure(cause);
+			}
+		});
+	}
+}
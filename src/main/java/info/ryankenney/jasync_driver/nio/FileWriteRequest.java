@@ -0,0 +1,31 @@
+package info.ryankenney.jasync_driver.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+
+/**
+ * The argument of a {@link FileWriteTask}: buffers to write to a file, one
+ * after the other.
+ * 
+ * @author rkenney
+ */
+public class FileWriteRequest {
+
+	final AsynchronousFileChannel channel;
+	final long position;
+	final ByteBuffer[] buffers;
+
+	/**
+	 * @param channel
+	 *            The file to write.
+	 * @param position
+	 *            The file position at which to write the first byte.
+	 * @param buffers
+	 *            The buffers whose remaining bytes to write.
+	 */
+	public FileWriteRequest(AsynchronousFileChannel channel, long position, ByteBuffer... buffers) {
+		this.channel = channel;
+		this.position = position;
+		this.buffers = buffers;
+	}
+}
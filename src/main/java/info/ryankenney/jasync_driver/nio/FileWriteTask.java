@@ -0,0 +1,43 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.nio.channels.CompletionHandler;
+
+/**
+ * An {@link AsyncTask} that writes buffers to a file, one after the other,
+ * until all their remaining bytes are written. Partial writes are continued
+ * from the channel's completion handler, so the driver is only resumed once,
+ * with the total number of bytes written.
+ * 
+ * @author rkenney
+ */
+public class FileWriteTask implements AsyncTask<FileWriteRequest, Long> {
+
+	@Override
+	public void run(final FileWriteRequest request, final ResultHandler<Long> resultHandler) {
+		int first = ChannelSupport.firstRemaining(request.buffers, 0);
+		if (first == request.buffers.length) {
+			resultHandler.reportComplete(0L);
+			return;
+		}
+		request.channel.write(request.buffers[first], request.position, first, new CompletionHandler<Integer, Integer>() {
+			private long written;
+			@Override
+			public void completed(Integer count, Integer index) {
+				written += count;
+				int next = ChannelSupport.firstRemaining(request.buffers, index);
+				if (next == request.buffers.length) {
+					resultHandler.reportComplete(written);
+					return;
+				}
+				request.channel.write(request.buffers[next], request.position + written, next, this);
+			}
+			@Override
+			public void failed(Throwable cause, Integer index) {
+				resultHandler.reportFailure(cause);
+			}
+		});
+	}
+}
@@ -0,0 +1,26 @@
+package info.ryankenney.jasync_driver.nio;
+
+import java.nio.channels.AsynchronousSocketChannel;
+
+/**
+ * The argument of a {@link SocketReadTask}: a number of bytes to read from a
+ * socket.
+ * 
+ * @author rkenney
+ */
+public class SocketReadRequest {
+
+	final AsynchronousSocketChannel channel;
+	final long length;
+
+	/**
+	 * @param channel
+	 *            The socket to read.
+	 * @param length
+	 *            The exact number of bytes to read.
+	 */
+	public SocketReadRequest(AsynchronousSocketChannel channel, long length) {
+		this.channel = channel;
+		this.length = length;
+	}
+}
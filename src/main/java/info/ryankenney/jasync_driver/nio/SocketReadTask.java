@@ -0,0 +1,84 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An {@link AsyncTask} that reads an exact number of bytes from a socket,
+ * scattering them across as many buffers leased from a {@link BufferPool} as
+ * needed. Partial reads are continued from the channel's completion handler,
+ * so the driver is only resumed once all bytes have arrived. If the socket
+ * reaches end-of-stream first, the task fails with an {@link EOFException}.
+ * </p>
+ * 
+ * <p>
+ * If the calling driver has a {@link info.ryankenney.jasync_driver.Deadline},
+ * the time remaining is used as the read timeout. The resulting buffers are
+ * flipped, ready to be read, and released once the run of the calling driver
+ * ends.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class SocketReadTask implements AsyncTask<SocketReadRequest, List<BufferLease>> {
+
+	private final BufferPool pool;
+
+	public SocketReadTask(BufferPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void run(final SocketReadRequest request, final ResultHandler<List<BufferLease>> resultHandler) {
+		final List<BufferLease> leases = new ArrayList<>();
+		final ByteBuffer[] buffers = new ByteBuffer[(int) ((request.length + pool.getBufferSize() - 1) / pool.getBufferSize())];
+		long unassigned = request.length;
+		for (int i = 0; i < buffers.length; i++) {
+			BufferLease lease = ChannelSupport.acquire(pool, resultHandler);
+			leases.add(lease);
+			buffers[i] = lease.getBuffer();
+			buffers[i].limit((int) Math.min(unassigned, pool.getBufferSize()));
+			unassigned -= buffers[i].limit();
+		}
+		if (buffers.length == 0) {
+			resultHandler.reportComplete(Collections.<BufferLease>emptyList());
+			return;
+		}
+		request.channel.read(buffers, 0, buffers.length, ChannelSupport.timeoutMillis(resultHandler),
+				TimeUnit.MILLISECONDS, 0, new CompletionHandler<Long, Integer>() {
+			@Override
+			public void completed(Long count, Integer index) {
+				if (count < 0) {
+					failed(new EOFException("Socket closed before all bytes were read"), index);
+					return;
+				}
+				int next = ChannelSupport.firstRemaining(buffers, index);
+				if (next < buffers.length) {
+					request.channel.read(buffers, next, buffers.length - next,
+							ChannelSupport.timeoutMillis(resultHandler), TimeUnit.MILLISECONDS, next, this);
+					return;
+				}
+				for (ByteBuffer buffer : buffers) {
+					buffer.flip();
+				}
+				resultHandler.reportComplete(leases);
+			}
+			@Override
+			public void failed(Throwable cause, Integer index) {
+				for (BufferLease lease : leases) {
+					lease.release();
+				}
+				resultHandler.reportFailure(cause);
+			}
+		});
+	}
+}
@@ -0,0 +1,27 @@
+package info.ryankenney.jasync_driver.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+
+/**
+ * The argument of a {@link SocketWriteTask}: buffers to write to a socket,
+ * gathered into as few writes as the socket allows.
+ * 
+ * @author rkenney
+ */
+public class SocketWriteRequest {
+
+	final AsynchronousSocketChannel channel;
+	final ByteBuffer[] buffers;
+
+	/**
+	 * @param channel
+	 *            The socket to write.
+	 * @param buffers
+	 *            The buffers whose remaining bytes to write.
+	 */
+	public SocketWriteRequest(AsynchronousSocketChannel channel, ByteBuffer... buffers) {
+		this.channel = channel;
+		this.buffers = buffers;
+	}
+}
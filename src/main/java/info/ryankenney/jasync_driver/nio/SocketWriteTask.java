@@ -0,0 +1,49 @@
+package info.ryankenney.jasync_driver.nio;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AsyncTask} that writes buffers to a socket with gathering writes,
+ * until all their remaining bytes are written. Partial writes are continued
+ * from the channel's completion handler, so the driver is only resumed once,
+ * with the total number of bytes written. If the calling driver has a
+ * {@link info.ryankenney.jasync_driver.Deadline}, the time remaining is used
+ * as the write timeout.
+ * 
+ * @author rkenney
+ */
+public class SocketWriteTask implements AsyncTask<SocketWriteRequest, Long> {
+
+	@Override
+	public void run(final SocketWriteRequest request, final ResultHandler<Long> resultHandler) {
+		int first = ChannelSupport.firstRemaining(request.buffers, 0);
+		if (first == request.buffers.length) {
+			resultHandler.reportComplete(0L);
+			return;
+		}
+		request.channel.write(request.buffers, first, request.buffers.length - first,
+				ChannelSupport.timeoutMillis(resultHandler), TimeUnit.MILLISECONDS, first,
+				new CompletionHandler<Long, Integer>() {
+			private long written;
+			@Override
+			public void completed(Long count, Integer index) {
+				written += count;
+				int next = ChannelSupport.firstRemaining(request.buffers, index);
+				if (next == request.buffers.length) {
+					resultHandler.reportComplete(written);
+					return;
+				}
+				request.channel.write(request.buffers, next, request.buffers.length - next,
+						ChannelSupport.timeoutMillis(resultHandler), TimeUnit.MILLISECONDS, next, this);
+			}
+			@Override
+			public void failed(Throwable cause, Integer index) {
+				resultHandler.reportFailure(cause);
+			}
+		});
+	}
+}
@@ -0,0 +1,248 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ForwardingResultHandler;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.LatencyStats;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Caps the number of calls in flight to a family of {@link AsyncTask}s (such
+ * as all the tasks that call one downstream service), adapting the cap to the
+ * latency observed. The cap grows by one for every "limit" calls that complete
+ * within the latency threshold, and shrinks by 10% whenever a call fails or
+ * exceeds the threshold (additive-increase/multiplicative-decrease).
+ * </p>
+ * 
+ * <p>
+ * Calls beyond the cap wait in a FIFO queue. Since the calling
+ * {@link JasyncDriver} is suspended anyway while its task is in flight, no
+ * thread ever blocks: a queued call is simply started later, as permits free
+ * up. Calls beyond the maximum queue depth are rejected with a
+ * {@link RejectedExecutionException}, via
+ * {@link ResultHandler#reportFailure(Throwable)}.
+ * </p>
+ * 
+ * <pre>
+ * AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 200, 50, TimeUnit.MILLISECONDS);
+ * AsyncTask&lt;User, Permissions&gt; readUserPermissions = limiter.wrap(new ReadUserPermissions(webServer));
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private static final double BACKOFF_RATIO = 0.9;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private volatile int maxQueueDepth = Integer.MAX_VALUE;
+	private final AtomicLong limitBits;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Queue<LimitedCall<?,?>> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger drainClaims = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final LatencyStats latencyStats = new LatencyStats();
+
+	/**
+	 * @param initialLimit
+	 *            The number of calls allowed in flight at first.
+	 * @param minLimit
+	 *            The lowest the limit may shrink to.
+	 * @param maxLimit
+	 *            The highest the limit may grow to.
+	 * @param latencyThreshold
+	 *            Calls slower than this count as a sign of overload.
+	 * @param unit
+	 *            The unit of latencyThreshold.
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, TimeUnit unit) {
+		if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+		this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+	}
+
+	/**
+	 * Sets the maximum number of calls that may wait for a permit. Calls
+	 * beyond it are rejected. Unbounded by default.
+	 * 
+	 * @return This limiter.
+	 */
+	public AdaptiveConcurrencyLimiter setMaxQueueDepth(int maxQueueDepth) {
+		this.maxQueueDepth = maxQueueDepth;
+		return this;
+	}
+
+	/**
+	 * Returns an {@link AsyncTask} that runs the provided task under this
+	 * limiter. Wrap every task of the family with the same limiter.
+	 */
+	public <A,R> AsyncTask<A,R> wrap(final AsyncTask<A,R> task) {
+		return new AsyncTask<A,R>() {
+			@Override
+			public void run(A arg, ResultHandler<R> resultHandler) {
+				submit(new LimitedCall<>(task, arg, resultHandler));
+			}
+		};
+	}
+
+	/**
+	 * Returns the current number of calls allowed in flight.
+	 */
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(limitBits.get());
+	}
+
+	/**
+	 * Returns the number of calls currently in flight.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns the number of calls waiting for a permit.
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Returns the number of calls rejected because the queue was full.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Returns the latency of the calls completed under this limiter.
+	 */
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+	private void submit(LimitedCall<?,?> call) {
+		if (queueDepth.incrementAndGet() > maxQueueDepth) {
+			queueDepth.decrementAndGet();
+			rejectedCount.incrementAndGet();
+			call.resultHandler.reportFailure(new RejectedExecutionException("Concurrency limit queue is full"));
+			return;
+		}
+		queue.add(call);
+		drain();
+	}
+
+	/**
+	 * Starts queued calls while permits are available. Only one thread drains
+	 * at a time; calls that arrive (or complete) meanwhile leave a claim that
+	 * makes the draining thread go around again, so calls completing inline
+	 * never recurse into this method.
+	 */
+	private void drain() {
+		if (drainClaims.getAndIncrement() != 0) {
+			return;
+		}
+		int claims = 1;
+		do {
+			while (inFlight.get() < getLimit()) {
+				LimitedCall<?,?> call = queue.poll();
+				if (call == null) {
+					break;
+				}
+				queueDepth.decrementAndGet();
+				inFlight.incrementAndGet();
+				try {
+					call.start();
+				} catch (RuntimeException e) {
+					// Either the task threw before reporting, which fails the
+					// call, or the body of its driver failed on an inline
+					// completion, which the driver has already recorded. It is
+					// no business of whoever happens to be draining.
+					call.reportThrown(e);
+				}
+			}
+			claims = drainClaims.addAndGet(-claims);
+		} while (claims != 0);
+	}
+
+	private void onCallComplete(long latencyNanos, boolean failed) {
+		inFlight.decrementAndGet();
+		latencyStats.record(latencyNanos, TimeUnit.NANOSECONDS);
+		boolean overloaded = failed || latencyNanos > latencyThresholdNanos;
+		while (true) {
+			long bits = limitBits.get();
+			double limit = Double.longBitsToDouble(bits);
+			double updated = overloaded
+					? Math.max(minLimit, limit * BACKOFF_RATIO)
+					: Math.min(maxLimit, limit + 1.0 / limit);
+			if (updated == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+				break;
+			}
+		}
+		drain();
+	}
+
+	private class LimitedCall<A,R> {
+		private final AsyncTask<A,R> task;
+		private final A arg;
+		private final ResultHandler<R> resultHandler;
+		private final AtomicBoolean reported = new AtomicBoolean();
+
+		LimitedCall(AsyncTask<A,R> task, A arg, ResultHandler<R> resultHandler) {
+			this.task = task;
+			this.arg = arg;
+			this.resultHandler = resultHandler;
+		}
+
+		void start() {
+			final long startNanos = System.nanoTime();
+			task.run(arg, new ForwardingResultHandler<R>(resultHandler) {
+				@Override
+				public void reportComplete(R result) {
+					if (reported.compareAndSet(false, true)) {
+						onCallComplete(System.nanoTime() - startNanos, false);
+						super.reportComplete(result);
+					}
+				}
+				@Override
+				public void reportFailure(Throwable cause) {
+					if (reported.compareAndSet(false, true)) {
+						onCallComplete(System.nanoTime() - startNanos, true);
+						super.reportFailure(cause);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Releases the permit of a call whose start threw, and fails the call,
+		 * unless it already reported its outcome.
+		 */
+		void reportThrown(RuntimeException cause) {
+			if (!reported.compareAndSet(false, true)) {
+				return;
+			}
+			inFlight.decrementAndGet();
+			try {
+				resultHandler.reportFailure(cause);
+			} catch (RuntimeException e) {
+				// The driver body failed on the failure, and has recorded it
+			}
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * An {@link AsyncTask} for a single key that collects the keys requested by
+ * any number of {@link JasyncDriver}s and fetches them with one call to a
+ * bulk task. A batch is sent once it reaches the maximum size, or once the
+ * window has passed since its first key, whichever comes first. Duplicate keys
+ * within a batch are sent once.
+ * </p>
+ * 
+ * <p>
+ * When the bulk result arrives, each waiting driver is handed its value, one
+ * after the other, on the thread that reported the bulk result, so the
+ * resumed drivers run back to back. A key missing from the bulk result is
+ * reported as null. If the bulk call fails, the failure is reported to every
+ * waiting driver.
+ * </p>
+ * 
+ * <p>
+ * A full batch is sent on the thread that filled it. A batch sent because its
+ * window passed is handed from the timer to an executor, so a bulk task that
+ * blocks never stalls the timer shared with other decorators.
+ * </p>
+ * 
+ * <pre>
+ * BatchingAsyncTask&lt;UserId, User&gt; readUser = new BatchingAsyncTask&lt;&gt;(
+ *     new ReadUsers(webServer), 100, 2, TimeUnit.MILLISECONDS);
+ * </pre>
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of key.
+ * @param <R>
+ *            The type of value fetched for each key.
+ */
+public class BatchingAsyncTask<A,R> implements AsyncTask<A,R> {
+
+	private final AsyncTask<List<A>, Map<A,R>> bulkTask;
+	private final int maxBatchSize;
+	private final long windowNanos;
+	private final ScheduledExecutorService timer;
+	private final Executor executor;
+	private Batch current;
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong keyCount = new AtomicLong();
+
+	/**
+	 * Constructs a task that schedules window flushes on the timer shared by
+	 * all task decorators.
+	 * 
+	 * @param bulkTask
+	 *            Fetches the values for a list of keys.
+	 * @param maxBatchSize
+	 *            The number of keys that triggers a bulk call immediately.
+	 * @param window
+	 *            How long the first key of a batch waits for others to join.
+	 * @param unit
+	 *            The unit of window.
+	 */
+	public BatchingAsyncTask(AsyncTask<List<A>, Map<A,R>> bulkTask, int maxBatchSize, long window, TimeUnit unit) {
+		this(bulkTask, maxBatchSize, window, unit, SharedTimer.get());
+	}
+
+	/**
+	 * Constructs a task that schedules window flushes on the provided timer,
+	 * and sends those batches on a shared pool.
+	 * 
+	 * @param timer
+	 *            Hands batches whose window has passed to the shared pool.
+	 */
+	public BatchingAsyncTask(AsyncTask<List<A>, Map<A,R>> bulkTask, int maxBatchSize, long window, TimeUnit unit,
+			ScheduledExecutorService timer) {
+		this(bulkTask, maxBatchSize, window, unit, timer, SharedTimer.handoff());
+	}
+
+	/**
+	 * Constructs a task that schedules window flushes on the provided timer,
+	 * and sends those batches on the provided executor.
+	 * 
+	 * @param timer
+	 *            Hands batches whose window has passed to the executor.
+	 * @param executor
+	 *            Sends batches whose window has passed. If it rejects a
+	 *            batch, the rejection is reported to every waiting driver.
+	 */
+	public BatchingAsyncTask(AsyncTask<List<A>, Map<A,R>> bulkTask, int maxBatchSize, long window, TimeUnit unit,
+			ScheduledExecutorService timer, Executor executor) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		this.bulkTask = bulkTask;
+		this.maxBatchSize = maxBatchSize;
+		this.windowNanos = unit.toNanos(window);
+		this.timer = timer;
+		this.executor = executor;
+	}
+
+	@Override
+	public void run(A arg, ResultHandler<R> resultHandler) {
+		keyCount.incrementAndGet();
+		Batch full = null;
+		synchronized (this) {
+			if (current == null) {
+				final Batch batch = new Batch();
+				current = batch;
+				if (maxBatchSize > 1) {
+					batch.flushTimer = timer.schedule(new Runnable() {
+						public void run() {
+							flushLater(batch);
+						}
+					}, windowNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+			current.args.add(arg);
+			current.handlers.add(resultHandler);
+			if (current.args.size() >= maxBatchSize) {
+				full = current;
+			}
+		}
+		if (full != null && take(full)) {
+			send(full);
+		}
+	}
+
+	/**
+	 * Returns the number of bulk calls made.
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * Returns the number of keys requested, including duplicates.
+	 */
+	public long getKeyCount() {
+		return keyCount.get();
+	}
+
+	/**
+	 * Hands the provided batch, whose window has passed, to the executor,
+	 * unless it has already been sent.
+	 */
+	private void flushLater(final Batch batch) {
+		if (!take(batch)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					send(batch);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			batch.route(null, e);
+		}
+	}
+
+	/**
+	 * Closes the provided batch to new keys. Returns false if it was already
+	 * closed, and so is being sent by another caller.
+	 */
+	private boolean take(Batch batch) {
+		synchronized (this) {
+			if (current != batch) {
+				return false;
+			}
+			current = null;
+		}
+		if (batch.flushTimer != null) {
+			batch.flushTimer.cancel(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the provided batch, which the caller has taken.
+	 */
+	private void send(final Batch batch) {
+		batchCount.incrementAndGet();
+		List<A> keys = new ArrayList<>(new LinkedHashSet<>(batch.args));
+		try {
+			bulkTask.run(keys, new ResultHandler<Map<A,R>>() {
+				@Override
+				public void reportComplete(Map<A,R> results) {
+					batch.route(results, null);
+				}
+				@Override
+				public void reportComplete() {
+					reportComplete(null);
+				}
+				@Override
+				public void reportFailure(Throwable cause) {
+					batch.route(null, cause);
+				}
+				@Override
+				public TaskContext getContext() {
+					return batch.handlers.get(0).getContext();
+				}
+			});
+		} catch (RuntimeException e) {
+			if (batch.routed.get()) {
+				// Thrown by a body resuming on the outcome already reported
+				throw e;
+			}
+			batch.route(null, e);
+		}
+	}
+
+	/**
+	 * The keys collected for one bulk call, and the handlers waiting on them.
+	 */
+	private class Batch {
+		final List<A> args = new ArrayList<>();
+		final List<ResultHandler<R>> handlers = new ArrayList<>();
+		final AtomicBoolean routed = new AtomicBoolean();
+		ScheduledFuture<?> flushTimer;
+
+		/**
+		 * Hands each waiting handler its outcome, unless the batch already has
+		 * one. A handler that throws does not keep the rest from being served;
+		 * the first exception is rethrown once all have been.
+		 */
+		void route(Map<A,R> results, Throwable failure) {
+			if (!routed.compareAndSet(false, true)) {
+				return;
+			}
+			RuntimeException thrown = null;
+			for (int i = 0; i < handlers.size(); i++) {
+				try {
+					if (failure != null) {
+						handlers.get(i).reportFailure(failure);
+					} else {
+						handlers.get(i).reportComplete(results == null ? null : results.get(args.get(i)));
+					}
+				} catch (RuntimeException e) {
+					if (thrown == null) {
+						thrown = e;
+					}
+				}
+			}
+			if (thrown != null) {
+				throw thrown;
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package info.ryankenney.jasync_driver.tasks;
+
+/**
+ * Measures the size of a result held by a {@link TaskCache}, in whatever unit
+ * the maximum weight of the cache is expressed in (entries, bytes, rows, ...).
+ * 
+ * @author rkenney
+ *
+ * @param <A>
+ *            The type of argument of the cached task.
+ * @param <R>
+ *            The type of result of the cached task.
+ */
+public interface CacheWeigher<A,R> {
+
+	/**
+	 * @return The weight of the result, at least 1.
+	 */
+	int weigh(A arg, R result);
+
+}
@@ -0,0 +1,344 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ForwardingResultHandler;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * Fails calls to an unhealthy dependency fast, instead of letting every
+ * driver wait for it to time out. Wrap each {@link AsyncTask} that calls the
+ * dependency with the same breaker.
+ * </p>
+ * 
+ * <ul>
+ * <li>{@link State#CLOSED}: Calls go through. Failures and slow calls are
+ * counted in a rolling window. Once enough calls have been seen and either
+ * rate crosses its threshold, the breaker opens.</li>
+ * <li>{@link State#OPEN}: Calls are not made. Each one immediately reports a
+ * {@link CircuitOpenException}, so the driver moves on and the dependency gets
+ * room to recover. After the open duration, the breaker moves to half-open.</li>
+ * <li>{@link State#HALF_OPEN}: A few probe calls go through, and the rest are
+ * turned away. If all probes succeed the breaker closes; if any fails, or they
+ * have not all finished within the open duration, it opens again.</li>
+ * </ul>
+ * 
+ * <p>
+ * The rolling window is a ring of per-interval counters, updated with atomic
+ * increments, so recording an outcome never locks.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The states of a {@link CircuitBreaker}.
+	 */
+	public static enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private static final int WINDOW_BUCKETS = 10;
+
+	private final double failureRateThreshold;
+	private final long openDurationNanos;
+	private volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+	private volatile int minimumCalls = 20;
+	private volatile long slowCallNanos = Long.MAX_VALUE;
+	private volatile double slowCallRateThreshold = 1.0;
+	private volatile int halfOpenProbes = 3;
+	private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(State.CLOSED, System.nanoTime()));
+	private final AtomicReferenceArray<Bucket> window = new AtomicReferenceArray<>(WINDOW_BUCKETS);
+	private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param failureRateThreshold
+	 *            The fraction (0.0-1.0] of failed calls at which the breaker
+	 *            opens.
+	 * @param openDuration
+	 *            How long the breaker stays open before letting probes through.
+	 * @param unit
+	 *            The unit of openDuration.
+	 */
+	public CircuitBreaker(double failureRateThreshold, long openDuration, TimeUnit unit) {
+		if (failureRateThreshold <= 0.0 || failureRateThreshold > 1.0) {
+			throw new IllegalArgumentException("failureRateThreshold must be within (0.0, 1.0]");
+		}
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = unit.toNanos(openDuration);
+	}
+
+	/**
+	 * Sets the length of the rolling window in which outcomes are counted.
+	 * Defaults to 10 seconds.
+	 * 
+	 * @return This breaker.
+	 */
+	public CircuitBreaker setWindow(long duration, TimeUnit unit) {
+		this.windowNanos = Math.max(WINDOW_BUCKETS, unit.toNanos(duration));
+		return this;
+	}
+
+	/**
+	 * Sets the number of calls that must be seen within the window before the
+	 * breaker may open. Defaults to 20.
+	 * 
+	 * @return This breaker.
+	 */
+	public CircuitBreaker setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = minimumCalls;
+		return this;
+	}
+
+	/**
+	 * Treats calls slower than the provided duration as a sign of ill health,
+	 * opening the breaker when they make up the provided fraction of calls.
+	 * Disabled by default.
+	 * 
+	 * @return This breaker.
+	 */
+	public CircuitBreaker setSlowCallThreshold(long duration, TimeUnit unit, double rateThreshold) {
+		this.slowCallNanos = unit.toNanos(duration);
+		this.slowCallRateThreshold = rateThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of probe calls let through while half-open. Defaults to
+	 * 3.
+	 * 
+	 * @return This breaker.
+	 */
+	public CircuitBreaker setHalfOpenProbes(int halfOpenProbes) {
+		this.halfOpenProbes = halfOpenProbes;
+		return this;
+	}
+
+	/**
+	 * Registers a listener to be notified of state changes.
+	 * 
+	 * @return This breaker.
+	 */
+	public CircuitBreaker addListener(CircuitBreakerListener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Returns an {@link AsyncTask} that calls the provided task through this
+	 * breaker.
+	 */
+	public <A,R> AsyncTask<A,R> wrap(final AsyncTask<A,R> task) {
+		return new AsyncTask<A,R>() {
+			@Override
+			public void run(A arg, ResultHandler<R> resultHandler) {
+				final Phase admittedIn = admit();
+				if (admittedIn == null) {
+					rejectedCount.incrementAndGet();
+					resultHandler.reportFailure(new CircuitOpenException("Circuit breaker is open"));
+					return;
+				}
+				final long startNanos = System.nanoTime();
+				final AtomicBoolean reported = new AtomicBoolean();
+				try {
+					task.run(arg, new ForwardingResultHandler<R>(resultHandler) {
+						@Override
+						public void reportComplete(R result) {
+							if (reported.compareAndSet(false, true)) {
+								onOutcome(admittedIn, System.nanoTime() - startNanos, false);
+								super.reportComplete(result);
+							}
+						}
+						@Override
+						public void reportFailure(Throwable cause) {
+							if (reported.compareAndSet(false, true)) {
+								onOutcome(admittedIn, System.nanoTime() - startNanos, true);
+								super.reportFailure(cause);
+							}
+						}
+					});
+				} catch (RuntimeException e) {
+					if (!reported.compareAndSet(false, true)) {
+						// Thrown after the outcome was reported, so not the
+						// task's failure to count
+						throw e;
+					}
+					onOutcome(admittedIn, System.nanoTime() - startNanos, true);
+					resultHandler.reportFailure(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the current state of the breaker.
+	 */
+	public State getState() {
+		Phase current = phase.get();
+		if (current.state == State.OPEN && System.nanoTime() - current.sinceNanos >= openDurationNanos) {
+			return State.HALF_OPEN;
+		}
+		return current.state;
+	}
+
+	/**
+	 * Returns the number of calls turned away without calling the task.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Decides whether a call may go through, returning the phase it was
+	 * admitted in, or null if it is turned away.
+	 */
+	private Phase admit() {
+		while (true) {
+			Phase current = phase.get();
+			switch (current.state) {
+			case CLOSED:
+				return current;
+			case OPEN:
+				if (System.nanoTime() - current.sinceNanos < openDurationNanos) {
+					return null;
+				}
+				transition(current, State.HALF_OPEN);
+				break;
+			case HALF_OPEN:
+				while (true) {
+					int started = current.probesStarted.get();
+					if (started >= halfOpenProbes) {
+						if (System.nanoTime() - current.sinceNanos >= openDurationNanos) {
+							// Probes that have not finished by now are as good
+							// as failed; open again rather than wait forever
+							transition(current, State.OPEN);
+						}
+						return null;
+					}
+					if (current.probesStarted.compareAndSet(started, started + 1)) {
+						return current;
+					}
+				}
+			}
+		}
+	}
+
+	private void onOutcome(Phase admittedIn, long latencyNanos, boolean failed) {
+		boolean slow = latencyNanos > slowCallNanos;
+		if (admittedIn.state == State.HALF_OPEN) {
+			if (failed || slow) {
+				transition(admittedIn, State.OPEN);
+			} else if (admittedIn.probesSucceeded.incrementAndGet() >= halfOpenProbes) {
+				clearWindow();
+				transition(admittedIn, State.CLOSED);
+			}
+			return;
+		}
+		long now = System.nanoTime();
+		record(now, failed, slow);
+		if (!failed && !slow) {
+			return;
+		}
+		long[] totals = totals(now);
+		long calls = totals[0];
+		if (calls < minimumCalls) {
+			return;
+		}
+		if (totals[1] >= calls * failureRateThreshold || totals[2] >= calls * slowCallRateThreshold) {
+			transition(admittedIn, State.OPEN);
+		}
+	}
+
+	private void transition(Phase from, State to) {
+		if (phase.compareAndSet(from, new Phase(to, System.nanoTime()))) {
+			for (CircuitBreakerListener listener : listeners) {
+				listener.onStateChange(this, from.state, to);
+			}
+		}
+	}
+
+	private void record(long now, boolean failed, boolean slow) {
+		long epoch = now / (windowNanos / WINDOW_BUCKETS);
+		// System.nanoTime() may be negative, so normalize the remainder.
+		int index = (int) (((epoch % WINDOW_BUCKETS) + WINDOW_BUCKETS) % WINDOW_BUCKETS);
+		Bucket bucket = window.get(index);
+		while (bucket == null || bucket.epoch != epoch) {
+			Bucket fresh = new Bucket(epoch);
+			if (window.compareAndSet(index, bucket, fresh)) {
+				bucket = fresh;
+			} else {
+				bucket = window.get(index);
+			}
+		}
+		bucket.calls.incrementAndGet();
+		if (failed) {
+			bucket.failures.incrementAndGet();
+		}
+		if (slow) {
+			bucket.slowCalls.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of calls, failures and slow calls within the window.
+	 */
+	private long[] totals(long now) {
+		long currentEpoch = now / (windowNanos / WINDOW_BUCKETS);
+		long[] totals = new long[3];
+		for (int i = 0; i < WINDOW_BUCKETS; i++) {
+			Bucket bucket = window.get(i);
+			if (bucket != null && currentEpoch - bucket.epoch < WINDOW_BUCKETS) {
+				totals[0] += bucket.calls.get();
+				totals[1] += bucket.failures.get();
+				totals[2] += bucket.slowCalls.get();
+			}
+		}
+		return totals;
+	}
+
+	private void clearWindow() {
+		for (int i = 0; i < WINDOW_BUCKETS; i++) {
+			window.set(i, null);
+		}
+	}
+
+	/**
+	 * A state of the breaker, along with when it was entered and, while
+	 * half-open, the progress of the probes.
+	 */
+	private static class Phase {
+		final State state;
+		final long sinceNanos;
+		final AtomicInteger probesStarted = new AtomicInteger();
+		final AtomicInteger probesSucceeded = new AtomicInteger();
+
+		Phase(State state, long sinceNanos) {
+			this.state = state;
+			this.sinceNanos = sinceNanos;
+		}
+	}
+
+	private static class Bucket {
+		final long epoch;
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong slowCalls = new AtomicLong();
+
+		Bucket(long epoch) {
+			this.epoch = epoch;
+		}
+	}
+}
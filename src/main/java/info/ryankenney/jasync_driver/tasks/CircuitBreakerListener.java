@@ -0,0 +1,15 @@
+package info.ryankenney.jasync_driver.tasks;
+
+/**
+ * Notified whenever a {@link CircuitBreaker} changes state.
+ * 
+ * @author rkenney
+ */
+public interface CircuitBreakerListener {
+
+	/**
+	 * Called on the thread whose call caused the change. Should not block.
+	 */
+	void onStateChange(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to);
+
+}
@@ -0,0 +1,17 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.JasyncDriverException;
+
+/**
+ * Reported by tasks wrapped by a {@link CircuitBreaker} when the breaker
+ * turns the call away without calling the task.
+ * 
+ * @author rkenney
+ */
+@SuppressWarnings("serial")
+public class CircuitOpenException extends JasyncDriverException {
+
+	public CircuitOpenException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,179 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DeadlineExceededException;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A token-bucket rate limiter shared by any number of {@link AsyncTask}s and
+ * {@link JasyncDriver}s, for upstream APIs with a hard requests-per-second
+ * quota. A call within the rate starts immediately. A call beyond it is
+ * scheduled on a shared timer for the moment a token becomes available, and
+ * then started on an executor, while its driver simply stays suspended, so no
+ * thread ever sleeps, and a slow task never holds up the timer.
+ * </p>
+ * 
+ * <p>
+ * The bucket is tracked as a single "theoretical arrival time" that each call
+ * advances with a compare-and-set (the generic cell rate algorithm), so
+ * acquiring a token never locks or allocates.
+ * </p>
+ * 
+ * <p>
+ * If the calling driver has a {@link info.ryankenney.jasync_driver.Deadline}
+ * that would pass before a token becomes available, the call fails
+ * immediately with a {@link DeadlineExceededException}, without taking a
+ * token.
+ * </p>
+ * 
+ * @author rkenney
+ */
+public class RateLimiter {
+
+	private final long intervalNanos;
+	private final long burstToleranceNanos;
+	private final ScheduledExecutorService timer;
+	private final Executor executor;
+	private final AtomicLong theoreticalArrivalNanos;
+	private final AtomicLong acquiredCount = new AtomicLong();
+	private final AtomicLong delayedCount = new AtomicLong();
+
+	/**
+	 * Constructs a limiter that schedules delayed calls on the timer shared by
+	 * all task decorators, and starts them on a shared pool.
+	 * 
+	 * @param permitsPerSecond
+	 *            The sustained rate.
+	 * @param burst
+	 *            The number of calls that may start back to back after a lull.
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		this(permitsPerSecond, burst, SharedTimer.get());
+	}
+
+	/**
+	 * Constructs a limiter that schedules delayed calls on the provided timer,
+	 * and starts them on a shared pool.
+	 * 
+	 * @param permitsPerSecond
+	 *            The sustained rate.
+	 * @param burst
+	 *            The number of calls that may start back to back after a lull.
+	 * @param timer
+	 *            Hands delayed calls to the shared pool once they are due.
+	 */
+	public RateLimiter(double permitsPerSecond, int burst, ScheduledExecutorService timer) {
+		this(permitsPerSecond, burst, timer, SharedTimer.handoff());
+	}
+
+	/**
+	 * Constructs a limiter that schedules delayed calls on the provided timer,
+	 * and starts them on the provided executor.
+	 * 
+	 * @param permitsPerSecond
+	 *            The sustained rate.
+	 * @param burst
+	 *            The number of calls that may start back to back after a lull.
+	 * @param timer
+	 *            Hands delayed calls to the executor once they are due.
+	 * @param executor
+	 *            Starts delayed calls, such as the executor the calling
+	 *            drivers resume on.
+	 */
+	public RateLimiter(double permitsPerSecond, int burst, ScheduledExecutorService timer, Executor executor) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+		}
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.burstToleranceNanos = intervalNanos * (burst - 1);
+		this.timer = timer;
+		this.executor = executor;
+		this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Returns an {@link AsyncTask} that runs the provided task within the rate
+	 * of this limiter.
+	 */
+	public <A,R> AsyncTask<A,R> wrap(final AsyncTask<A,R> task) {
+		return new AsyncTask<A,R>() {
+			@Override
+			public void run(final A arg, final ResultHandler<R> resultHandler) {
+				TaskContext context = resultHandler.getContext();
+				if (context != null && context.getDeadline() != null
+						&& currentDelayNanos() > context.getTimeRemaining(TimeUnit.NANOSECONDS)) {
+					resultHandler.reportFailure(new DeadlineExceededException(
+							"Deadline would pass before a rate limit token is available"));
+					return;
+				}
+				long delayNanos = reserve();
+				if (delayNanos <= 0) {
+					task.run(arg, resultHandler);
+					return;
+				}
+				delayedCount.incrementAndGet();
+				final Runnable start = new Runnable() {
+					public void run() {
+						task.run(arg, resultHandler);
+					}
+				};
+				timer.schedule(new Runnable() {
+					public void run() {
+						try {
+							executor.execute(start);
+						} catch (RejectedExecutionException e) {
+							resultHandler.reportFailure(e);
+						}
+					}
+				}, delayNanos, TimeUnit.NANOSECONDS);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of tokens handed out.
+	 */
+	public long getAcquiredCount() {
+		return acquiredCount.get();
+	}
+
+	/**
+	 * Returns the number of calls that had to wait for a token.
+	 */
+	public long getDelayedCount() {
+		return delayedCount.get();
+	}
+
+	/**
+	 * Takes the next token, returning how long the caller must wait before
+	 * using it.
+	 */
+	private long reserve() {
+		acquiredCount.incrementAndGet();
+		while (true) {
+			long now = System.nanoTime();
+			long arrival = theoreticalArrivalNanos.get();
+			long next = Math.max(arrival, now) + intervalNanos;
+			if (theoreticalArrivalNanos.compareAndSet(arrival, next)) {
+				return arrival - burstToleranceNanos - now;
+			}
+		}
+	}
+
+	/**
+	 * Returns how long a call made now would wait for a token, without taking
+	 * one.
+	 */
+	private long currentDelayNanos() {
+		return theoreticalArrivalNanos.get() - burstToleranceNanos - System.nanoTime();
+	}
+}
@@ -0,0 +1,60 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The single daemon timer thread shared by the task decorators that need to
+ * run something later, and the executor they hand that work off to. Work
+ * scheduled on the timer should only hand off, never block, since it holds
+ * up every other decorator.
+ * 
+ * @author rkenney
+ */
+class SharedTimer {
+
+	private static final ScheduledExecutorService INSTANCE = create();
+
+	static ScheduledExecutorService get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns an unbounded pool of daemon threads, created on demand and
+	 * retired after a minute idle, on which timed work runs once it is due.
+	 */
+	static Executor handoff() {
+		return HandoffHolder.INSTANCE;
+	}
+
+	private static ScheduledExecutorService create() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jasync-driver-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	private static class HandoffHolder {
+		static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "jasync-driver-timer-handoff-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+}
@@ -0,0 +1,207 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Collapses identical concurrent calls to {@link AsyncTask}s into one. The
+ * first call for a given task and argument starts the underlying task, and
+ * calls for the same task and argument made while it is in flight simply wait
+ * for it. When the result (or failure) lands, it is reported to every waiting
+ * {@link JasyncDriver}, in the order the calls were made.
+ * </p>
+ * 
+ * <p>
+ * Unlike {@link TaskCache}, nothing is kept once the call lands. The two
+ * combine well, with the flight inside the cache, so concurrent misses share
+ * one load:
+ * </p>
+ * 
+ * <pre>
+ * SingleFlight flight = new SingleFlight();
+ * AsyncTask&lt;User, Permissions&gt; readUserPermissions = cache.wrap(flight.wrap(new ReadUserPermissions(webServer)));
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class SingleFlight {
+
+	private final ConcurrentMap<TaskKey, Flight<?>> flights = new ConcurrentHashMap<>();
+	private final AtomicLong callCount = new AtomicLong();
+	private final AtomicLong sharedCount = new AtomicLong();
+
+	/**
+	 * Returns an {@link AsyncTask} that shares in-flight calls to the provided
+	 * task with the same argument.
+	 */
+	public <A,R> AsyncTask<A,R> wrap(final AsyncTask<A,R> task) {
+		return new AsyncTask<A,R>() {
+			@Override
+			public void run(A arg, ResultHandler<R> resultHandler) {
+				TaskKey key = new TaskKey(task, arg);
+				Flight<R> flight = new Flight<>(key, resultHandler);
+				@SuppressWarnings("unchecked")
+				Flight<R> existing = (Flight<R>) flights.putIfAbsent(key, flight);
+				if (existing != null) {
+					sharedCount.incrementAndGet();
+					existing.attach(resultHandler);
+					return;
+				}
+				callCount.incrementAndGet();
+				try {
+					task.run(arg, flight);
+				} catch (RuntimeException e) {
+					if (flight.hasLanded()) {
+						throw e;
+					}
+					flight.reportFailure(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of calls to the underlying tasks.
+	 */
+	public long getCallCount() {
+		return callCount.get();
+	}
+
+	/**
+	 * Returns the number of calls that waited on a call already in flight
+	 * rather than calling the underlying task.
+	 */
+	public long getSharedCount() {
+		return sharedCount.get();
+	}
+
+	/**
+	 * Returns the number of calls to the underlying tasks in flight.
+	 */
+	public int getInFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * A waiting {@link ResultHandler}, in a stack of waiters.
+	 */
+	private static class Waiter<R> {
+		final ResultHandler<R> resultHandler;
+		Waiter<R> next;
+
+		Waiter(ResultHandler<R> resultHandler, Waiter<R> next) {
+			this.resultHandler = resultHandler;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * A call in flight, and the handlers waiting for it. Waiters are pushed
+	 * onto a lock-free stack, which is swapped for a marker when the call
+	 * lands, so a handler attached after that is served directly.
+	 */
+	private class Flight<R> implements ResultHandler<R> {
+		private final TaskKey key;
+		private final ResultHandler<R> leader;
+		private final AtomicReference<Waiter<R>> waiters;
+		private final Waiter<R> landed = new Waiter<>(null, null);
+		private R result;
+		private Throwable failure;
+
+		Flight(TaskKey key, ResultHandler<R> leader) {
+			this.key = key;
+			this.leader = leader;
+			this.waiters = new AtomicReference<>(new Waiter<>(leader, null));
+		}
+
+		void attach(ResultHandler<R> resultHandler) {
+			Waiter<R> waiter = new Waiter<>(resultHandler, null);
+			while (true) {
+				Waiter<R> head = waiters.get();
+				if (head == landed) {
+					deliver(resultHandler);
+					return;
+				}
+				waiter.next = head;
+				if (waiters.compareAndSet(head, waiter)) {
+					return;
+				}
+			}
+		}
+
+		boolean hasLanded() {
+			return waiters.get() == landed;
+		}
+
+		@Override
+		public void reportComplete(R result) {
+			this.result = result;
+			land();
+		}
+
+		@Override
+		public void reportComplete() {
+			reportComplete(null);
+		}
+
+		@Override
+		public void reportFailure(Throwable cause) {
+			this.failure = cause;
+			land();
+		}
+
+		@Override
+		public TaskContext getContext() {
+			return leader.getContext();
+		}
+
+		/**
+		 * Reports the outcome to all waiters, oldest first. A waiter that
+		 * throws does not keep the rest from being served; the first
+		 * exception is rethrown once all have been.
+		 */
+		private void land() {
+			flights.remove(key, this);
+			Waiter<R> head = waiters.getAndSet(landed);
+			if (head == landed) {
+				return;
+			}
+			Waiter<R> oldest = null;
+			while (head != null) {
+				Waiter<R> next = head.next;
+				head.next = oldest;
+				oldest = head;
+				head = next;
+			}
+			RuntimeException thrown = null;
+			for (Waiter<R> waiter = oldest; waiter != null; waiter = waiter.next) {
+				try {
+					deliver(waiter.resultHandler);
+				} catch (RuntimeException e) {
+					if (thrown == null) {
+						thrown = e;
+					}
+				}
+			}
+			if (thrown != null) {
+				throw thrown;
+			}
+		}
+
+		private void deliver(ResultHandler<R> resultHandler) {
+			if (failure != null) {
+				resultHandler.reportFailure(failure);
+			} else {
+				resultHandler.reportComplete(result);
+			}
+		}
+	}
+}
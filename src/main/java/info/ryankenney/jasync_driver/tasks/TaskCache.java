@@ -0,0 +1,327 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.ForwardingResultHandler;
+import info.ryankenney.jasync_driver.InlineCapableTask;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.LatencyStats;
+import info.ryankenney.jasync_driver.ResultHandler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A cache of {@link AsyncTask} results, keyed on the task and its argument,
+ * shared by any number of tasks and {@link JasyncDriver}s. A cache hit is
+ * reported before the wrapped task returns, so the driver carries on through
+ * its body without a suspension (see {@link InlineCapableTask}). A miss calls
+ * the underlying task and caches its result.
+ * </p>
+ * 
+ * <p>
+ * Entries expire a fixed time after they were loaded. Optionally, an entry
+ * older than the refresh time is still served, while a single call reloads
+ * it in the background (stale-while-revalidate), and failures are cached for
+ * a (usually shorter) time of their own, so a failing server is not hammered
+ * by every driver. Once the total weight of the entries exceeds the maximum,
+ * the least recently used entries are evicted.
+ * </p>
+ * 
+ * <p>
+ * The same result object is handed to every driver that hits it, so results
+ * should be immutable.
+ * </p>
+ * 
+ * <pre>
+ * TaskCache cache = new TaskCache(10000, 5, TimeUnit.MINUTES)
+ *     .setRefreshAfter(1, TimeUnit.MINUTES)
+ *     .setFailureTtl(5, TimeUnit.SECONDS);
+ * AsyncTask&lt;User, Permissions&gt; readUserPermissions = cache.wrap(new ReadUserPermissions(webServer));
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class TaskCache {
+
+	private final long maxWeight;
+	private final long ttlNanos;
+	private volatile long refreshAfterNanos;
+	private volatile long failureTtlNanos;
+	private final LinkedHashMap<TaskKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalWeight;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong refreshCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final LatencyStats loadStats = new LatencyStats();
+
+	/**
+	 * @param maxWeight
+	 *            The total weight of entries beyond which the least recently
+	 *            used are evicted. Unless a {@link CacheWeigher} is provided,
+	 *            each entry weighs 1.
+	 * @param ttl
+	 *            How long an entry is served after it was loaded.
+	 * @param unit
+	 *            The unit of ttl.
+	 */
+	public TaskCache(long maxWeight, long ttl, TimeUnit unit) {
+		if (maxWeight < 1 || ttl <= 0) {
+			throw new IllegalArgumentException("maxWeight and ttl must be positive");
+		}
+		this.maxWeight = maxWeight;
+		this.ttlNanos = unit.toNanos(ttl);
+	}
+
+	/**
+	 * Sets the age beyond which a hit also triggers a reload of the entry in
+	 * the background. The stale entry is served until the reload completes
+	 * (or the entry expires). Disabled by default (or when set to 0).
+	 * 
+	 * @return This cache.
+	 */
+	public TaskCache setRefreshAfter(long duration, TimeUnit unit) {
+		this.refreshAfterNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets how long a failure is cached, and reported again to every caller.
+	 * Failures are not cached by default (or when set to 0).
+	 * 
+	 * @return This cache.
+	 */
+	public TaskCache setFailureTtl(long duration, TimeUnit unit) {
+		this.failureTtlNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Returns an {@link AsyncTask} that serves the results of the provided
+	 * task from this cache, with each entry weighing 1.
+	 */
+	public <A,R> InlineCapableTask<A,R> wrap(AsyncTask<A,R> task) {
+		return wrap(task, null);
+	}
+
+	/**
+	 * Returns an {@link AsyncTask} that serves the results of the provided
+	 * task from this cache, weighing each entry with the provided weigher.
+	 */
+	public <A,R> InlineCapableTask<A,R> wrap(final AsyncTask<A,R> task, final CacheWeigher<A,R> weigher) {
+		return new InlineCapableTask<A,R>() {
+			@Override
+			public void run(A arg, ResultHandler<R> resultHandler) {
+				TaskKey key = new TaskKey(task, arg);
+				Entry entry = lookup(key);
+				if (entry == null) {
+					missCount.incrementAndGet();
+					load(task, arg, key, weigher, resultHandler, null);
+					return;
+				}
+				hitCount.incrementAndGet();
+				if (claimRefresh(entry)) {
+					refreshCount.incrementAndGet();
+					load(task, arg, key, weigher, resultHandler, entry);
+				}
+				if (entry.failure != null) {
+					resultHandler.reportFailure(entry.failure);
+				} else {
+					@SuppressWarnings("unchecked")
+					R result = (R) entry.result;
+					resultHandler.reportComplete(result);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Drops all entries.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			totalWeight = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of calls served from the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of calls that had to call the underlying task.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the fraction of calls served from the cache, or 0 if there have
+	 * been none.
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns the number of background reloads of stale entries.
+	 */
+	public long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * Returns the number of entries evicted to stay within the maximum weight.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns the number of entries held, including expired entries not yet
+	 * looked up again.
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the total weight of the entries held.
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return totalWeight;
+		}
+	}
+
+	/**
+	 * Returns the latencies of calls to the underlying tasks, for misses and
+	 * reloads alike.
+	 */
+	public LatencyStats getLoadStats() {
+		return loadStats;
+	}
+
+	/**
+	 * Returns the live entry for the key, dropping it if it has expired.
+	 */
+	private Entry lookup(TaskKey key) {
+		long now = System.nanoTime();
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			long age = now - entry.loadedNanos;
+			if (age >= (entry.failure != null ? failureTtlNanos : ttlNanos)) {
+				entries.remove(key);
+				totalWeight -= entry.weight;
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns true if the entry is due for a refresh that no other caller has
+	 * claimed yet, claiming it for the caller to reload.
+	 */
+	private boolean claimRefresh(Entry entry) {
+		long refreshAfterNanos = this.refreshAfterNanos;
+		if (entry.failure != null || refreshAfterNanos <= 0
+				|| System.nanoTime() - entry.loadedNanos < refreshAfterNanos) {
+			return false;
+		}
+		synchronized (entries) {
+			if (entry.refreshing) {
+				return false;
+			}
+			entry.refreshing = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Calls the underlying task and caches its outcome. For a reload of the
+	 * provided stale entry, the outcome is not reported to the caller, which
+	 * has already been served.
+	 */
+	private <A,R> void load(AsyncTask<A,R> task, final A arg, final TaskKey key, final CacheWeigher<A,R> weigher,
+			ResultHandler<R> resultHandler, final Entry stale) {
+		final long start = System.nanoTime();
+		task.run(arg, new ForwardingResultHandler<R>(resultHandler) {
+			@Override
+			public void reportComplete(R result) {
+				loadStats.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				int weight = weigher == null ? 1 : Math.max(1, weigher.weigh(arg, result));
+				store(key, new Entry(result, null, weight));
+				if (stale == null) {
+					super.reportComplete(result);
+				}
+			}
+			@Override
+			public void reportFailure(Throwable cause) {
+				loadStats.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				if (stale != null) {
+					// Keep serving the stale entry, and let a later hit retry
+					synchronized (entries) {
+						stale.refreshing = false;
+					}
+					return;
+				}
+				if (failureTtlNanos > 0) {
+					store(key, new Entry(null, cause, 1));
+				}
+				super.reportFailure(cause);
+			}
+		});
+	}
+
+	private void store(TaskKey key, Entry entry) {
+		if (entry.weight > maxWeight) {
+			return;
+		}
+		synchronized (entries) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				totalWeight -= previous.weight;
+			}
+			totalWeight += entry.weight;
+			Iterator<Map.Entry<TaskKey, Entry>> eldest = entries.entrySet().iterator();
+			while (totalWeight > maxWeight) {
+				Entry evicted = eldest.next().getValue();
+				eldest.remove();
+				totalWeight -= evicted.weight;
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	private static class Entry {
+		final Object result;
+		final Throwable failure;
+		final int weight;
+		final long loadedNanos;
+		/** Guarded by the entry map. Set while a reload is in flight. */
+		boolean refreshing;
+
+		Entry(Object result, Throwable failure, int weight) {
+			this.result = result;
+			this.failure = failure;
+			this.weight = weight;
+			this.loadedNanos = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+
+/**
+ * Identifies a call by the task (by identity) and its argument (by equality),
+ * for the task decorators that share results between calls.
+ * 
+ * @author rkenney
+ */
+class TaskKey {
+
+	private final AsyncTask<?,?> task;
+	private final Object arg;
+	private final int hash;
+
+	TaskKey(AsyncTask<?,?> task, Object arg) {
+		this.task = task;
+		this.arg = arg;
+		this.hash = 31 * System.identityHashCode(task) + (arg == null ? 0 : arg.hashCode());
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof TaskKey)) {
+			return false;
+		}
+		TaskKey key = (TaskKey) other;
+		return task == key.task && (arg == null ? key.arg == null : arg.equals(key.arg));
+	}
+}
@@ -0,0 +1,151 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DriverLauncherTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to each {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> args = new ArrayList<>();
+		final List<ResultHandler<String>> pending = new ArrayList<>();
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			args.add(arg);
+			pending.add(resultHandler);
+		}
+		void complete(int i, String result) {
+			pending.get(i).reportComplete(result);
+		}
+	}
+
+	private static DriverBody body(final JasyncDriver driver, final DeferredTask task, final String arg) {
+		return new DriverBody() {
+			public void run() {
+				driver.execute(task, arg);
+			}
+		};
+	}
+
+	/**
+	 * <p>Verifies that bodies past the in-flight limit are queued, then
+	 * started in order as drivers complete, and that bodies past the queue
+	 * limit are rejected.</p>
+	 */
+	@Test
+	public void testQueueAndReject() throws Exception {
+
+		// Setup
+		DriverLauncher launcher = new DriverLauncher(1, 100, 1);
+		DeferredTask task = new DeferredTask();
+		JasyncDriver first = new JasyncDriver();
+		JasyncDriver second = new JasyncDriver();
+		JasyncDriver third = new JasyncDriver();
+
+		// Execute
+		launcher.execute(first, body(first, task, "first"));
+		launcher.execute(second, body(second, task, "second"));
+		try {
+			launcher.execute(third, body(third, task, "third"));
+			Assert.fail("Expected exception");
+		} catch (AdmissionRejectedException e) {
+			// Expected
+		}
+
+		// Verify
+		assertEquals(Arrays.asList("first"), task.args);
+		assertEquals(1, launcher.getInFlightCount());
+		assertEquals(1, launcher.getQueuedCount());
+		assertEquals(1, launcher.getRejectedCount());
+		// ... completing the first driver starts the queued one
+		task.complete(0, "done");
+		assertEquals(Arrays.asList("first", "second"), task.args);
+		assertEquals(1, launcher.getInFlightCount());
+		assertEquals(0, launcher.getQueuedCount());
+		task.complete(1, "done");
+		assertEquals(0, launcher.getInFlightCount());
+		assertEquals(2, launcher.getAdmittedCount());
+	}
+
+	/**
+	 * <p>Verifies that history entries of drivers in flight are counted, that
+	 * no new driver is started past the history limit, and that cancelling a
+	 * driver releases its share.</p>
+	 */
+	@Test
+	public void testHistoryLimit() throws Exception {
+
+		// Setup
+		DriverLauncher launcher = new DriverLauncher(10, 1, 0);
+		final DeferredTask task = new DeferredTask();
+		final JasyncDriver first = new JasyncDriver();
+		JasyncDriver second = new JasyncDriver();
+		launcher.execute(first, new DriverBody() {
+			public void run() {
+				first.execute(task, "a");
+				first.execute(task, "b");
+			}
+		});
+		task.complete(0, "A");
+		assertEquals(1, launcher.getHistoryEntryCount());
+		assertEquals(1, first.getHistorySize());
+
+		// Execute
+		boolean admitted = launcher.tryExecute(second, body(second, task, "c"));
+
+		// Verify
+		assertFalse(admitted);
+		assertEquals(1, launcher.getRejectedCount());
+		first.cancel();
+		assertEquals(0, launcher.getHistoryEntryCount());
+		assertEquals(0, launcher.getInFlightCount());
+		assertTrue(launcher.tryExecute(second, body(second, task, "c")));
+	}
+
+	/**
+	 * <p>Verifies that a queued body that fails when started does not fail the
+	 * driver whose completion freed its slot.</p>
+	 */
+	@Test
+	public void testQueuedBodyFailure() throws Exception {
+
+		// Setup
+		DriverLauncher launcher = new DriverLauncher(1, 100, 5);
+		DeferredTask task = new DeferredTask();
+		final AtomicBoolean firstCompleted = new AtomicBoolean(false);
+		JasyncDriver first = new JasyncDriver(new Runnable() {
+			public void run() {
+				firstCompleted.set(true);
+			}
+		});
+		final IllegalStateException cause = new IllegalStateException("bad request");
+		JasyncDriver second = new JasyncDriver();
+		launcher.execute(first, body(first, task, "first"));
+		launcher.execute(second, new DriverBody() {
+			public void run() {
+				throw cause;
+			}
+		});
+
+		// Execute
+		task.complete(0, "done");
+
+		// Verify
+		assertTrue(firstCompleted.get());
+		assertEquals(null, first.getFailure());
+		assertTrue(second.getFailure() == cause);
+		assertEquals(0, launcher.getInFlightCount());
+		assertEquals(0, launcher.getQueuedCount());
+	}
+}
@@ -0,0 +1,86 @@
+package info.ryankenney.jasync_driver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Measures {@link DriverRuntime} throughput as the number of event loops
+ * grows. Like the demos, this is not picked up by the regular test run.
+ * Execute it explicitly:
+ * </p>
+ * 
+ * <pre>
+ * mvn test -Dtest=DriverRuntimeBenchmark
+ * </pre>
+ * 
+ * @author rkenney
+ */
+public class DriverRuntimeBenchmark {
+
+	private static final int DRIVERS = 20000;
+	private static final int STEPS = 20;
+	private static final int BODY_WORK = 2000;
+
+	@Test
+	public void benchmarkLoopScaling() throws Exception {
+		int cores = Runtime.getRuntime().availableProcessors();
+		// Warm up
+		run(cores);
+		for (int loops = 1; loops <= cores; loops *= 2) {
+			long nanos = run(loops);
+			System.out.println(String.format("[BENCHMARK] %2d loop(s): %,12d resumptions/s",
+					loops, (long) DRIVERS * STEPS * TimeUnit.SECONDS.toNanos(1) / nanos));
+		}
+	}
+
+	private long run(int loopCount) throws Exception {
+		final ExecutorService callbackThreads = Executors.newFixedThreadPool(2);
+		final AsyncTask<Integer, Integer> step = new AsyncTask<Integer, Integer>() {
+			public void run(final Integer arg, final ResultHandler<Integer> resultHandler) {
+				callbackThreads.execute(new Runnable() {
+					public void run() {
+						resultHandler.reportComplete(arg + 1);
+					}
+				});
+			}
+		};
+		final SyncTask<Integer, Integer> compute = new SyncTask<Integer, Integer>() {
+			public Integer run(Integer arg) {
+				int value = arg;
+				for (int i = 0; i < BODY_WORK; i++) {
+					value = value * 31 + i;
+				}
+				return value;
+			}
+		};
+		final CountDownLatch done = new CountDownLatch(DRIVERS);
+		DriverRuntime runtime = new DriverRuntime(loopCount);
+		long start = System.nanoTime();
+		for (int i = 0; i < DRIVERS; i++) {
+			final JasyncDriver driver = new JasyncDriver(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			runtime.execute(driver, new DriverBody() {
+				public void run() {
+					int value = 0;
+					for (int s = 0; s < STEPS; s++) {
+						value = driver.execute(step, value);
+						value = driver.execute(compute, value);
+					}
+				}
+			});
+		}
+		done.await();
+		long nanos = System.nanoTime() - start;
+		runtime.shutdown();
+		callbackThreads.shutdown();
+		return nanos;
+	}
+}
@@ -0,0 +1,149 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DriverRuntimeTest {
+
+	/**
+	 * <p>Verifies that drivers started through a {@link DriverRuntime} run to
+	 * completion when their results are reported from other threads, and that
+	 * every execution of a given {@link DriverBody} happens on the same event
+	 * loop thread.</p>
+	 */
+	@Test
+	public void testDriversPinnedToLoop() throws Exception {
+
+		// Setup
+		final int driverCount = 200;
+		final ExecutorService callbackThreads = Executors.newFixedThreadPool(4);
+		final AsyncTask<Integer, Integer> increment = new AsyncTask<Integer, Integer>() {
+			public void run(final Integer arg, final ResultHandler<Integer> resultHandler) {
+				callbackThreads.execute(new Runnable() {
+					public void run() {
+						resultHandler.reportComplete(arg + 1);
+					}
+				});
+			}
+		};
+		final CountDownLatch done = new CountDownLatch(driverCount);
+		final Set<String> violations = Collections.synchronizedSet(new HashSet<String>());
+		DriverRuntime runtime = new DriverRuntime(3);
+
+		// Execute
+		for (int i = 0; i < driverCount; i++) {
+			final JasyncDriver driver = new JasyncDriver(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			runtime.execute(driver, new DriverBody() {
+				Thread loopThread;
+				public void run() {
+					if (loopThread == null) {
+						loopThread = Thread.currentThread();
+					} else if (loopThread != Thread.currentThread()) {
+						violations.add("Driver moved from " + loopThread + " to " + Thread.currentThread());
+					}
+					int value = 0;
+					for (int step = 0; step < 5; step++) {
+						value = driver.execute(increment, value);
+					}
+				}
+			});
+		}
+
+		// Verify
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertTrue(violations.toString(), violations.isEmpty());
+		runtime.shutdown();
+		assertTrue(runtime.awaitTermination(30, TimeUnit.SECONDS));
+		// ... one initial execution plus five resumptions per driver
+		assertEquals(driverCount * 6, runtime.getCompletedCount());
+		callbackThreads.shutdown();
+	}
+
+	/**
+	 * <p>Verifies that a body failing with an {@link Error} does not stop its
+	 * event loop, so the drivers queued behind it still run.</p>
+	 */
+	@Test
+	public void testLoopSurvivesError() throws Exception {
+
+		// Setup
+		final CountDownLatch done = new CountDownLatch(1);
+		DriverRuntime runtime = new DriverRuntime(1);
+
+		// Execute
+		runtime.execute(new JasyncDriver(), new DriverBody() {
+			public void run() {
+				throw new AssertionError("expected by the test");
+			}
+		});
+		runtime.execute(new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		}), new DriverBody() {
+			public void run() {
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		runtime.shutdown();
+		assertTrue(runtime.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * <p>Verifies that an {@link MpscQueue} delivers every element offered by
+	 * concurrent producers, in the order offered by each producer.</p>
+	 */
+	@Test
+	public void testMpscQueue() throws Exception {
+
+		// Setup
+		final int producerCount = 4;
+		final int perProducer = 20000;
+		final MpscQueue<int[]> queue = new MpscQueue<>();
+		Thread[] producers = new Thread[producerCount];
+		for (int p = 0; p < producerCount; p++) {
+			final int producer = p;
+			producers[p] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						queue.offer(new int[] { producer, i });
+					}
+				}
+			});
+		}
+
+		// Execute
+		for (Thread producer : producers) {
+			producer.start();
+		}
+		int[] nextExpected = new int[producerCount];
+		int received = 0;
+		while (received < producerCount * perProducer) {
+			int[] element = queue.poll();
+			if (element == null) {
+				Thread.yield();
+				continue;
+			}
+			// Verify
+			assertEquals(nextExpected[element[0]]++, element[1]);
+			received++;
+		}
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,309 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DriverScopeTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to each {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> args = new ArrayList<>();
+		final List<ResultHandler<String>> pending = new ArrayList<>();
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			args.add(arg);
+			pending.add(resultHandler);
+		}
+		void complete(int i, String result) {
+			pending.get(i).reportComplete(result);
+		}
+	}
+
+	private static class EchoChild implements ChildBody<String> {
+		private final DeferredTask task;
+		private final String arg;
+		EchoChild(DeferredTask task, String arg) {
+			this.task = task;
+			this.arg = arg;
+		}
+		public String run(JasyncDriver driver) {
+			return driver.execute(task, arg) + "!";
+		}
+	}
+
+	private static List<ChildBody<String>> children(DeferredTask task, String... args) {
+		List<ChildBody<String>> children = new ArrayList<>();
+		for (String arg : args) {
+			children.add(new EchoChild(task, arg));
+		}
+		return children;
+	}
+
+	/**
+	 * <p>Verifies that no more than the maximum number of children run at
+	 * once, and that the parent resumes with all results, in order, once all
+	 * children complete.</p>
+	 */
+	@Test
+	public void testBoundedConcurrency() throws Exception {
+
+		// Setup
+		final DeferredTask task = new DeferredTask();
+		final AtomicReference<List<String>> witnessedResults = new AtomicReference<>();
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		final DriverScope<String> scope = new DriverScope<>(driver, 2);
+		driver.execute(new DriverBody() {
+			public void run() {
+				witnessedResults.set(driver.execute(scope, children(task, "a", "b", "c")));
+			}
+		});
+
+		// Verify
+		// ... only two children started
+		assertEquals(Arrays.asList("a", "b"), task.args);
+		// ... completing one launches the next
+		task.complete(1, "B");
+		assertEquals(Arrays.asList("a", "b", "c"), task.args);
+		task.complete(2, "C");
+		assertNull(witnessedResults.get());
+		task.complete(0, "A");
+		assertEquals(Arrays.asList("A!", "B!", "C!"), witnessedResults.get());
+	}
+
+	/**
+	 * <p>Verifies that with a quorum, the parent resumes once enough children
+	 * complete, and the remaining children are cancelled.</p>
+	 */
+	@Test
+	public void testQuorum() throws Exception {
+
+		// Setup
+		final DeferredTask task = new DeferredTask();
+		final AtomicReference<List<String>> witnessedResults = new AtomicReference<>();
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		final DriverScope<String> scope = new DriverScope<String>(driver, 3).setQuorum(2);
+		driver.execute(new DriverBody() {
+			public void run() {
+				witnessedResults.set(driver.execute(scope, children(task, "a", "b", "c")));
+			}
+		});
+		task.complete(0, "A");
+		task.complete(2, "C");
+
+		// Verify
+		assertEquals(Arrays.asList("A!", null, "C!"), witnessedResults.get());
+		// ... a late result from the cancelled child is ignored
+		task.complete(1, "B");
+		assertEquals(Arrays.asList("A!", null, "C!"), witnessedResults.get());
+	}
+
+	/**
+	 * <p>Verifies that cancelling the parent cancels the running children, and
+	 * that children not yet launched never start.</p>
+	 */
+	@Test
+	public void testParentCancelled() throws Exception {
+
+		// Setup
+		final DeferredTask task = new DeferredTask();
+		final AtomicReference<List<String>> witnessedResults = new AtomicReference<>();
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		final DriverScope<String> scope = new DriverScope<>(driver, 1);
+		driver.execute(new DriverBody() {
+			public void run() {
+				witnessedResults.set(driver.execute(scope, children(task, "a", "b")));
+			}
+		});
+		driver.cancel();
+		task.complete(0, "A");
+
+		// Verify
+		assertTrue(driver.isCancelled());
+		assertEquals(Arrays.asList("a"), task.args);
+		assertNull(witnessedResults.get());
+	}
+
+	/**
+	 * <p>Verifies that a failed child cancels its siblings and reports the
+	 * failure to the parent.</p>
+	 */
+	@Test
+	public void testChildFailure() throws Exception {
+
+		// Setup
+		final DeferredTask task = new DeferredTask();
+		final IllegalStateException cause = new IllegalStateException("bad line item");
+		final AtomicBoolean parentResumed = new AtomicBoolean(false);
+		final JasyncDriver driver = new JasyncDriver();
+		final DriverScope<String> scope = new DriverScope<>(driver, 2);
+		driver.execute(new DriverBody() {
+			public void run() {
+				driver.execute(scope, children(task, "a", "b"));
+				parentResumed.set(true);
+			}
+		});
+
+		// Execute
+		try {
+			task.pending.get(0).reportFailure(cause);
+			Assert.fail("Expected exception");
+		} catch (TaskFailedException e) {
+			// Verify
+			// ... the parent failed because of the child failure
+			assertTrue(e.getCause() instanceof TaskFailedException);
+			assertTrue(cause == e.getCause().getCause());
+		}
+		assertEquals(false, parentResumed.get());
+		// ... the sibling was cancelled, so its result is ignored
+		task.complete(1, "B");
+		assertEquals(false, parentResumed.get());
+	}
+
+	/**
+	 * <p>Verifies that with a {@link DriverRuntime}, each child starts on the
+	 * event loop it later resumes on, rather than on the loop of the parent.</p>
+	 */
+	@Test
+	public void testChildrenStartOnOwnLoop() throws Exception {
+
+		// Setup
+		final ExecutorService callbackThreads = Executors.newFixedThreadPool(2);
+		final AsyncTask<String, String> echo = new AsyncTask<String, String>() {
+			public void run(final String arg, final ResultHandler<String> resultHandler) {
+				callbackThreads.execute(new Runnable() {
+					public void run() {
+						resultHandler.reportComplete(arg);
+					}
+				});
+			}
+		};
+		final Set<String> violations = Collections.synchronizedSet(new HashSet<String>());
+		final List<ChildBody<String>> children = new ArrayList<>();
+		for (int i = 0; i < 32; i++) {
+			final String arg = Integer.toString(i);
+			children.add(new ChildBody<String>() {
+				Thread startThread;
+				public String run(JasyncDriver driver) {
+					if (startThread == null) {
+						startThread = Thread.currentThread();
+					} else if (startThread != Thread.currentThread()) {
+						violations.add("Child started on " + startThread + " but resumed on " + Thread.currentThread());
+					}
+					return driver.execute(echo, arg);
+				}
+			});
+		}
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<List<String>> witnessedResults = new AtomicReference<>();
+		DriverRuntime runtime = new DriverRuntime(4);
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		final DriverScope<String> scope = new DriverScope<>(driver, 8);
+		runtime.execute(driver, new DriverBody() {
+			public void run() {
+				witnessedResults.set(driver.execute(scope, children));
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertTrue(violations.toString(), violations.isEmpty());
+		assertEquals(32, witnessedResults.get().size());
+		runtime.shutdown();
+		callbackThreads.shutdown();
+	}
+
+	/**
+	 * <p>Verifies that when one child completes the quorum on one thread while
+	 * a sibling fails on another, the scope reports exactly one outcome.</p>
+	 */
+	@Test
+	public void testRacingCompletionAndFailure() throws Exception {
+		for (int attempt = 0; attempt < 500; attempt++) {
+
+			// Setup
+			final DeferredTask task = new DeferredTask();
+			final List<Object> outcomes = Collections.synchronizedList(new ArrayList<Object>());
+			final DriverScope<String> scope = new DriverScope<String>(new JasyncDriver(), 2).setQuorum(1);
+			scope.run(children(task, "a", "b"), new ResultHandler<List<String>>() {
+				public void reportComplete(List<String> result) {
+					outcomes.add(result);
+				}
+				public void reportComplete() {
+					reportComplete(null);
+				}
+				public void reportFailure(Throwable cause) {
+					outcomes.add(cause);
+				}
+				public TaskContext getContext() {
+					return null;
+				}
+			});
+			final CountDownLatch go = new CountDownLatch(1);
+			Thread completer = new Thread(new Runnable() {
+				public void run() {
+					awaitQuietly(go);
+					task.complete(0, "A");
+				}
+			});
+			Thread failer = new Thread(new Runnable() {
+				public void run() {
+					awaitQuietly(go);
+					try {
+						task.pending.get(1).reportFailure(new IllegalStateException("bad line item"));
+					} catch (TaskFailedException e) {
+						// The child body failed, as intended
+					}
+				}
+			});
+
+			// Execute
+			completer.start();
+			failer.start();
+			go.countDown();
+			completer.join();
+			failer.join();
+
+			// Verify
+			assertEquals(outcomes.toString(), 1, outcomes.size());
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -4,6 +4,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -359,4 +364,248 @@ public class JasyncDriverTest {
 		assertEquals(1, taskExecutions.size());
 		assertEquals("onComplete", taskExecutions.get(0));
 	}
+
+	/**
+	 * <p>
+	 * Verifies that a failure reported by an {@link AsyncTask} ends the
+	 * {@link DriverBody} with a {@link TaskFailedException} carrying the
+	 * reported cause, and that the remaining tasks never run.
+	 * </p>
+	 */
+	@Test
+	public void testReportFailure() throws Exception {
+
+		// Setup
+		final IllegalStateException cause = new IllegalStateException("server down");
+		final AtomicBoolean afterFailureRan = new AtomicBoolean(false);
+		final AsyncTask<Void, Void> failingTask = new AsyncTask<Void, Void>() {
+			public void run(Void arg, ResultHandler<Void> resultHandler) {
+				resultHandler.reportFailure(cause);
+			}
+		};
+		final SyncTask<Void, Void> afterFailure = new SyncTask<Void, Void>() {
+			public Void run(Void arg) {
+				afterFailureRan.set(true);
+				return null;
+			}
+		};
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		try {
+			driver.execute(new DriverBody() {
+				public void run() {
+					driver.execute(failingTask);
+					driver.execute(afterFailure);
+				};
+			});
+			Assert.fail("Expected exception");
+		} catch (TaskFailedException e) {
+			// Verify
+			assertTrue(cause == e.getCause());
+		}
+		assertEquals(false, afterFailureRan.get());
+	}
+
+	/**
+	 * <p>
+	 * Verifies that the {@link Deadline} of a driver is visible to its
+	 * {@link AsyncTask}s, and that once it has passed, the driver fails fast
+	 * with a {@link DeadlineExceededException} instead of starting the next
+	 * {@link AsyncTask}.
+	 * </p>
+	 */
+	@Test
+	public void testDeadline() throws Exception {
+
+		// Setup
+		final AtomicReference<TaskContext> witnessedContext = new AtomicReference<>();
+		final AtomicInteger lateTaskCount = new AtomicInteger(0);
+		final AsyncTask<Void, Void> slowTask = new AsyncTask<Void, Void>() {
+			public void run(Void arg, ResultHandler<Void> resultHandler) {
+				witnessedContext.set(resultHandler.getContext());
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				resultHandler.reportComplete();
+			}
+		};
+		final AsyncTask<Void, Void> lateTask = new AsyncTask<Void, Void>() {
+			public void run(Void arg, ResultHandler<Void> resultHandler) {
+				lateTaskCount.incrementAndGet();
+				resultHandler.reportComplete();
+			}
+		};
+		final Deadline deadline = Deadline.after(200, TimeUnit.MILLISECONDS);
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver().setDeadline(deadline);
+		try {
+			driver.execute(new DriverBody() {
+				public void run() {
+					driver.execute(slowTask);
+					driver.execute(lateTask);
+				};
+			});
+			Assert.fail("Expected exception");
+		} catch (DeadlineExceededException e) {
+			// Success
+		}
+
+		// Verify
+		assertTrue(deadline == witnessedContext.get().getDeadline());
+		assertTrue(witnessedContext.get().isExpired());
+		assertEquals(0, lateTaskCount.get());
+	}
+
+	/**
+	 * <p>
+	 * Verifies that a {@link TimedTask} that could not possibly complete
+	 * before the deadline is never started.
+	 * </p>
+	 */
+	@Test
+	public void testTimedTaskFailsFast() throws Exception {
+
+		// Setup
+		final AtomicInteger callCount = new AtomicInteger(0);
+		final TimedTask<Void, Void> timedTask = new TimedTask<Void, Void>() {
+			public void run(Void arg, ResultHandler<Void> resultHandler) {
+				callCount.incrementAndGet();
+				resultHandler.reportComplete();
+			}
+			public long getMinimumDuration(TimeUnit unit) {
+				return unit.convert(500, TimeUnit.MILLISECONDS);
+			}
+		};
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver().setDeadline(Deadline.after(1, TimeUnit.SECONDS));
+		driver.execute(new DriverBody() {
+			public void run() {
+				driver.execute(timedTask);
+			};
+		});
+		final JasyncDriver hurriedDriver = new JasyncDriver().setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+		try {
+			hurriedDriver.execute(new DriverBody() {
+				public void run() {
+					hurriedDriver.execute(timedTask);
+				};
+			});
+			Assert.fail("Expected exception");
+		} catch (DeadlineExceededException e) {
+			// Success
+		}
+
+		// Verify
+		assertEquals(1, callCount.get());
+	}
+
+	/**
+	 * <p>Verifies that a {@link BlockingSyncTask} runs on the blocking
+	 * executor rather than the thread driving the {@link DriverBody}, that the
+	 * body suspends until it returns, and that an exception thrown by it
+	 * reaches the body as a {@link TaskFailedException}.</p>
+	 */
+	@Test
+	public void testBlockingSyncTaskOffloaded() throws Exception {
+
+		// Setup
+		final List<Runnable> offloaded = new ArrayList<>();
+		final List<String> log = new ArrayList<>();
+		final IllegalStateException cause = new IllegalStateException("connection lost");
+		final BlockingSyncTask<String, String> query = new BlockingSyncTask<String, String>() {
+			public String run(String arg) {
+				log.add("query:" + arg);
+				if (arg.equals("fail")) {
+					throw cause;
+				}
+				return arg.toUpperCase();
+			}
+		};
+		final JasyncDriver driver = new JasyncDriver().setBlockingExecutor(new Executor() {
+			public void execute(Runnable command) {
+				offloaded.add(command);
+			}
+		});
+
+		// Execute
+		driver.execute(new DriverBody() {
+			public void run() {
+				log.add("body:" + driver.execute(query, "a"));
+				try {
+					driver.execute(query, "fail");
+				} catch (TaskFailedException e) {
+					log.add("failed:" + (e.getCause() == cause));
+				}
+			}
+		});
+
+		// Verify
+		// ... nothing ran inline
+		assertEquals(1, offloaded.size());
+		assertEquals(0, log.size());
+		offloaded.get(0).run();
+		assertEquals(2, offloaded.size());
+		offloaded.get(1).run();
+		// ... the body is replayed after each task, so "body:A" appears twice
+		assertEquals(Arrays.asList("query:a", "body:A", "query:fail", "body:A", "failed:true"), log);
+	}
+
+	/**
+	 * <p>Verifies that an {@link Error} thrown by an offloaded task, and the
+	 * rejection of a task by its executor, both reach the body as a
+	 * {@link TaskFailedException} rather than leaving it suspended.</p>
+	 */
+	@Test
+	public void testOffloadFailures() throws Exception {
+
+		// Setup
+		final List<Throwable> causes = new ArrayList<>();
+		final AssertionError error = new AssertionError("corrupt index");
+		final RejectedExecutionException rejection = new RejectedExecutionException("pool is shut down");
+		final BlockingSyncTask<String, String> query = new BlockingSyncTask<String, String>() {
+			public String run(String arg) {
+				throw error;
+			}
+		};
+		final ComputeSyncTask<String, String> compute = new ComputeSyncTask<String, String>() {
+			public String run(String arg) {
+				return arg;
+			}
+		};
+		final JasyncDriver driver = new JasyncDriver()
+			.setBlockingExecutor(new Executor() {
+				public void execute(Runnable command) {
+					command.run();
+				}
+			})
+			.setComputeExecutor(new Executor() {
+				public void execute(Runnable command) {
+					throw rejection;
+				}
+			});
+
+		// Execute
+		driver.execute(new DriverBody() {
+			public void run() {
+				try {
+					driver.execute(query, "a");
+				} catch (TaskFailedException e) {
+					causes.add(e.getCause());
+				}
+				try {
+					driver.execute(compute, "b");
+				} catch (TaskFailedException e) {
+					causes.add(e.getCause());
+				}
+			}
+		});
+
+		// Verify
+		assertEquals(Arrays.<Throwable>asList(error, rejection), causes);
+	}
 }
@@ -0,0 +1,128 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ResumeDispatcherTest {
+
+	/**
+	 * An {@link Executor} that holds on to submitted work until the test runs
+	 * it, simulating busy callback threads.
+	 */
+	private static class ManualExecutor implements Executor {
+		final List<Runnable> pending = new ArrayList<>();
+		public void execute(Runnable command) {
+			pending.add(command);
+		}
+		void runAll() {
+			while (!pending.isEmpty()) {
+				pending.remove(0).run();
+			}
+		}
+	}
+
+	private static Runnable logResumption(final List<String> log, final String name) {
+		return new Runnable() {
+			public void run() {
+				log.add(name);
+			}
+		};
+	}
+
+	/**
+	 * <p>Verifies that queued resumptions are run highest {@link Priority}
+	 * first, regardless of the order in which they were queued, and that
+	 * queue times are recorded per class.</p>
+	 */
+	@Test
+	public void testPriorityOrder() throws Exception {
+
+		// Setup
+		ManualExecutor executor = new ManualExecutor();
+		ResumeDispatcher dispatcher = new ResumeDispatcher(executor, 1, TimeUnit.HOURS);
+		JasyncDriver batch = new JasyncDriver().setPriority(Priority.BATCH);
+		JasyncDriver normal = new JasyncDriver();
+		JasyncDriver interactive = new JasyncDriver().setPriority(Priority.INTERACTIVE);
+		List<String> log = new ArrayList<>();
+
+		// Execute
+		dispatcher.resume(batch, logResumption(log, "batch-1"));
+		dispatcher.resume(batch, logResumption(log, "batch-2"));
+		dispatcher.resume(normal, logResumption(log, "normal"));
+		dispatcher.resume(interactive, logResumption(log, "interactive"));
+		assertEquals(2, dispatcher.getQueueDepth(Priority.BATCH));
+		executor.runAll();
+
+		// Verify
+		assertEquals(Arrays.asList("interactive", "normal", "batch-1", "batch-2"), log);
+		assertEquals(0, dispatcher.getQueueDepth(Priority.BATCH));
+		assertEquals(1, dispatcher.getQueueTimeStats(Priority.INTERACTIVE).getCount());
+		assertEquals(2, dispatcher.getQueueTimeStats(Priority.BATCH).getCount());
+	}
+
+	/**
+	 * <p>Verifies that a resumption that has waited beyond the starvation
+	 * threshold is run ahead of higher classes.</p>
+	 */
+	@Test
+	public void testStarvationProtection() throws Exception {
+
+		// Setup
+		ManualExecutor executor = new ManualExecutor();
+		ResumeDispatcher dispatcher = new ResumeDispatcher(executor, 10, TimeUnit.MILLISECONDS);
+		JasyncDriver batch = new JasyncDriver().setPriority(Priority.BATCH);
+		JasyncDriver interactive = new JasyncDriver().setPriority(Priority.INTERACTIVE);
+		List<String> log = new ArrayList<>();
+
+		// Execute
+		dispatcher.resume(batch, logResumption(log, "batch"));
+		Thread.sleep(20);
+		dispatcher.resume(interactive, logResumption(log, "interactive"));
+		executor.runAll();
+
+		// Verify
+		assertEquals(Arrays.asList("batch", "interactive"), log);
+	}
+
+	/**
+	 * <p>Verifies that a {@link JasyncDriver} with a dispatcher resumes its
+	 * {@link DriverBody} through the dispatcher, rather than on the thread that
+	 * reported the result.</p>
+	 */
+	@Test
+	public void testDriverResumesThroughDispatcher() throws Exception {
+
+		// Setup
+		ManualExecutor executor = new ManualExecutor();
+		ResumeDispatcher dispatcher = new ResumeDispatcher(executor);
+		final List<String> log = new ArrayList<>();
+		final AsyncTask<Void, String> task = new AsyncTask<Void, String>() {
+			public void run(Void arg, ResultHandler<String> resultHandler) {
+				log.add("task:" + resultHandler.getContext().getPriority());
+				resultHandler.reportComplete("result");
+			}
+		};
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver()
+			.setPriority(Priority.INTERACTIVE)
+			.setResumeExecutor(dispatcher);
+		driver.execute(new DriverBody() {
+			public void run() {
+				log.add("body:" + driver.execute(task));
+			}
+		});
+
+		// Verify
+		assertEquals(Arrays.asList("task:INTERACTIVE"), log);
+		executor.runAll();
+		assertEquals(Arrays.asList("task:INTERACTIVE", "body:result"), log);
+	}
+}
@@ -0,0 +1,230 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class StreamingTaskTest {
+
+	/**
+	 * A {@link StreamingTask} whose items are pushed by the test, and which
+	 * records the demand signalled by the consumer.
+	 */
+	private static class PushedStream implements StreamingTask<Void, String>, StreamSubscription {
+		StreamHandler<String> handler;
+		long requested;
+		boolean cancelled;
+		public StreamSubscription open(Void arg, StreamHandler<String> streamHandler) {
+			handler = streamHandler;
+			return this;
+		}
+		public void request(long count) {
+			requested += count;
+		}
+		public void cancel() {
+			cancelled = true;
+		}
+		void push(String item) {
+			requested--;
+			handler.reportNext(item);
+		}
+	}
+
+	/**
+	 * A {@link StreamingTask} that reports the numbers up to its argument,
+	 * inline, as they are requested.
+	 */
+	private static class RangeStream implements StreamingTask<Integer, Integer> {
+		public StreamSubscription open(final Integer size, final StreamHandler<Integer> streamHandler) {
+			return new StreamSubscription() {
+				int next;
+				public void request(long count) {
+					for (long i = 0; i < count && next < size; i++) {
+						streamHandler.reportNext(next++);
+					}
+					if (next == size) {
+						next++;
+						streamHandler.reportEnd();
+					}
+				}
+				public void cancel() {
+				}
+			};
+		}
+	}
+
+	/**
+	 * <p>Verifies that items are handed to the consumer as they arrive, with
+	 * one item requested at a time, and that only the item count is kept in
+	 * the history of the driver.</p>
+	 */
+	@Test
+	public void testItemsConsumedAsTheyArrive() throws Exception {
+
+		// Setup
+		final PushedStream stream = new PushedStream();
+		final List<String> consumed = new ArrayList<>();
+		final SyncTask<String, Void> consumer = new SyncTask<String, Void>() {
+			public Void run(String item) {
+				consumed.add(item);
+				return null;
+			}
+		};
+		final AtomicLong witnessedCount = new AtomicLong(-1);
+		final AtomicInteger bodyExecutions = new AtomicInteger();
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				bodyExecutions.incrementAndGet();
+				witnessedCount.set(driver.forEachStreamed(stream, null, consumer));
+			}
+		});
+
+		// Verify
+		assertEquals(1, stream.requested);
+		stream.push("page-1");
+		assertEquals(Arrays.asList("page-1"), consumed);
+		assertEquals(1, stream.requested);
+		stream.push("page-2");
+		assertEquals(0, driver.getHistorySize());
+		stream.handler.reportEnd();
+		assertEquals(Arrays.asList("page-1", "page-2"), consumed);
+		assertEquals(2, witnessedCount.get());
+		assertEquals(2, bodyExecutions.get());
+	}
+
+	/**
+	 * <p>Verifies that a long stream reported inline is consumed without
+	 * growing the stack, and without suspending the {@link DriverBody}.</p>
+	 */
+	@Test
+	public void testInlineStream() throws Exception {
+
+		// Setup
+		final RangeStream stream = new RangeStream();
+		final AtomicLong sum = new AtomicLong();
+		final SyncTask<Integer, Void> consumer = new SyncTask<Integer, Void>() {
+			public Void run(Integer item) {
+				sum.addAndGet(item);
+				return null;
+			}
+		};
+		final AtomicLong witnessedCount = new AtomicLong(-1);
+		final AtomicInteger bodyExecutions = new AtomicInteger();
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				bodyExecutions.incrementAndGet();
+				witnessedCount.set(driver.forEachStreamed(stream, 1000000, consumer));
+			}
+		});
+
+		// Verify
+		assertEquals(1000000, witnessedCount.get());
+		assertEquals(499999500000L, sum.get());
+		assertEquals(1, bodyExecutions.get());
+	}
+
+	/**
+	 * <p>Verifies that a failing consumer cancels the stream and fails the
+	 * {@link DriverBody}.</p>
+	 */
+	@Test
+	public void testConsumerFailure() throws Exception {
+
+		// Setup
+		final PushedStream stream = new PushedStream();
+		final IllegalStateException cause = new IllegalStateException("bad row");
+		final SyncTask<String, Void> consumer = new SyncTask<String, Void>() {
+			public Void run(String item) {
+				throw cause;
+			}
+		};
+		final AtomicReference<Throwable> witnessedFailure = new AtomicReference<>();
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				try {
+					driver.forEachStreamed(stream, null, consumer);
+				} catch (TaskFailedException e) {
+					witnessedFailure.set(e.getCause());
+				}
+			}
+		});
+
+		// Execute
+		stream.push("page-1");
+
+		// Verify
+		assertTrue(stream.cancelled);
+		assertTrue(cause == witnessedFailure.get());
+	}
+
+	/**
+	 * <p>Verifies that when the stream ends while an {@link AsyncTask}
+	 * consumer is still working on the last item on another thread, the
+	 * driver resumes only once that item is consumed, with the final
+	 * count.</p>
+	 */
+	@Test
+	public void testEndWhileConsumerInFlight() throws Exception {
+
+		// Setup
+		final RangeStream stream = new RangeStream();
+		final ExecutorService consumerThread = Executors.newSingleThreadExecutor();
+		final AtomicLong sum = new AtomicLong();
+		final AsyncTask<Integer, Void> consumer = new AsyncTask<Integer, Void>() {
+			public void run(final Integer item, final ResultHandler<Void> resultHandler) {
+				consumerThread.execute(new Runnable() {
+					public void run() {
+						try {
+							Thread.sleep(10);
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+						sum.addAndGet(item);
+						resultHandler.reportComplete();
+					}
+				});
+			}
+		};
+		final AtomicLong witnessedCount = new AtomicLong(-1);
+		final AtomicLong witnessedSum = new AtomicLong(-1);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		driver.execute(new DriverBody() {
+			public void run() {
+				witnessedCount.set(driver.forEachStreamed(stream, 5, consumer));
+				witnessedSum.set(sum.get());
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(5, witnessedCount.get());
+		assertEquals(0 + 1 + 2 + 3 + 4, witnessedSum.get());
+		consumerThread.shutdown();
+	}
+}
@@ -0,0 +1,186 @@
+package info.ryankenney.jasync_driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TaskProfileTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to its {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> calls = new ArrayList<>();
+		ResultHandler<String> pending;
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			calls.add(arg);
+			pending = resultHandler;
+		}
+		void complete(String result) {
+			ResultHandler<String> handler = pending;
+			pending = null;
+			handler.reportComplete(result);
+		}
+	}
+
+	private static class DeferredIdempotentTask extends DeferredTask implements IdempotentTask<String, String> {
+	}
+
+	private void runBody(TaskProfile profile, final DeferredTask first, final DeferredTask second,
+			final String secondArg, final AtomicReference<String> witnessedResult) {
+		final JasyncDriver driver = new JasyncDriver().setTaskProfile(profile);
+		driver.execute(new DriverBody() {
+			public void run() {
+				driver.execute(first, "first");
+				witnessedResult.set(driver.execute(second, secondArg));
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that once a profile is warmed up, an {@link IdempotentTask}
+	 * that always follows another task is started while the preceding task is
+	 * still in flight, and that its result is handed over to the
+	 * {@link DriverBody}.</p>
+	 */
+	@Test
+	public void testPrefetchHit() throws Exception {
+
+		// Setup
+		TaskProfile profile = new TaskProfile(0.99, 3);
+		DeferredTask first = new DeferredTask();
+		DeferredIdempotentTask second = new DeferredIdempotentTask();
+		AtomicReference<String> witnessedResult = new AtomicReference<>();
+		for (int i = 0; i < 3; i++) {
+			runBody(profile, first, second, "second", witnessedResult);
+			first.complete("result-1");
+			second.complete("result-2");
+		}
+		assertEquals(0, profile.getPrefetchCount());
+		second.calls.clear();
+
+		// Execute
+		runBody(profile, first, second, "second", witnessedResult);
+
+		// Verify
+		// ... the second task started before the first completed
+		assertEquals(1, second.calls.size());
+		assertEquals("second", second.calls.get(0));
+		// ... and its result is used once the body reaches it
+		second.complete("result-2");
+		first.complete("result-1");
+		assertEquals("result-2", witnessedResult.get());
+		assertEquals(1, second.calls.size());
+		assertEquals(1, profile.getPrefetchCount());
+		assertEquals(1, profile.getHitCount());
+		assertEquals(0, profile.getMissCount());
+	}
+
+	/**
+	 * <p>Verifies that a prefetched result is discarded (and the task executed
+	 * again) if the {@link DriverBody} reaches the task with a different
+	 * argument than predicted.</p>
+	 */
+	@Test
+	public void testPrefetchMiss() throws Exception {
+
+		// Setup
+		TaskProfile profile = new TaskProfile(0.99, 3);
+		DeferredTask first = new DeferredTask();
+		DeferredIdempotentTask second = new DeferredIdempotentTask();
+		AtomicReference<String> witnessedResult = new AtomicReference<>();
+		for (int i = 0; i < 3; i++) {
+			runBody(profile, first, second, "second", witnessedResult);
+			first.complete("result-1");
+			second.complete("result-2");
+		}
+		second.calls.clear();
+
+		// Execute
+		runBody(profile, first, second, "other", witnessedResult);
+		second.complete("prefetched");
+		first.complete("result-1");
+		second.complete("fetched");
+
+		// Verify
+		assertEquals(2, second.calls.size());
+		assertEquals("other", second.calls.get(1));
+		assertEquals("fetched", witnessedResult.get());
+		assertEquals(0, profile.getHitCount());
+		assertEquals(1, profile.getMissCount());
+	}
+
+	/**
+	 * <p>Verifies that tasks which are not {@link IdempotentTask}s are never
+	 * started early.</p>
+	 */
+	@Test
+	public void testNoPrefetchOfNonIdempotentTask() throws Exception {
+
+		// Setup
+		TaskProfile profile = new TaskProfile(0.99, 3);
+		DeferredTask first = new DeferredTask();
+		DeferredTask second = new DeferredTask();
+		AtomicReference<String> witnessedResult = new AtomicReference<>();
+		for (int i = 0; i < 3; i++) {
+			runBody(profile, first, second, "second", witnessedResult);
+			first.complete("result-1");
+			second.complete("result-2");
+		}
+		second.calls.clear();
+
+		// Execute
+		runBody(profile, first, second, "second", witnessedResult);
+
+		// Verify
+		assertEquals(0, second.calls.size());
+		assertEquals(0, profile.getPrefetchCount());
+	}
+
+	/**
+	 * <p>Verifies that observations recorded by many threads at once are
+	 * all counted, so a step that always sees the same task is predicted even
+	 * when every observation must agree.</p>
+	 */
+	@Test
+	public void testConcurrentRecording() throws Exception {
+
+		// Setup
+		final int threadCount = 4;
+		final int perThread = 20000;
+		final TaskProfile profile = new TaskProfile(1.0, threadCount * perThread);
+		final DeferredIdempotentTask task = new DeferredIdempotentTask();
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						profile.record(0, task, "arg");
+						profile.record(1 + i % 3, task, Integer.toString(i));
+					}
+				}
+			});
+		}
+
+		// Execute
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Verify
+		TaskProfile.ProfiledStep predicted = profile.predict(0);
+		assertTrue(predicted != null && predicted.matches(task, "arg"));
+		assertNull(profile.predict(1));
+		assertNull(profile.predict(7));
+	}
+}
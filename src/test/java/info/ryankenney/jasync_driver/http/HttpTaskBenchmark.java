@@ -0,0 +1,100 @@
+package info.ryankenney.jasync_driver.http;
+
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.LatencyStats;
+import info.ryankenney.jasync_driver.nio.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * Measures the throughput and latency of {@link HttpTask}s issued by many
+ * concurrent drivers against a local {@link HttpServer}, through the limited
+ * connections of one {@link HttpTarget}. Like the demos, this is not picked up
+ * by the regular test run. Execute it explicitly:
+ * </p>
+ *
+ * <pre>
+ * mvn test -Dtest=HttpTaskBenchmark
+ * </pre>
+ *
+ * @author rkenney
+ */
+public class HttpTaskBenchmark {
+
+	private static final int DRIVERS = 2000;
+	private static final int CONNECTIONS = 8;
+	private static final byte[] BODY = new byte[10000];
+
+	@Test
+	public void benchmarkConcurrentDrivers() throws Exception {
+		ExecutorService serverThreads = Executors.newFixedThreadPool(CONNECTIONS);
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/large", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, BODY.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(BODY);
+				out.close();
+			}
+		});
+		server.setExecutor(serverThreads);
+		server.start();
+		HttpTarget target = new HttpTarget(new URL("http://127.0.0.1:" + server.getAddress().getPort()), CONNECTIONS);
+		try {
+			// Warm up
+			run(target);
+			LatencyStats latencies = new LatencyStats();
+			long nanos = run(target, latencies);
+			System.out.println(String.format("[BENCHMARK] %,d requests: %,10d requests/s, p50 %,d ms, p99 %,d ms",
+					DRIVERS, DRIVERS * TimeUnit.SECONDS.toNanos(1) / nanos,
+					latencies.getPercentile(50, TimeUnit.MILLISECONDS),
+					latencies.getPercentile(99, TimeUnit.MILLISECONDS)));
+		} finally {
+			target.shutdown();
+			server.stop(0);
+			serverThreads.shutdown();
+		}
+	}
+
+	private long run(HttpTarget target) throws Exception {
+		return run(target, new LatencyStats());
+	}
+
+	private long run(HttpTarget target, final LatencyStats latencies) throws Exception {
+		final HttpTask http = new HttpTask(target, new BufferPool(16384, 64));
+		final CountDownLatch done = new CountDownLatch(DRIVERS);
+		long start = System.nanoTime();
+		for (int i = 0; i < DRIVERS; i++) {
+			final long driverStart = System.nanoTime();
+			final JasyncDriver driver = new JasyncDriver(new Runnable() {
+				public void run() {
+					latencies.record(System.nanoTime() - driverStart, TimeUnit.NANOSECONDS);
+					done.countDown();
+				}
+			});
+			driver.execute(new DriverBody() {
+				public void run() {
+					driver.execute(http, new HttpRequest("GET", "/large"));
+				}
+			});
+		}
+		done.await();
+		return System.nanoTime() - start;
+	}
+}
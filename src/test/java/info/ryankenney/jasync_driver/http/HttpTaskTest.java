@@ -0,0 +1,208 @@
+package info.ryankenney.jasync_driver.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.TaskFailedException;
+import info.ryankenney.jasync_driver.nio.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs {@link HttpTask}s against a local {@link HttpServer} standing in for a
+ * real backend.
+ */
+public class HttpTaskTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] LARGE_BODY = new byte[10000];
+	static {
+		for (int i = 0; i < LARGE_BODY.length; i++) {
+			LARGE_BODY[i] = (byte) i;
+		}
+	}
+
+	private HttpServer server;
+	private HttpTarget target;
+	private final AtomicInteger requestCount = new AtomicInteger();
+
+	@Before
+	public void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/large", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, LARGE_BODY);
+			}
+		});
+		server.createContext("/echo", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = new byte[Integer.parseInt(exchange.getRequestHeaders().getFirst("Content-Length"))];
+				int read = 0;
+				while (read < body.length) {
+					read += exchange.getRequestBody().read(body, read, body.length - read);
+				}
+				respond(exchange, 200, body);
+			}
+		});
+		server.createContext("/unavailable", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 503, bytes("try later"));
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.start();
+		target = new HttpTarget(new URL("http://127.0.0.1:" + server.getAddress().getPort()), 8);
+	}
+
+	@After
+	public void stopServer() {
+		target.shutdown();
+		server.stop(0);
+	}
+
+	private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		requestCount.incrementAndGet();
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	/**
+	 * <p>Verifies that a response body larger than a buffer is streamed into
+	 * several pooled buffers, which are released when the driver run
+	 * ends, and that a request body is sent.</p>
+	 */
+	@Test
+	public void testResponseBodyStreamedIntoPooledBuffers() throws Exception {
+
+		// Setup
+		final BufferPool pool = new BufferPool(4096, 16);
+		final HttpTask http = new HttpTask(target, pool);
+		final AtomicReference<byte[]> witnessedLarge = new AtomicReference<>();
+		final AtomicReference<String> witnessedEcho = new AtomicReference<>();
+		final AtomicInteger witnessedBufferCount = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		driver.execute(new DriverBody() {
+			public void run() {
+				HttpResponse large = driver.execute(http, new HttpRequest("GET", "/large"));
+				witnessedBufferCount.set(large.getBody().size());
+				witnessedLarge.set(large.getBodyBytes());
+				HttpResponse echo = driver.execute(http, new HttpRequest("POST", "/echo")
+					.addHeader("Content-Type", "text/plain")
+					.setBody(bytes("ping")));
+				witnessedEcho.set(new String(echo.getBodyBytes(), UTF_8));
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(3, witnessedBufferCount.get());
+		assertTrue(Arrays.equals(LARGE_BODY, witnessedLarge.get()));
+		assertEquals("ping", witnessedEcho.get());
+		assertEquals(0, pool.getLeasedCount());
+	}
+
+	/**
+	 * <p>Verifies that an error status reaches the {@link DriverBody} as a
+	 * failed task.</p>
+	 */
+	@Test
+	public void testErrorStatusFails() throws Exception {
+
+		// Setup
+		final HttpTask http = new HttpTask(target, new BufferPool(4096, 16));
+		final AtomicReference<Throwable> witnessedFailure = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				try {
+					driver.execute(http, new HttpRequest("GET", "/unavailable"));
+				} catch (TaskFailedException e) {
+					witnessedFailure.set(e.getCause());
+					done.countDown();
+				}
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(witnessedFailure.get() instanceof HttpStatusException);
+		assertEquals(503, ((HttpStatusException) witnessedFailure.get()).getStatus());
+	}
+
+	/**
+	 * <p>Verifies that many concurrent drivers all complete through the
+	 * limited connections of a target, recycling their buffers.</p>
+	 */
+	@Test
+	public void testConcurrentDrivers() throws Exception {
+
+		// Setup
+		final int driverCount = 500;
+		final BufferPool pool = new BufferPool(16384, 64);
+		final HttpTask http = new HttpTask(target, pool);
+		final CountDownLatch done = new CountDownLatch(driverCount);
+		final AtomicInteger failures = new AtomicInteger();
+
+		// Execute
+		for (int i = 0; i < driverCount; i++) {
+			final JasyncDriver driver = new JasyncDriver(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			driver.execute(new DriverBody() {
+				public void run() {
+					HttpResponse response = driver.execute(http, new HttpRequest("GET", "/large"));
+					if (response.getBodyLength() != LARGE_BODY.length) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		// Verify
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		assertEquals(0, failures.get());
+		assertEquals(driverCount, requestCount.get());
+		assertEquals(0, pool.getLeasedCount());
+		// ... buffers were recycled rather than allocated per request
+		assertTrue(pool.getAllocatedCount() <= target.getMaxConnections());
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(UTF_8);
+	}
+}
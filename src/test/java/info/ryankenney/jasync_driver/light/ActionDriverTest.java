@@ -1,8 +1,17 @@
 package info.ryankenney.jasync_driver.light;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -349,6 +358,960 @@ public class ActionDriverTest {
         assertEquals(1, followOnCount.get());
     }
 
+    /**
+     * Verifies that {@link ActionDriver#stop()} still stops the run of its
+     * driver when it is handed a callback that lost the context of the run,
+     * as long as that run is the only one in flight.
+     */
+    @Test
+    public void testStopWithoutContextCarrier() throws Exception {
+        // Setup
+        final List<String> log = new ArrayList<>();
+        ActionDriver driver = new ActionDriver();
+        final AsyncAction stop = driver.stop();
+        AsyncAction wrapper = new AsyncAction() {
+            @Override
+            public void run(final Runnable onComplete) {
+                stop.run(new Runnable() {
+                    @Override
+                    public void run() {
+                        log.add("wrapped");
+                        onComplete.run();
+                    }
+                });
+            }
+        };
+        driver.setBody(driver.series(
+                driver.exec(new LogAction(log, "a")),
+                wrapper,
+                driver.exec(new LogAction(log, "b"))));
+
+        // Execute
+        RunContext context = driver.prepare(new LogRunnable(log, "done"));
+        context.start();
+
+        // Verify
+        assertEquals(Arrays.asList("a", "done"), log);
+        assertEquals(null, context.getFailure());
+        assertEquals(0, driver.getActiveRunCount());
+    }
+
+    /**
+     * Verifies that a series of a million actions that complete synchronously
+     * runs without overflowing the stack, and that a series still resumes when
+     * an action completes later, from another thread.
+     */
+    @Test
+    public void testLongSynchronousSeries() throws Exception {
+        // Setup
+        final AtomicInteger syncCount = new AtomicInteger(0);
+        final AtomicInteger followOnCount = new AtomicInteger(0);
+        final AtomicReference<Runnable> pendingCallback = new AtomicReference<>();
+        ActionDriver driver = new ActionDriver();
+        AsyncAction[] actions = new AsyncAction[1000000];
+        AsyncAction syncAction = driver.exec(new SyncIncrementAction(syncCount));
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = syncAction;
+        }
+        actions[actions.length / 2] = new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                pendingCallback.set(onComplete);
+            }
+        };
+
+        // Execute
+        driver.setBody(driver.series(actions));
+        driver.run(new IncrementRunnable(followOnCount));
+        assertEquals(actions.length / 2, syncCount.get());
+        Thread thread = new Thread(pendingCallback.get());
+        thread.start();
+        thread.join();
+
+        // Verify
+        assertEquals(actions.length - 1, syncCount.get());
+        assertEquals(1, followOnCount.get());
+    }
+
+    /**
+     * Verifies that one plan can serve many interleaved runs, each with its
+     * own {@link Ref} values and its own "on complete" callback, including
+     * runs stopped part way.
+     */
+    @Test
+    public void testConcurrentRunsOfOnePlan() throws Exception {
+        // Setup
+        final Ref<Integer> input = new Ref<>();
+        final Ref<Boolean> isEven = new Ref<>();
+        final List<Runnable> pendingCallbacks = new ArrayList<>();
+        final List<String> log = new ArrayList<>();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.series(
+                driver.exec(new ContextSyncAction() {
+                    @Override
+                    public void run(RunContext context) {
+                        isEven.set(context, input.get(context) % 2 == 0);
+                    }
+                }),
+                new AsyncAction() {
+                    @Override
+                    public void run(Runnable onComplete) {
+                        pendingCallbacks.add(onComplete);
+                    }
+                },
+                driver.doIfNot(isEven, driver.stop()),
+                driver.exec(new ContextSyncAction() {
+                    @Override
+                    public void run(RunContext context) {
+                        log.add("even:" + input.get(context));
+                    }
+                })));
+
+        // Execute
+        for (int i = 0; i < 4; i++) {
+            final int value = i;
+            driver.prepare(new Runnable() {
+                @Override
+                public void run() {
+                    log.add("done:" + value);
+                }
+            }).set(input, value).start();
+        }
+        assertEquals(4, pendingCallbacks.size());
+        for (int i = pendingCallbacks.size() - 1; i >= 0; i--) {
+            pendingCallbacks.get(i).run();
+        }
+
+        // Verify
+        assertEquals(Arrays.asList("done:3", "even:2", "done:2", "done:1", "even:0", "done:0"), log);
+        // ... the shared values were never touched
+        assertEquals(null, input.get());
+        assertEquals(null, isEven.get());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#compile()} flattens nested series,
+     * drops empty branches and fuses consecutive synchronous actions, and that
+     * the compiled plan executes the same actions, in the same order, as the
+     * original.
+     */
+    @Test
+    public void testCompile() throws Exception {
+        // Setup
+        final Ref<Boolean> flag = new Ref<>();
+        final List<String> interpretedLog = new ArrayList<>();
+        final List<String> compiledLog = new ArrayList<>();
+        ActionDriver interpreted = buildLoggingPlan(new ActionDriver(), flag, interpretedLog);
+        ActionDriver compiled = buildLoggingPlan(new ActionDriver(), flag, compiledLog).compile();
+
+        // Execute
+        for (boolean value : new boolean[] { true, false }) {
+            interpreted.prepare(new LogRunnable(interpretedLog, "done")).set(flag, value).start();
+            compiled.prepare(new LogRunnable(compiledLog, "done")).set(flag, value).start();
+        }
+
+        // Verify
+        assertEquals(Arrays.asList(
+                "a", "b", "c", "d", "e", "h", "i", "done",
+                "a", "b", "c", "d", "f", "g", "h", "i", "done"), interpretedLog);
+        assertEquals(interpretedLog, compiledLog);
+        // ... sync, async, branch, sync, jump, sync, async, sync
+        CompiledPlan plan = (CompiledPlan) compiled.getBody();
+        assertEquals(8, plan.getInstructionCount());
+        assertEquals(CompiledPlan.SYNC, plan.getOpcode(0));
+        assertEquals(CompiledPlan.ASYNC, plan.getOpcode(1));
+        assertEquals(CompiledPlan.JUMP_IF_FALSE, plan.getOpcode(2));
+        assertEquals(CompiledPlan.SYNC, plan.getOpcode(7));
+    }
+
+    /**
+     * Verifies that a compiled plan long enough to need several jumps and
+     * fused steps executes every branch it should, the expected number of
+     * times.
+     */
+    @Test
+    public void testCompileLongPlan() throws Exception {
+        // Setup
+        final Ref<Boolean> flag = new Ref<>();
+        final List<String> log = new ArrayList<>();
+        ActionDriver driver = new ActionDriver();
+        AsyncAction[] segments = new AsyncAction[100];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = buildLoggingPlan(new ActionDriver(), flag, log).getBody();
+        }
+        driver.setBody(driver.series(segments)).compile();
+
+        // Execute
+        driver.prepare(new LogRunnable(log, "done")).set(flag, false).start();
+
+        // Verify
+        assertEquals(segments.length * 8 + 1, log.size());
+        assertEquals(Arrays.asList("a", "b", "c", "d", "f", "g", "h", "i"), log.subList(0, 8));
+        assertEquals("done", log.get(log.size() - 1));
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#stop()} and asynchronous completion
+     * from another thread behave the same in a compiled plan.
+     */
+    @Test
+    public void testCompiledStop() throws Exception {
+        // Setup
+        final Ref<Integer> input = new Ref<>();
+        final Ref<Boolean> isEven = new Ref<>();
+        final AtomicReference<Runnable> pendingCallback = new AtomicReference<>();
+        final List<String> log = new ArrayList<>();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.series(
+                driver.exec(new ContextSyncAction() {
+                    @Override
+                    public void run(RunContext context) {
+                        isEven.set(context, input.get(context) % 2 == 0);
+                    }
+                }),
+                new AsyncAction() {
+                    @Override
+                    public void run(Runnable onComplete) {
+                        pendingCallback.set(onComplete);
+                    }
+                },
+                driver.doIfNot(isEven, driver.stop()),
+                driver.exec(new ContextSyncAction() {
+                    @Override
+                    public void run(RunContext context) {
+                        log.add("even:" + input.get(context));
+                    }
+                }))).compile();
+
+        // Execute
+        for (int i = 0; i < 2; i++) {
+            driver.prepare(new LogRunnable(log, "done:" + i)).set(input, i).start();
+            Thread thread = new Thread(pendingCallback.get());
+            thread.start();
+            thread.join();
+        }
+
+        // Verify
+        assertEquals(Arrays.asList("even:0", "done:0", "done:1"), log);
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#parallel(AsyncAction...)} starts all
+     * children at once, hands them the context of the run, and completes once,
+     * after the last child completes, whatever the order and thread.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        // Setup
+        final Ref<String> left = new Ref<>();
+        final Ref<String> right = new Ref<>();
+        final AtomicInteger followOnCount = new AtomicInteger(0);
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.parallel(
+                driver.series(deferred, driver.exec(new SetAction(left, "L"))),
+                driver.series(deferred, driver.exec(new SetAction(right, "R"))),
+                deferred));
+
+        // Execute
+        RunContext context = driver.prepare(new IncrementRunnable(followOnCount));
+        context.start();
+        assertEquals(3, deferred.pending.size());
+        deferred.pending.get(2).run();
+        Thread thread = new Thread(deferred.pending.get(0));
+        thread.start();
+        thread.join();
+        assertEquals(0, followOnCount.get());
+        deferred.pending.get(1).run();
+        // ... a repeated callback is ignored
+        deferred.pending.get(1).run();
+
+        // Verify
+        assertEquals(1, followOnCount.get());
+        assertEquals("L", context.get(left));
+        assertEquals("R", context.get(right));
+        assertEquals(null, left.get());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#parallel(int, AsyncAction...)} never
+     * runs more than the provided number of children at once, and that a large
+     * number of children completing synchronously does not grow the stack.
+     */
+    @Test
+    public void testParallelMaxConcurrency() throws Exception {
+        // Setup
+        final AtomicInteger followOnCount = new AtomicInteger(0);
+        final AtomicInteger callCount = new AtomicInteger(0);
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        AsyncAction[] syncActions = new AsyncAction[100000];
+        Arrays.fill(syncActions, new AsyncIncrementAction(callCount));
+
+        // Execute
+        driver.setBody(driver.parallel(2, deferred, deferred, deferred, deferred));
+        driver.run(new IncrementRunnable(followOnCount));
+        assertEquals(2, deferred.pending.size());
+        deferred.pending.get(1).run();
+        assertEquals(3, deferred.pending.size());
+        deferred.pending.get(0).run();
+        deferred.pending.get(2).run();
+        assertEquals(4, deferred.pending.size());
+        assertEquals(0, followOnCount.get());
+        deferred.pending.get(3).run();
+        driver.setBody(driver.parallel(3, syncActions));
+        driver.run(new IncrementRunnable(followOnCount));
+
+        // Verify
+        assertEquals(2, followOnCount.get());
+        assertEquals(syncActions.length, callCount.get());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#anyOf(AsyncAction...)} completes with
+     * the first child to complete, and ignores the others.
+     */
+    @Test
+    public void testAnyOf() throws Exception {
+        // Setup
+        final AtomicInteger followOnCount = new AtomicInteger(0);
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.anyOf(deferred, deferred, deferred));
+
+        // Execute
+        driver.run(new IncrementRunnable(followOnCount));
+        assertEquals(3, deferred.pending.size());
+        deferred.pending.get(1).run();
+        deferred.pending.get(0).run();
+        deferred.pending.get(2).run();
+
+        // Verify
+        assertEquals(1, followOnCount.get());
+    }
+
+    /**
+     * Verifies that an exception thrown by an action skips the rest of the
+     * body, is handed to the error handler of the driver, and then completes
+     * the run, in both the interpreted and the compiled plan.
+     */
+    @Test
+    public void testOnError() throws Exception {
+        for (boolean compile : new boolean[] { false, true }) {
+            // Setup
+            final IllegalStateException cause = new IllegalStateException("bad input");
+            final List<String> log = new ArrayList<>();
+            final AtomicReference<Throwable> witnessedFailure = new AtomicReference<>();
+            ActionDriver driver = new ActionDriver();
+            driver.setBody(driver.series(
+                    driver.exec(new LogAction(log, "a")),
+                    driver.exec(new SyncAction() {
+                        @Override
+                        public void run() {
+                            throw cause;
+                        }
+                    }),
+                    driver.exec(new LogAction(log, "b"))));
+            driver.setOnError(new ErrorHandler() {
+                @Override
+                public void onError(Throwable failure, RunContext context) {
+                    witnessedFailure.set(failure);
+                }
+            });
+            if (compile) {
+                driver.compile();
+            }
+
+            // Execute
+            RunContext context = driver.prepare(new LogRunnable(log, "done"));
+            context.start();
+
+            // Verify
+            assertEquals(Arrays.asList("a", "done"), log);
+            assertEquals(cause, witnessedFailure.get());
+            assertEquals(cause, context.getFailure());
+            assertEquals(0, driver.getActiveRunCount());
+        }
+    }
+
+    /**
+     * Verifies that a failure reported by an action of a nested driver without
+     * an error handler fails the outer run, skipping the rest of both bodies
+     * and its "on complete" callback, while a nested driver with an error
+     * handler lets the outer run continue.
+     */
+    @Test
+    public void testNestedFailure() throws Exception {
+        // Setup
+        final IllegalStateException cause = new IllegalStateException("remote failure");
+        final List<String> log = new ArrayList<>();
+        final AsyncAction failing = new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                RunContext.of(onComplete).fail(cause);
+            }
+        };
+        ActionDriver handled = new ActionDriver();
+        handled.setBody(handled.series(failing, handled.exec(new LogAction(log, "handled-rest"))));
+        handled.setOnError(new ErrorHandler() {
+            @Override
+            public void onError(Throwable failure, RunContext context) {
+                log.add("handled:" + failure.getMessage());
+            }
+        });
+        ActionDriver unhandled = new ActionDriver();
+        unhandled.setBody(unhandled.series(failing, unhandled.exec(new LogAction(log, "unhandled-rest"))));
+        ActionDriver outer = new ActionDriver();
+        outer.setBody(outer.series(
+                handled,
+                outer.exec(new LogAction(log, "outer-1")),
+                unhandled,
+                outer.exec(new LogAction(log, "outer-2"))));
+
+        // Execute
+        RunContext context = outer.prepare(new LogRunnable(log, "done"));
+        try {
+            context.start();
+            fail("Expected the unhandled failure");
+        } catch (IllegalStateException e) {
+            assertEquals(cause, e);
+        }
+
+        // Verify
+        assertEquals(Arrays.asList("handled:remote failure", "outer-1"), log);
+        assertEquals(cause, context.getFailure());
+    }
+
+    /**
+     * Verifies that a run with no error handler rethrows a failure that
+     * happens before {@link ActionDriver#run(Runnable)} returns, and that a
+     * later failure is recorded without executing the "on complete" callback.
+     */
+    @Test
+    public void testFailureWithoutErrorHandler() throws Exception {
+        // Setup
+        final IllegalStateException cause = new IllegalStateException("bad input");
+        final List<String> log = new ArrayList<>();
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.series(
+                driver.exec(new LogAction(log, "a")),
+                driver.exec(new SyncAction() {
+                    @Override
+                    public void run() {
+                        throw cause;
+                    }
+                })));
+        ActionDriver asyncDriver = new ActionDriver();
+        asyncDriver.setBody(asyncDriver.series(
+                deferred,
+                asyncDriver.exec(new LogAction(log, "b"))));
+
+        // Execute
+        try {
+            driver.run();
+            fail("Expected the failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(cause, e);
+        }
+        RunContext context = asyncDriver.prepare(new LogRunnable(log, "done"));
+        context.start();
+        RunContext.of(deferred.pending.get(0)).fail(cause);
+
+        // Verify
+        assertEquals(Arrays.asList("a"), log);
+        assertEquals(cause, context.getFailure());
+        assertEquals(0, driver.getActiveRunCount());
+        assertEquals(0, asyncDriver.getActiveRunCount());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#cancel()} executes the cancel hooks of
+     * the actions in flight, including parallel siblings, that their late
+     * callbacks are ignored, and that the "on complete" callback is never
+     * executed.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        // Setup
+        final List<String> log = new ArrayList<>();
+        final CancellableAction cancellable = new CancellableAction(log);
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.series(
+                driver.parallel(cancellable, cancellable),
+                driver.exec(new LogAction(log, "after"))));
+
+        // Execute
+        RunContext context = driver.prepare(new LogRunnable(log, "done"));
+        context.start();
+        assertEquals(1, driver.getActiveRunCount());
+        driver.cancel();
+        for (Runnable callback : cancellable.pending) {
+            callback.run();
+        }
+
+        // Verify
+        assertEquals(Arrays.asList("cancelled", "cancelled"), log);
+        assertEquals(true, context.isCancelled());
+        assertEquals(0, driver.getActiveRunCount());
+    }
+
+    /**
+     * Verifies that a failing child of a
+     * {@link ActionDriver#parallel(int, AsyncAction...)} aborts its siblings
+     * in flight and never starts the children still queued.
+     */
+    @Test
+    public void testParallelFailFast() throws Exception {
+        // Setup
+        final List<String> log = new ArrayList<>();
+        final CancellableAction cancellable = new CancellableAction(log);
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.parallel(2, cancellable, deferred, cancellable));
+        driver.setOnError(new ErrorHandler() {
+            @Override
+            public void onError(Throwable failure, RunContext context) {
+                log.add("error:" + failure.getMessage());
+            }
+        });
+
+        // Execute
+        driver.run(new LogRunnable(log, "done"));
+        RunContext.of(deferred.pending.get(0)).fail(new IllegalStateException("timeout"));
+        cancellable.pending.get(0).run();
+
+        // Verify
+        assertEquals(Arrays.asList("cancelled", "error:timeout", "done"), log);
+        assertEquals(1, cancellable.pending.size());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#repeat(int, AsyncAction)} runs a
+     * million synchronous iterations without overflowing the stack, and
+     * resumes when an iteration completes later, from another thread.
+     */
+    @Test
+    public void testRepeat() throws Exception {
+        // Setup
+        final int iterations = 1000000;
+        final AtomicInteger callCount = new AtomicInteger(0);
+        final AtomicInteger followOnCount = new AtomicInteger(0);
+        final AtomicReference<Runnable> pendingCallback = new AtomicReference<>();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.repeat(iterations, new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                if (callCount.incrementAndGet() == iterations / 2) {
+                    pendingCallback.set(onComplete);
+                } else {
+                    onComplete.run();
+                }
+            }
+        }));
+
+        // Execute
+        driver.run(new IncrementRunnable(followOnCount));
+        assertEquals(iterations / 2, callCount.get());
+        Thread thread = new Thread(pendingCallback.get());
+        thread.start();
+        thread.join();
+
+        // Verify
+        assertEquals(iterations, callCount.get());
+        assertEquals(1, followOnCount.get());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#whileLoop(Ref, AsyncAction)} and
+     * {@link ActionDriver#forEach(Iterable, Ref, AsyncAction)} keep their
+     * state per run, so interleaved runs of one plan do not interfere, and
+     * that {@link ActionDriver#stop()} ends a loop.
+     */
+    @Test
+    public void testWhileLoopAndForEach() throws Exception {
+        // Setup
+        final Ref<Integer> item = new Ref<>();
+        final Ref<Integer> total = new Ref<>(0);
+        final Ref<Boolean> belowLimit = new Ref<>(true);
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        driver.setBody(driver.series(
+                driver.forEach(Arrays.asList(1, 2, 3), item, driver.series(
+                        deferred,
+                        driver.exec(new ContextSyncAction() {
+                            @Override
+                            public void run(RunContext context) {
+                                total.set(context, total.get(context) + item.get(context));
+                            }
+                        }))),
+                driver.whileLoop(belowLimit, driver.exec(new ContextSyncAction() {
+                    @Override
+                    public void run(RunContext context) {
+                        total.set(context, total.get(context) * 2);
+                        belowLimit.set(context, total.get(context) < 100);
+                    }
+                })),
+                driver.repeat(5, driver.stop())));
+
+        // Execute
+        RunContext first = driver.prepare(null);
+        RunContext second = driver.prepare(null).set(total, 10);
+        first.start();
+        second.start();
+        while (!deferred.pending.isEmpty()) {
+            deferred.pending.remove(0).run();
+        }
+
+        // Verify
+        // ... 1+2+3 = 6, doubled until at least 100
+        assertEquals(Integer.valueOf(192), first.get(total));
+        // ... 10+1+2+3 = 16, doubled until at least 100
+        assertEquals(Integer.valueOf(128), second.get(total));
+        assertEquals(Integer.valueOf(0), total.get());
+        assertEquals(0, driver.getActiveRunCount());
+    }
+
+    /**
+     * Verifies that {@link ActionDriver#dataflow(AsyncAction...)} starts
+     * steps with no conflicting {@link Ref}s together, holds back each step
+     * until the earlier steps it conflicts with have completed, and treats a
+     * step with no declarations as a barrier.
+     */
+    @Test
+    public void testDataflow() throws Exception {
+        // Setup
+        final Ref<String> a = new Ref<>();
+        final Ref<String> b = new Ref<>();
+        final Ref<String> c = new Ref<>();
+        final List<String> log = new ArrayList<>();
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        DataflowAction dataflow = (DataflowAction) driver.dataflow(
+                driver.step(driver.series(deferred, driver.exec(new LogAction(log, "A")))).writes(a),
+                driver.step(driver.series(deferred, driver.exec(new LogAction(log, "B")))).writes(b),
+                driver.step(driver.exec(new LogAction(log, "C"))).reads(a).writes(c),
+                driver.step(driver.exec(new LogAction(log, "D"))).reads(b, c),
+                driver.exec(new LogAction(log, "barrier")),
+                driver.step(driver.exec(new LogAction(log, "E"))).writes(a));
+        driver.setBody(dataflow);
+
+        // Execute
+        driver.run(new LogRunnable(log, "done"));
+        assertEquals(2, deferred.pending.size());
+        deferred.pending.get(1).run();
+        assertEquals(Arrays.asList("B"), log);
+        deferred.pending.get(0).run();
+
+        // Verify
+        assertEquals(Arrays.asList("B", "A", "C", "D", "barrier", "E", "done"), log);
+        assertEquals(2, dataflow.getRootCount());
+    }
+
+    /**
+     * Verifies that a {@link DataflowStep} that declares no {@link Ref}s is a
+     * barrier, just like a plain action: it waits for every earlier step, and
+     * every later step waits for it.
+     */
+    @Test
+    public void testDataflowUndeclaredStepIsBarrier() throws Exception {
+        // Setup
+        final Ref<String> x = new Ref<>();
+        final List<String> log = new ArrayList<>();
+        final DeferredAction deferred = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        DataflowAction dataflow = (DataflowAction) driver.dataflow(
+                driver.step(driver.series(deferred, driver.exec(new LogAction(log, "slow")))).writes(x),
+                driver.step(driver.exec(new LogAction(log, "barrier"))),
+                driver.step(driver.exec(new LogAction(log, "after"))).reads(x));
+        driver.setBody(dataflow);
+
+        // Execute
+        driver.run(new LogRunnable(log, "done"));
+        assertEquals(0, log.size());
+        deferred.pending.get(0).run();
+
+        // Verify
+        assertEquals(Arrays.asList("slow", "barrier", "after", "done"), log);
+        assertEquals(1, dataflow.getRootCount());
+    }
+
+    /**
+     * Verifies that the latency of a wide dataflow plan, whose steps share no
+     * {@link Ref}s, approaches that of its slowest step rather than the sum of
+     * all steps: all of its steps are in flight at once, and a step reading
+     * their results starts only once the last of them completes, whatever the
+     * order and thread.
+     */
+    @Test
+    public void testDataflowLatency() throws Exception {
+        // Setup
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        final DeferredAction deferred = new DeferredAction();
+        final CountDownLatch done = new CountDownLatch(1);
+        ActionDriver driver = new ActionDriver();
+        AsyncAction[] steps = new AsyncAction[9];
+        final Ref<?>[] results = new Ref<?>[steps.length - 1];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new Ref<Object>();
+            steps[i] = driver.step(deferred).writes(results[i]);
+        }
+        steps[results.length] = driver.step(driver.exec(new LogAction(log, "render"))).reads(results);
+        driver.setBody(driver.dataflow(steps));
+
+        // Execute
+        driver.run(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertEquals(results.length, deferred.pending.size());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = results.length - 1; i >= 0; i--) {
+                    log.add("complete");
+                    deferred.pending.get(i).run();
+                }
+            }
+        });
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Verify
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        List<String> expected = new ArrayList<>(Collections.nCopies(results.length, "complete"));
+        expected.add("render");
+        assertEquals(expected, log);
+    }
+
+    /**
+     * Verifies that idempotent branches of
+     * {@link ActionDriver#doIfElseSpeculatively(AsyncAction, Ref, AsyncAction, AsyncAction)}
+     * start while the condition is pending, that only the winning branch's
+     * values reach the run, whichever finishes first, and that the losing
+     * branch is cancelled and counted as waste.
+     */
+    @Test
+    public void testSpeculativeIf() throws Exception {
+        // Setup
+        final Ref<Boolean> condition = new Ref<>();
+        final Ref<String> result = new Ref<>();
+        final List<String> log = new ArrayList<>();
+        final DeferredAction conditionAction = new DeferredAction();
+        final DeferredSetAction onTrue = new DeferredSetAction(result, "T", log);
+        final DeferredSetAction onFalse = new DeferredSetAction(result, "F", log);
+        ActionDriver driver = new ActionDriver();
+        SpeculativeIfAction speculative = driver.doIfElseSpeculatively(
+                conditionAction, condition, onTrue, onFalse);
+        driver.setBody(speculative);
+
+        // Execute
+        // ... the winning branch finishes before the condition
+        RunContext first = driver.prepare(new LogRunnable(log, "done"));
+        first.start();
+        assertEquals(1, onTrue.pending.size());
+        assertEquals(1, onFalse.pending.size());
+        onTrue.pending.get(0).run();
+        assertEquals(null, first.get(result));
+        first.set(condition, true);
+        conditionAction.pending.get(0).run();
+        assertEquals(Arrays.asList("cancelled:F", "done"), log);
+        assertEquals("T", first.get(result));
+        // ... the winning branch finishes after the condition
+        log.clear();
+        RunContext second = driver.prepare(new LogRunnable(log, "done"));
+        second.start();
+        second.set(condition, false);
+        conditionAction.pending.get(1).run();
+        assertEquals(Arrays.asList("cancelled:T"), log);
+        onFalse.pending.get(1).run();
+        // ... a late result from the discarded branch is ignored
+        onTrue.pending.get(1).run();
+
+        // Verify
+        assertEquals(Arrays.asList("cancelled:T", "done"), log);
+        assertEquals("F", second.get(result));
+        assertEquals(2, speculative.getHitCount());
+        assertEquals(2, speculative.getWasteCount());
+        assertEquals(0.5, speculative.getHitRate(), 0.0);
+    }
+
+    /**
+     * Verifies that a branch that is not an {@link IdempotentAction} is only
+     * started once the condition is known.
+     */
+    @Test
+    public void testSpeculativeIfNonIdempotentBranch() throws Exception {
+        // Setup
+        final Ref<Boolean> condition = new Ref<>(false);
+        final List<String> log = new ArrayList<>();
+        final DeferredAction conditionAction = new DeferredAction();
+        final DeferredAction onTrue = new DeferredAction();
+        final DeferredAction onFalse = new DeferredAction();
+        ActionDriver driver = new ActionDriver();
+        SpeculativeIfAction speculative = driver.doIfElseSpeculatively(
+                conditionAction, condition, onTrue, onFalse);
+        driver.setBody(speculative);
+
+        // Execute
+        driver.run(new LogRunnable(log, "done"));
+        assertEquals(0, onTrue.pending.size());
+        assertEquals(0, onFalse.pending.size());
+        conditionAction.pending.get(0).run();
+        onFalse.pending.get(0).run();
+
+        // Verify
+        assertEquals(0, onTrue.pending.size());
+        assertEquals(Arrays.asList("done"), log);
+        assertEquals(0, speculative.getHitCount());
+        assertEquals(0, speculative.getWasteCount());
+    }
+
+    private static ActionDriver buildLoggingPlan(ActionDriver driver, Ref<Boolean> flag, List<String> log) {
+        return driver.setBody(driver.series(
+                driver.exec(new LogAction(log, "a")),
+                driver.series(
+                        driver.exec(new LogAction(log, "b")),
+                        driver.exec(new LogAction(log, "c"))),
+                new AsyncLogAction(log, "d"),
+                driver.doIfElse(flag,
+                        driver.exec(new LogAction(log, "e")),
+                        driver.series(
+                                driver.exec(new LogAction(log, "f")),
+                                new AsyncLogAction(log, "g"))),
+                driver.doIf(flag, driver.series()),
+                driver.exec(new LogAction(log, "h")),
+                driver.exec(new LogAction(log, "i"))));
+    }
+
+    private static class DeferredAction implements AsyncAction {
+        final List<Runnable> pending = new ArrayList<>();
+        @Override
+        public synchronized void run(Runnable onComplete) {
+            pending.add(onComplete);
+        }
+    }
+
+    /**
+     * An {@link AsyncAction} that holds on to its callback, and registers a
+     * cancel hook until it is completed.
+     */
+    private static class CancellableAction implements AsyncAction {
+        final List<Runnable> pending = new ArrayList<>();
+        private final List<String> log;
+        CancellableAction(List<String> log) {
+            this.log = log;
+        }
+        @Override
+        public void run(final Runnable onComplete) {
+            final RunContext context = RunContext.of(onComplete);
+            final Runnable hook = new Runnable() {
+                @Override
+                public void run() {
+                    log.add("cancelled");
+                }
+            };
+            context.addCancelHook(hook);
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    context.removeCancelHook(hook);
+                    onComplete.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * An {@link IdempotentAction} that sets a {@link Ref} once the test
+     * completes it, and logs when it is cancelled.
+     */
+    private static class DeferredSetAction implements IdempotentAction {
+        final List<Runnable> pending = new ArrayList<>();
+        private final Ref<String> ref;
+        private final String value;
+        private final List<String> log;
+        DeferredSetAction(Ref<String> ref, String value, List<String> log) {
+            this.ref = ref;
+            this.value = value;
+            this.log = log;
+        }
+        @Override
+        public void run(final Runnable onComplete) {
+            final RunContext context = RunContext.of(onComplete);
+            final Runnable hook = new Runnable() {
+                @Override
+                public void run() {
+                    log.add("cancelled:" + value);
+                }
+            };
+            context.addCancelHook(hook);
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    context.removeCancelHook(hook);
+                    ref.set(context, value);
+                    onComplete.run();
+                }
+            });
+        }
+    }
+
+    private static class SetAction implements ContextSyncAction {
+        private final Ref<String> ref;
+        private final String value;
+        SetAction(Ref<String> ref, String value) {
+            this.ref = ref;
+            this.value = value;
+        }
+        @Override
+        public void run(RunContext context) {
+            ref.set(context, value);
+        }
+    }
+
+    private static class LogAction implements SyncAction {
+        private final List<String> log;
+        private final String name;
+        LogAction(List<String> log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+        @Override
+        public void run() {
+            log.add(name);
+        }
+    }
+
+    private static class AsyncLogAction implements AsyncAction {
+        private final List<String> log;
+        private final String name;
+        AsyncLogAction(List<String> log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+        @Override
+        public void run(Runnable onComplete) {
+            log.add(name);
+            onComplete.run();
+        }
+    }
+
+    private static class LogRunnable implements Runnable {
+        private final List<String> log;
+        private final String name;
+        LogRunnable(List<String> log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+        @Override
+        public void run() {
+            log.add(name);
+        }
+    }
+
     private static class AsyncIncrementAction implements AsyncAction {
         private AtomicInteger counter;
         AsyncIncrementAction(AtomicInteger counter) {
@@ -0,0 +1,327 @@
+package info.ryankenney.jasync_driver.light;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ActionPipelineTest {
+
+    /**
+     * A {@link PipelineSource} that records the demand signalled to it, and
+     * pushes items only when the test says so.
+     */
+    private static class ManualSource implements PipelineSource {
+        final List<Integer> requests = new ArrayList<>();
+        boolean cancelled;
+        @Override
+        public void request(int count) {
+            requests.add(count);
+        }
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class RecordingSink implements PipelineSink<String> {
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch ended = new CountDownLatch(1);
+        @Override
+        public void onResult(String item, RunContext context) {
+            results.add(item);
+        }
+        @Override
+        public void onEnd() {
+            ended.countDown();
+        }
+    }
+
+    /**
+     * Verifies that the pipeline asks the source for no more items than it
+     * has room for, that in ordered mode items are delivered in input order
+     * whatever order their runs finish in, and that demand is only renewed as
+     * items are delivered.
+     */
+    @Test
+    public void testOrderedWithBoundedDemand() throws Exception {
+        // Setup
+        final List<Runnable> pendingCallbacks = new ArrayList<>();
+        Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                pendingCallbacks.add(onComplete);
+            }
+        });
+        ManualSource source = new ManualSource();
+        RecordingSink sink = new RecordingSink();
+        ActionPipeline<String> pipeline = new ActionPipeline<>(plan, item, 3)
+                .setOrdered(true)
+                .setSink(sink)
+                .subscribe(source);
+
+        // Execute
+        assertEquals(Arrays.asList(3), source.requests);
+        pipeline.onNext("a");
+        pipeline.onNext("b");
+        pipeline.onNext("c");
+        assertEquals(3, pendingCallbacks.size());
+        pendingCallbacks.get(2).run();
+        pendingCallbacks.get(1).run();
+        // ... nothing delivered or requested while the first item is running
+        assertEquals(Collections.emptyList(), sink.results);
+        assertEquals(Arrays.asList(3), source.requests);
+        pendingCallbacks.get(0).run();
+        assertEquals(Arrays.asList("a", "b", "c"), sink.results);
+        assertEquals(Arrays.asList(3, 3), source.requests);
+        pipeline.onNext("d");
+        pipeline.onEnd();
+        assertEquals(1, sink.ended.getCount());
+        pendingCallbacks.get(3).run();
+
+        // Verify
+        assertEquals(Arrays.asList("a", "b", "c", "d"), sink.results);
+        assertEquals(0, sink.ended.getCount());
+        assertEquals(0, pipeline.getInFlightCount());
+        assertEquals(4, pipeline.getDeliveredCount());
+    }
+
+    /**
+     * Verifies that a large stream, completed from several threads, is
+     * delivered completely and in order, without ever holding more than the
+     * maximum number of items at once.
+     */
+    @Test
+    public void testOrderedStreamAcrossThreads() throws Exception {
+        // Setup
+        final int itemCount = 100000;
+        final int maxInFlight = 16;
+        final ExecutorService callbackThreads = Executors.newFixedThreadPool(4);
+        final AtomicInteger maxObservedInFlight = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            items.add(Integer.toString(i));
+        }
+        Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(new AsyncAction() {
+            @Override
+            public void run(final Runnable onComplete) {
+                int current = running.incrementAndGet();
+                while (true) {
+                    int max = maxObservedInFlight.get();
+                    if (current <= max || maxObservedInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                callbackThreads.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        running.decrementAndGet();
+                        onComplete.run();
+                    }
+                });
+            }
+        });
+        RecordingSink sink = new RecordingSink();
+
+        // Execute
+        new ActionPipeline<>(plan, item, maxInFlight)
+                .setOrdered(true)
+                .setSink(sink)
+                .subscribe(items.iterator());
+        assertTrue(sink.ended.await(30, TimeUnit.SECONDS));
+        callbackThreads.shutdown();
+
+        // Verify
+        assertEquals(items, sink.results);
+        assertTrue("Observed " + maxObservedInFlight.get(), maxObservedInFlight.get() <= maxInFlight);
+    }
+
+    /**
+     * Verifies that cancelling the pipeline cancels the source and the runs in
+     * flight, and delivers nothing more.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        // Setup
+        final List<Runnable> pendingCallbacks = new ArrayList<>();
+        Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                pendingCallbacks.add(onComplete);
+            }
+        });
+        ManualSource source = new ManualSource();
+        RecordingSink sink = new RecordingSink();
+        ActionPipeline<String> pipeline = new ActionPipeline<>(plan, item, 2)
+                .setSink(sink)
+                .subscribe(source);
+        pipeline.onNext("a");
+        pipeline.onNext("b");
+
+        // Execute
+        pipeline.cancel();
+        for (Runnable callback : pendingCallbacks) {
+            callback.run();
+        }
+
+        // Verify
+        assertTrue(source.cancelled);
+        assertEquals(Collections.emptyList(), sink.results);
+        assertEquals(0, plan.getActiveRunCount());
+    }
+
+    /**
+     * Verifies that runs cancelled through the plan, rather than the
+     * pipeline, still free their slots and are delivered.
+     */
+    @Test
+    public void testRunCancelledByPlan() throws Exception {
+        // Setup
+        final List<Runnable> pendingCallbacks = new ArrayList<>();
+        Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                pendingCallbacks.add(onComplete);
+            }
+        });
+        ManualSource source = new ManualSource();
+        final List<String> cancelledItems = new ArrayList<>();
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onResult(String item, RunContext context) {
+                super.onResult(item, context);
+                if (context.isCancelled()) {
+                    cancelledItems.add(item);
+                }
+            }
+        };
+        ActionPipeline<String> pipeline = new ActionPipeline<>(plan, item, 2)
+                .setOrdered(true)
+                .setSink(sink)
+                .subscribe(source);
+        pipeline.onNext("a");
+        pipeline.onNext("b");
+
+        // Execute
+        plan.cancel();
+
+        // Verify
+        assertEquals(Arrays.asList("a", "b"), sink.results);
+        assertEquals(Arrays.asList("a", "b"), cancelledItems);
+        assertEquals(2, pipeline.getDeliveredCount());
+        pipeline.onNext("c");
+        pipeline.onEnd();
+        pendingCallbacks.get(2).run();
+        assertEquals(Arrays.asList("a", "b", "c"), sink.results);
+        assertEquals(0, sink.ended.getCount());
+        assertEquals(0, pipeline.getInFlightCount());
+    }
+
+    /**
+     * Verifies that a sink that throws does not wedge the pipeline: the
+     * exception reaches the thread that delivered the item, and later items
+     * are still delivered.
+     */
+    @Test
+    public void testThrowingSink() throws Exception {
+        // Setup
+        final List<Runnable> pendingCallbacks = new ArrayList<>();
+        final IllegalStateException cause = new IllegalStateException("sink failure");
+        Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                pendingCallbacks.add(onComplete);
+            }
+        });
+        ManualSource source = new ManualSource();
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onResult(String item, RunContext context) {
+                super.onResult(item, context);
+                if (item.equals("a")) {
+                    throw cause;
+                }
+            }
+        };
+        ActionPipeline<String> pipeline = new ActionPipeline<>(plan, item, 2)
+                .setSink(sink)
+                .subscribe(source);
+        pipeline.onNext("a");
+        pipeline.onNext("b");
+
+        // Execute
+        try {
+            pendingCallbacks.get(0).run();
+            fail("Expected the sink's exception");
+        } catch (IllegalStateException e) {
+            assertEquals(cause, e);
+        }
+        pendingCallbacks.get(1).run();
+
+        // Verify
+        assertEquals(Arrays.asList("a", "b"), sink.results);
+        assertEquals(Arrays.asList(2, 1, 1), source.requests);
+        assertEquals(2, pipeline.getDeliveredCount());
+    }
+
+    /**
+     * Verifies that a run that fails with no error handler, and so never
+     * executes its callback, is still delivered with its failure.
+     */
+    @Test
+    public void testFailedRun() throws Exception {
+        // Setup
+        final IllegalStateException cause = new IllegalStateException("bad item");
+        final Ref<String> item = new Ref<>();
+        ActionDriver plan = new ActionDriver();
+        plan.setBody(plan.exec(new ContextSyncAction() {
+            @Override
+            public void run(RunContext context) {
+                if (context.get(item).equals("b")) {
+                    throw cause;
+                }
+            }
+        }));
+        final List<Throwable> failures = new ArrayList<>();
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onResult(String item, RunContext context) {
+                super.onResult(item, context);
+                failures.add(context.getFailure());
+            }
+        };
+
+        // Execute
+        new ActionPipeline<>(plan, item, 2)
+                .setOrdered(true)
+                .setSink(sink)
+                .subscribe(Arrays.asList("a", "b", "c").iterator());
+
+        // Verify
+        assertEquals(Arrays.asList("a", "b", "c"), sink.results);
+        assertEquals(Arrays.<Throwable>asList(null, cause, null), failures);
+        assertEquals(0, sink.ended.getCount());
+    }
+}
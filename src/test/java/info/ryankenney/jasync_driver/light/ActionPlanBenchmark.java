@@ -0,0 +1,85 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Compares the throughput of an {@link ActionDriver} body executed as built
+ * with the same body after {@link ActionDriver#compile()}. The plan nests
+ * series and branches around short runs of synchronous actions, with an
+ * asynchronous action every few steps. Like the demos, this is not picked up
+ * by the regular test run. Execute it explicitly:
+ * </p>
+ *
+ * <pre>
+ * mvn test -Dtest=ActionPlanBenchmark
+ * </pre>
+ */
+public class ActionPlanBenchmark {
+
+    private static final int RUNS = 200000;
+    private static final int SEGMENTS = 10;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void benchmarkCompiledPlan() throws Exception {
+        Ref<Boolean> flag = new Ref<>();
+        ActionDriver interpreted = buildPlan(new ActionDriver(), flag);
+        ActionDriver compiled = buildPlan(new ActionDriver(), flag).compile();
+        // Warm up
+        run(interpreted, flag);
+        run(compiled, flag);
+        for (int round = 0; round < ROUNDS; round++) {
+            report("interpreted", run(interpreted, flag));
+            report("compiled", run(compiled, flag));
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format("[BENCHMARK] %-12s %,12d runs/s",
+                name, (long) RUNS * TimeUnit.SECONDS.toNanos(1) / nanos));
+    }
+
+    private static long run(ActionDriver driver, Ref<Boolean> flag) {
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            driver.prepare(null).set(flag, (i & 1) == 0).start();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static ActionDriver buildPlan(ActionDriver driver, Ref<Boolean> flag) {
+        final int[] counter = new int[1];
+        SyncAction increment = new SyncAction() {
+            @Override
+            public void run() {
+                counter[0]++;
+            }
+        };
+        AsyncAction callback = new AsyncAction() {
+            @Override
+            public void run(Runnable onComplete) {
+                onComplete.run();
+            }
+        };
+        AsyncAction[] segments = new AsyncAction[SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = driver.series(
+                    driver.exec(increment),
+                    driver.series(
+                            driver.exec(increment),
+                            driver.exec(increment)),
+                    driver.doIfElse(flag,
+                            driver.exec(increment),
+                            driver.series(
+                                    driver.exec(increment),
+                                    driver.exec(increment))),
+                    driver.doIf(flag, driver.series()),
+                    driver.exec(increment),
+                    callback);
+        }
+        return driver.setBody(driver.series(segments));
+    }
+}
@@ -0,0 +1,70 @@
+package info.ryankenney.jasync_driver.light;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Measures the throughput per iteration of the loop constructs of
+ * {@link ActionDriver}, with a body that completes synchronously. Like the
+ * demos, this is not picked up by the regular test run. Execute it
+ * explicitly:
+ * </p>
+ *
+ * <pre>
+ * mvn test -Dtest=LoopBenchmark
+ * </pre>
+ */
+public class LoopBenchmark {
+
+    private static final int ITERATIONS = 5000000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void benchmarkLoops() throws Exception {
+        final Ref<Integer> counter = new Ref<>(0);
+        final Ref<Boolean> belowLimit = new Ref<>(true);
+        final Ref<Integer> item = new Ref<>();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            items.add(i);
+        }
+        ActionDriver driver = new ActionDriver();
+        AsyncAction increment = driver.exec(new SyncAction() {
+            @Override
+            public void run() {
+                counter.set(counter.get() + 1);
+                belowLimit.set(counter.get() < ITERATIONS);
+            }
+        });
+        AsyncAction repeat = driver.repeat(ITERATIONS, increment);
+        AsyncAction whileLoop = driver.whileLoop(belowLimit, increment);
+        AsyncAction forEach = driver.forEach(items, item, increment);
+        for (int round = 0; round < ROUNDS; round++) {
+            report("repeat", run(driver, repeat, counter, belowLimit));
+            report("whileLoop", run(driver, whileLoop, counter, belowLimit));
+            report("forEach", run(driver, forEach, counter, belowLimit));
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format("[BENCHMARK] %-10s %,14d iterations/s %6.1f ns/iteration",
+                name, (long) ITERATIONS * TimeUnit.SECONDS.toNanos(1) / nanos, (double) nanos / ITERATIONS));
+    }
+
+    private static long run(ActionDriver driver, AsyncAction loop, Ref<Integer> counter, Ref<Boolean> belowLimit) {
+        counter.set(0);
+        belowLimit.set(true);
+        driver.setBody(loop);
+        long start = System.nanoTime();
+        driver.run();
+        long nanos = System.nanoTime() - start;
+        if (counter.get() != ITERATIONS) {
+            throw new IllegalStateException("Expected " + ITERATIONS + " iterations, but got " + counter.get());
+        }
+        return nanos;
+    }
+}
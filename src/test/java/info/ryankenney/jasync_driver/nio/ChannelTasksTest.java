@@ -0,0 +1,132 @@
+package info.ryankenney.jasync_driver.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ChannelTasksTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static ByteBuffer bytes(String text) {
+		return ByteBuffer.wrap(text.getBytes(UTF_8));
+	}
+
+	private static String text(ByteBuffer buffer) {
+		ByteBuffer view = buffer.duplicate();
+		byte[] bytes = new byte[view.remaining()];
+		view.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static JasyncDriver newDriver(final CountDownLatch done) {
+		return new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that buffers written to a file can be read back into a
+	 * pooled buffer, and that the buffer returns to its pool once the driver
+	 * run ends.</p>
+	 */
+	@Test
+	public void testFileWriteThenRead() throws Exception {
+
+		// Setup
+		File file = File.createTempFile("channel-tasks", ".txt");
+		file.deleteOnExit();
+		final AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(),
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final BufferPool pool = new BufferPool(64, 4);
+		final FileWriteTask write = new FileWriteTask();
+		final FileReadTask read = new FileReadTask(pool);
+		final AtomicReference<String> witnessedText = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		// Execute
+		final JasyncDriver driver = newDriver(done);
+		driver.execute(new DriverBody() {
+			public void run() {
+				long written = driver.execute(write, new FileWriteRequest(channel, 0, bytes("hello, "), bytes("world")));
+				BufferLease lease = driver.execute(read, new FileReadRequest(channel, 0, (int) written));
+				witnessedText.set(text(lease.getBuffer()));
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals("hello, world", witnessedText.get());
+		assertEquals(0, pool.getLeasedCount());
+		assertEquals(1, pool.getPooledCount());
+		channel.close();
+	}
+
+	/**
+	 * <p>Verifies that gathered socket writes are read back in full,
+	 * scattered across several pooled buffers.</p>
+	 */
+	@Test
+	public void testSocketWriteThenRead() throws Exception {
+
+		// Setup
+		AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()
+				.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		final AsynchronousSocketChannel client = AsynchronousSocketChannel.open();
+		client.connect(server.getLocalAddress()).get(10, TimeUnit.SECONDS);
+		final AsynchronousSocketChannel accepted = server.accept().get(10, TimeUnit.SECONDS);
+		final BufferPool pool = new BufferPool(4, 4);
+		final SocketWriteTask write = new SocketWriteTask();
+		final SocketReadTask read = new SocketReadTask(pool);
+		final AtomicReference<String> witnessedText = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(2);
+
+		// Execute
+		final JasyncDriver writer = newDriver(done);
+		writer.execute(new DriverBody() {
+			public void run() {
+				writer.execute(write, new SocketWriteRequest(client, bytes("hello, "), bytes("world")));
+			}
+		});
+		final JasyncDriver reader = newDriver(done);
+		reader.execute(new DriverBody() {
+			public void run() {
+				List<BufferLease> leases = reader.execute(read, new SocketReadRequest(accepted, 12));
+				StringBuilder text = new StringBuilder();
+				for (BufferLease lease : leases) {
+					text.append(text(lease.getBuffer()));
+				}
+				witnessedText.set(text.toString());
+			}
+		});
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals("hello, world", witnessedText.get());
+		assertEquals(3, pool.getAllocatedCount());
+		assertEquals(0, pool.getLeasedCount());
+		client.close();
+		accepted.close();
+		server.close();
+	}
+}
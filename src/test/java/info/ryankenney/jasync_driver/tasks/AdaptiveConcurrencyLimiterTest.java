@@ -0,0 +1,188 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskContext;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to each {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> args = new ArrayList<>();
+		final List<ResultHandler<String>> pending = new ArrayList<>();
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			args.add(arg);
+			pending.add(resultHandler);
+		}
+		void complete(int i) {
+			pending.get(i).reportComplete(args.get(i));
+		}
+	}
+
+	private static void startDriver(final AsyncTask<String, String> task, final String arg, final List<String> results) {
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				results.add(driver.execute(task, arg));
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that calls beyond the limit are queued, without being
+	 * started, and are started in order as earlier calls complete.</p>
+	 */
+	@Test
+	public void testQueuesBeyondLimit() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2, 1, TimeUnit.HOURS);
+		AsyncTask<String, String> limited = limiter.wrap(task);
+		List<String> results = new ArrayList<>();
+
+		// Execute
+		startDriver(limited, "a", results);
+		startDriver(limited, "b", results);
+		startDriver(limited, "c", results);
+		startDriver(limited, "d", results);
+
+		// Verify
+		assertEquals(Arrays.asList("a", "b"), task.args);
+		assertEquals(2, limiter.getInFlight());
+		assertEquals(2, limiter.getQueueDepth());
+		task.complete(1);
+		assertEquals(Arrays.asList("a", "b", "c"), task.args);
+		task.complete(0);
+		task.complete(2);
+		task.complete(3);
+		assertEquals(Arrays.asList("b", "a", "c", "d"), results);
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(0, limiter.getQueueDepth());
+		assertEquals(4, limiter.getLatencyStats().getCount());
+	}
+
+	/**
+	 * <p>Verifies that calls beyond the maximum queue depth are rejected
+	 * with a failure.</p>
+	 */
+	@Test
+	public void testRejectsBeyondQueueDepth() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, TimeUnit.HOURS)
+			.setMaxQueueDepth(1);
+		AsyncTask<String, String> limited = limiter.wrap(task);
+		List<String> results = new ArrayList<>();
+		startDriver(limited, "a", results);
+		startDriver(limited, "b", results);
+
+		// Execute
+		try {
+			startDriver(limited, "c", results);
+			Assert.fail("Expected exception");
+		} catch (TaskFailedException e) {
+			// Verify
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(1, limiter.getRejectedCount());
+		assertEquals(Arrays.asList("a"), task.args);
+	}
+
+	/**
+	 * <p>Verifies that the limit grows while calls are fast, and shrinks
+	 * when calls are slower than the threshold.</p>
+	 */
+	@Test
+	public void testAdaptsLimitToLatency() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 100, 5, TimeUnit.MILLISECONDS);
+		AsyncTask<String, String> limited = limiter.wrap(task);
+		List<String> results = new ArrayList<>();
+
+		// Execute
+		// ... fast calls
+		for (int i = 0; i < 20; i++) {
+			startDriver(limited, "fast", results);
+			task.complete(i);
+		}
+		int grownLimit = limiter.getLimit();
+		// ... slow calls
+		for (int i = 20; i < 25; i++) {
+			startDriver(limited, "slow", results);
+			Thread.sleep(10);
+			task.complete(i);
+		}
+
+		// Verify
+		assertTrue(grownLimit > 2);
+		assertTrue(limiter.getLimit() < grownLimit);
+	}
+
+	/**
+	 * <p>Verifies that a task that throws from run() releases its permit,
+	 * and fails its own call only if it had not yet reported, without the
+	 * exception reaching the caller.</p>
+	 */
+	@Test
+	public void testTaskThrows() throws Exception {
+
+		// Setup
+		final IllegalStateException cause = new IllegalStateException("broken task");
+		AsyncTask<String, String> task = new AsyncTask<String, String>() {
+			public void run(String arg, ResultHandler<String> resultHandler) {
+				if (arg.equals("reported")) {
+					resultHandler.reportComplete(arg);
+				}
+				throw cause;
+			}
+		};
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, TimeUnit.HOURS);
+		AsyncTask<String, String> limited = limiter.wrap(task);
+		final List<Object> outcomes = new ArrayList<>();
+		ResultHandler<String> resultHandler = new ResultHandler<String>() {
+			public void reportComplete(String result) {
+				outcomes.add(result);
+			}
+			public void reportComplete() {
+				reportComplete(null);
+			}
+			public void reportFailure(Throwable failure) {
+				outcomes.add(failure);
+			}
+			public TaskContext getContext() {
+				return null;
+			}
+		};
+
+		// Execute
+		limited.run("unreported", resultHandler);
+		limited.run("reported", resultHandler);
+
+		// Verify
+		assertEquals(Arrays.<Object>asList(cause, "reported"), outcomes);
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(0, limiter.getQueueDepth());
+	}
+}
@@ -0,0 +1,228 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BatchingAsyncTaskTest {
+
+	/**
+	 * A bulk {@link AsyncTask} that holds on to each batch until the test
+	 * completes it.
+	 */
+	private static class DeferredBulkTask implements AsyncTask<List<String>, Map<String, String>> {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+		final List<ResultHandler<Map<String, String>>> pending =
+				Collections.synchronizedList(new ArrayList<ResultHandler<Map<String, String>>>());
+		public void run(List<String> keys, ResultHandler<Map<String, String>> resultHandler) {
+			batches.add(keys);
+			pending.add(resultHandler);
+		}
+		void complete(int i) {
+			Map<String, String> results = new HashMap<>();
+			for (String key : batches.get(i)) {
+				results.put(key, key.toUpperCase());
+			}
+			pending.get(i).reportComplete(results);
+		}
+	}
+
+	private static void startDriver(final AsyncTask<String, String> task, final String arg,
+			final List<String> log, final CountDownLatch done) {
+		final JasyncDriver driver = new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		driver.execute(new DriverBody() {
+			public void run() {
+				String result = driver.execute(task, arg);
+				log.add(result + "@" + Thread.currentThread().getName());
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that keys from several drivers are fetched with one bulk
+	 * call once the batch is full, that duplicates are sent once, and that the
+	 * drivers all resume, back to back, on the thread reporting the bulk
+	 * result.</p>
+	 */
+	@Test
+	public void testFlushOnMaxBatchSize() throws Exception {
+
+		// Setup
+		DeferredBulkTask bulkTask = new DeferredBulkTask();
+		BatchingAsyncTask<String, String> readUser = new BatchingAsyncTask<>(bulkTask, 3, 1, TimeUnit.HOURS);
+		List<String> log = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(3);
+
+		// Execute
+		startDriver(readUser, "alice", log, done);
+		startDriver(readUser, "bob", log, done);
+		startDriver(readUser, "alice", log, done);
+
+		// Verify
+		assertEquals(1, bulkTask.batches.size());
+		assertEquals(Arrays.asList("alice", "bob"), bulkTask.batches.get(0));
+		bulkTask.complete(0);
+		String thread = Thread.currentThread().getName();
+		assertEquals(Arrays.asList("ALICE@" + thread, "BOB@" + thread, "ALICE@" + thread), log);
+		assertEquals(0, done.getCount());
+		assertEquals(1, readUser.getBatchCount());
+		assertEquals(3, readUser.getKeyCount());
+	}
+
+	/**
+	 * <p>Verifies that a batch that never fills up is sent once the window
+	 * has passed.</p>
+	 */
+	@Test
+	public void testFlushOnWindow() throws Exception {
+
+		// Setup
+		DeferredBulkTask bulkTask = new DeferredBulkTask();
+		BatchingAsyncTask<String, String> readUser = new BatchingAsyncTask<>(bulkTask, 100, 200, TimeUnit.MILLISECONDS);
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(2);
+
+		// Execute
+		startDriver(readUser, "alice", log, done);
+		startDriver(readUser, "bob", log, done);
+		assertEquals(0, bulkTask.batches.size());
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (bulkTask.batches.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		bulkTask.complete(0);
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(1, bulkTask.batches.size());
+		assertEquals(Arrays.asList("alice", "bob"), bulkTask.batches.get(0));
+	}
+
+	/**
+	 * <p>Verifies that a bulk task that throws instead of reporting fails
+	 * every driver waiting on the batch.</p>
+	 */
+	@Test
+	public void testBulkTaskThrows() throws Exception {
+
+		// Setup
+		final IllegalStateException cause = new IllegalStateException("bad request");
+		AsyncTask<List<String>, Map<String, String>> bulkTask = new AsyncTask<List<String>, Map<String, String>>() {
+			public void run(List<String> keys, ResultHandler<Map<String, String>> resultHandler) {
+				throw cause;
+			}
+		};
+		final BatchingAsyncTask<String, String> readUser = new BatchingAsyncTask<>(bulkTask, 2, 1, TimeUnit.HOURS);
+		final List<Throwable> failures = new ArrayList<>();
+
+		// Execute
+		for (final String user : Arrays.asList("alice", "bob")) {
+			final JasyncDriver driver = new JasyncDriver();
+			driver.execute(new DriverBody() {
+				public void run() {
+					try {
+						driver.execute(readUser, user);
+					} catch (TaskFailedException e) {
+						failures.add(e.getCause());
+					}
+				}
+			});
+		}
+
+		// Verify
+		assertEquals(Arrays.<Throwable>asList(cause, cause), failures);
+		assertEquals(1, readUser.getBatchCount());
+	}
+
+	/**
+	 * <p>Verifies that a batch sent because its window passed is sent on the
+	 * executor, not on the timer thread, and that a rejected hand-off fails
+	 * the waiting drivers.</p>
+	 */
+	@Test
+	public void testWindowFlushHandOff() throws Exception {
+
+		// Setup
+		final List<String> bulkThreads = Collections.synchronizedList(new ArrayList<String>());
+		final DeferredBulkTask deferred = new DeferredBulkTask();
+		AsyncTask<List<String>, Map<String, String>> bulkTask = new AsyncTask<List<String>, Map<String, String>>() {
+			public void run(List<String> keys, ResultHandler<Map<String, String>> resultHandler) {
+				bulkThreads.add(Thread.currentThread().getName());
+				deferred.run(keys, resultHandler);
+			}
+		};
+		final List<Runnable> handedOff = Collections.synchronizedList(new ArrayList<Runnable>());
+		final boolean[] reject = new boolean[1];
+		Executor executor = new Executor() {
+			public void execute(Runnable command) {
+				if (reject[0]) {
+					throw new RejectedExecutionException("shut down");
+				}
+				handedOff.add(command);
+			}
+		};
+		final BatchingAsyncTask<String, String> readUser = new BatchingAsyncTask<>(bulkTask, 100, 50,
+				TimeUnit.MILLISECONDS, SharedTimer.get(), executor);
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(1);
+
+		// Execute
+		startDriver(readUser, "alice", log, done);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (handedOff.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+
+		// Verify
+		assertEquals(1, handedOff.size());
+		assertTrue(bulkThreads.isEmpty());
+		handedOff.get(0).run();
+		assertEquals(Arrays.asList(Thread.currentThread().getName()), bulkThreads);
+		deferred.complete(0);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("ALICE@" + Thread.currentThread().getName()), log);
+
+		// Execute
+		reject[0] = true;
+		final CountDownLatch failed = new CountDownLatch(1);
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				try {
+					driver.execute(readUser, "bob");
+				} catch (TaskFailedException e) {
+					if (e.getCause() instanceof RejectedExecutionException) {
+						failed.countDown();
+					}
+				}
+			}
+		});
+
+		// Verify
+		assertTrue(failed.await(10, TimeUnit.SECONDS));
+		assertEquals(1, deferred.batches.size());
+		assertEquals(1, readUser.getBatchCount());
+	}
+}
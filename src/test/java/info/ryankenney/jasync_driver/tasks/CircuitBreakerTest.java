@@ -0,0 +1,215 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	/**
+	 * A task whose health can be switched on and off by the test.
+	 */
+	private static class BackendTask implements AsyncTask<Void, String> {
+		final AtomicBoolean healthy = new AtomicBoolean(true);
+		final AtomicInteger calls = new AtomicInteger();
+		public void run(Void arg, ResultHandler<String> resultHandler) {
+			calls.incrementAndGet();
+			if (healthy.get()) {
+				resultHandler.reportComplete("ok");
+			} else {
+				resultHandler.reportFailure(new IllegalStateException("backend down"));
+			}
+		}
+	}
+
+	/**
+	 * Runs a driver that calls the task once, returning the cause of any
+	 * failure, or null on success.
+	 */
+	private static Throwable call(final AsyncTask<Void, String> task) {
+		final JasyncDriver driver = new JasyncDriver();
+		try {
+			driver.execute(new DriverBody() {
+				public void run() {
+					driver.execute(task);
+				}
+			});
+			return null;
+		} catch (TaskFailedException e) {
+			return e.getCause();
+		}
+	}
+
+	/**
+	 * <p>Verifies that the breaker opens once the failure rate crosses the
+	 * threshold, turns calls away while open, lets probes through once the
+	 * open duration passes, and closes again when the probes succeed.</p>
+	 */
+	@Test
+	public void testOpenHalfOpenClose() throws Exception {
+
+		// Setup
+		BackendTask backend = new BackendTask();
+		final List<String> transitions = new ArrayList<>();
+		CircuitBreaker breaker = new CircuitBreaker(0.5, 50, TimeUnit.MILLISECONDS)
+			.setMinimumCalls(4)
+			.setHalfOpenProbes(2)
+			.addListener(new CircuitBreakerListener() {
+				public void onStateChange(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+					transitions.add(from + "->" + to);
+				}
+			});
+		AsyncTask<Void, String> guarded = breaker.wrap(backend);
+
+		// Execute
+		// ... two successes, then failures until the breaker opens
+		call(guarded);
+		call(guarded);
+		backend.healthy.set(false);
+		call(guarded);
+		call(guarded);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		// ... calls while open never reach the backend
+		assertTrue(call(guarded) instanceof CircuitOpenException);
+		assertEquals(4, backend.calls.get());
+		assertEquals(1, breaker.getRejectedCount());
+		// ... after the open duration, probes go through and close it
+		backend.healthy.set(true);
+		Thread.sleep(60);
+		assertEquals(null, call(guarded));
+		assertEquals(null, call(guarded));
+
+		// Verify
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(6, backend.calls.get());
+		assertEquals(Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+	}
+
+	/**
+	 * <p>Verifies that a failed probe re-opens the breaker.</p>
+	 */
+	@Test
+	public void testFailedProbeReopens() throws Exception {
+
+		// Setup
+		BackendTask backend = new BackendTask();
+		backend.healthy.set(false);
+		CircuitBreaker breaker = new CircuitBreaker(0.5, 20, TimeUnit.MILLISECONDS).setMinimumCalls(2);
+		AsyncTask<Void, String> guarded = breaker.wrap(backend);
+		call(guarded);
+		call(guarded);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// Execute
+		Thread.sleep(30);
+		Throwable probeFailure = call(guarded);
+
+		// Verify
+		assertTrue(probeFailure instanceof IllegalStateException);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertTrue(call(guarded) instanceof CircuitOpenException);
+	}
+
+	/**
+	 * <p>Verifies that slow calls open the breaker when slow-call detection is
+	 * enabled.</p>
+	 */
+	@Test
+	public void testSlowCallsOpen() throws Exception {
+
+		// Setup
+		final AsyncTask<Void, String> slowBackend = new AsyncTask<Void, String>() {
+			public void run(Void arg, ResultHandler<String> resultHandler) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				resultHandler.reportComplete("late");
+			}
+		};
+		CircuitBreaker breaker = new CircuitBreaker(1.0, 1, TimeUnit.MINUTES)
+			.setMinimumCalls(2)
+			.setSlowCallThreshold(1, TimeUnit.MILLISECONDS, 0.5);
+		AsyncTask<Void, String> guarded = breaker.wrap(slowBackend);
+
+		// Execute
+		call(guarded);
+		call(guarded);
+
+		// Verify
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	/**
+	 * <p>Verifies that a probe whose task throws counts as a failed probe and
+	 * fails its call, and that probes that never report do not keep the
+	 * breaker half-open past the open duration.</p>
+	 */
+	@Test
+	public void testThrowingAndLostProbes() throws Exception {
+
+		// Setup
+		final AtomicInteger calls = new AtomicInteger();
+		final IllegalStateException cause = new IllegalStateException("client bug");
+		final AtomicBoolean throwing = new AtomicBoolean(true);
+		AsyncTask<Void, String> backend = new AsyncTask<Void, String>() {
+			public void run(Void arg, ResultHandler<String> resultHandler) {
+				if (calls.incrementAndGet() <= 2) {
+					resultHandler.reportFailure(new IllegalStateException("backend down"));
+				} else if (throwing.get()) {
+					throw cause;
+				}
+				// ... otherwise never reports
+			}
+		};
+		CircuitBreaker breaker = new CircuitBreaker(0.5, 200, TimeUnit.MILLISECONDS)
+			.setMinimumCalls(2)
+			.setHalfOpenProbes(1);
+		final AsyncTask<Void, String> guarded = breaker.wrap(backend);
+		call(guarded);
+		call(guarded);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// Execute
+		// ... a throwing probe fails its call and re-opens the breaker
+		Thread.sleep(250);
+		assertTrue(call(guarded) == cause);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		// ... a probe that never reports holds the half-open phase, but only
+		// for the open duration
+		throwing.set(false);
+		Thread.sleep(250);
+		final JasyncDriver lostDriver = new JasyncDriver();
+		lostDriver.execute(new DriverBody() {
+			public void run() {
+				lostDriver.execute(guarded);
+			}
+		});
+		assertTrue(call(guarded) instanceof CircuitOpenException);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		Thread.sleep(250);
+		assertTrue(call(guarded) instanceof CircuitOpenException);
+
+		// Verify
+		Thread.sleep(250);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertEquals(4, calls.get());
+		call(guarded);
+		assertEquals(5, calls.get());
+	}
+}
@@ -0,0 +1,145 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.Deadline;
+import info.ryankenney.jasync_driver.DeadlineExceededException;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+	private static class CountingTask implements AsyncTask<Void, Void> {
+		final AtomicInteger calls = new AtomicInteger();
+		public void run(Void arg, ResultHandler<Void> resultHandler) {
+			calls.incrementAndGet();
+			resultHandler.reportComplete();
+		}
+	}
+
+	private static void startDriver(final AsyncTask<Void, Void> task, final CountDownLatch done) {
+		final JasyncDriver driver = new JasyncDriver(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		driver.execute(new DriverBody() {
+			public void run() {
+				driver.execute(task);
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that calls within the burst start immediately, on the
+	 * calling thread, and calls beyond it are spread out at the configured
+	 * rate.</p>
+	 */
+	@Test
+	public void testBurstThenRate() throws Exception {
+
+		// Setup
+		CountingTask task = new CountingTask();
+		RateLimiter limiter = new RateLimiter(10, 2);
+		AsyncTask<Void, Void> limited = limiter.wrap(task);
+		CountDownLatch done = new CountDownLatch(5);
+
+		// Execute
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			startDriver(limited, done);
+		}
+
+		// Verify
+		// ... the burst ran inline
+		assertEquals(2, task.calls.get());
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// ... the remaining three waited one interval (100ms) apiece
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+		assertEquals(5, limiter.getAcquiredCount());
+		assertEquals(3, limiter.getDelayedCount());
+	}
+
+	/**
+	 * <p>Verifies that a call from a driver whose deadline would pass before
+	 * a token is available fails immediately.</p>
+	 */
+	@Test
+	public void testFailsFastPastDeadline() throws Exception {
+
+		// Setup
+		CountingTask task = new CountingTask();
+		final AsyncTask<Void, Void> limited = new RateLimiter(1, 1).wrap(task);
+		startDriver(limited, new CountDownLatch(1));
+
+		// Execute
+		final JasyncDriver driver = new JasyncDriver().setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+		try {
+			driver.execute(new DriverBody() {
+				public void run() {
+					driver.execute(limited);
+				}
+			});
+			Assert.fail("Expected exception");
+		} catch (TaskFailedException e) {
+			// Verify
+			assertTrue(e.getCause() instanceof DeadlineExceededException);
+		}
+		assertEquals(1, task.calls.get());
+	}
+
+	/**
+	 * <p>Verifies that a delayed call is started on the provided executor,
+	 * rather than on the timer thread.</p>
+	 */
+	@Test
+	public void testDelayedCallHandedOff() throws Exception {
+
+		// Setup
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		AsyncTask<Void, Void> task = new AsyncTask<Void, Void>() {
+			public void run(Void arg, ResultHandler<Void> resultHandler) {
+				threads.add(Thread.currentThread().getName());
+				resultHandler.reportComplete();
+			}
+		};
+		final ExecutorService pool = Executors.newSingleThreadExecutor();
+		final AtomicInteger handedOff = new AtomicInteger();
+		Executor executor = new Executor() {
+			public void execute(Runnable command) {
+				handedOff.incrementAndGet();
+				pool.execute(command);
+			}
+		};
+		AsyncTask<Void, Void> limited = new RateLimiter(100, 1, SharedTimer.get(), executor).wrap(task);
+		CountDownLatch done = new CountDownLatch(2);
+
+		// Execute
+		startDriver(limited, done);
+		startDriver(limited, done);
+
+		// Verify
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(1, handedOff.get());
+		assertEquals(2, threads.size());
+		assertTrue(threads.get(1), !threads.get(1).equals("jasync-driver-timer"));
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,101 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to each {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> args = new ArrayList<>();
+		final List<ResultHandler<String>> pending = new ArrayList<>();
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			args.add(arg);
+			pending.add(resultHandler);
+		}
+	}
+
+	private static void startDriver(final AsyncTask<String, String> task, final String arg, final List<Object> log) {
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				try {
+					log.add(driver.execute(task, arg));
+				} catch (TaskFailedException e) {
+					log.add(e.getCause());
+				}
+			}
+		});
+	}
+
+	/**
+	 * <p>Verifies that concurrent calls with the same argument share a single
+	 * call to the underlying task, that all receive its result, and that
+	 * calls with other arguments, or made after it landed, are not
+	 * shared.</p>
+	 */
+	@Test
+	public void testConcurrentCallsShared() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		SingleFlight flight = new SingleFlight();
+		AsyncTask<String, String> shared = flight.wrap(task);
+		List<Object> log = new ArrayList<>();
+
+		// Execute
+		startDriver(shared, "alice", log);
+		startDriver(shared, "alice", log);
+		startDriver(shared, "bob", log);
+		startDriver(shared, "alice", log);
+
+		// Verify
+		assertEquals(Arrays.asList("alice", "bob"), task.args);
+		assertEquals(2, flight.getInFlightCount());
+		task.pending.get(0).reportComplete("admin");
+		assertEquals(Arrays.<Object>asList("admin", "admin", "admin"), log);
+		assertEquals(2, flight.getSharedCount());
+		startDriver(shared, "alice", log);
+		assertEquals(Arrays.asList("alice", "bob", "alice"), task.args);
+	}
+
+	/**
+	 * <p>Verifies that a failure is reported to every waiting driver.</p>
+	 */
+	@Test
+	public void testFailureFansOut() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		SingleFlight flight = new SingleFlight();
+		AsyncTask<String, String> shared = flight.wrap(task);
+		List<Object> log = new ArrayList<>();
+		IllegalStateException cause = new IllegalStateException("server down");
+		startDriver(shared, "alice", log);
+		startDriver(shared, "alice", log);
+
+		// Execute
+		task.pending.get(0).reportFailure(cause);
+
+		// Verify
+		assertEquals(2, log.size());
+		assertTrue(cause == log.get(0));
+		assertTrue(cause == log.get(1));
+		assertEquals(0, flight.getInFlightCount());
+	}
+}
@@ -0,0 +1,159 @@
+package info.ryankenney.jasync_driver.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import info.ryankenney.jasync_driver.AsyncTask;
+import info.ryankenney.jasync_driver.DriverBody;
+import info.ryankenney.jasync_driver.JasyncDriver;
+import info.ryankenney.jasync_driver.ResultHandler;
+import info.ryankenney.jasync_driver.TaskFailedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TaskCacheTest {
+
+	/**
+	 * An {@link AsyncTask} that holds on to each {@link ResultHandler} until
+	 * the test completes it.
+	 */
+	private static class DeferredTask implements AsyncTask<String, String> {
+		final List<String> args = new ArrayList<>();
+		final List<ResultHandler<String>> pending = new ArrayList<>();
+		public void run(String arg, ResultHandler<String> resultHandler) {
+			args.add(arg);
+			pending.add(resultHandler);
+		}
+	}
+
+	/**
+	 * Runs a body that executes the task once, returning the number of times
+	 * the body was executed.
+	 */
+	private static AtomicInteger runBody(final AsyncTask<String, String> task, final String arg,
+			final AtomicReference<Object> witnessedOutcome) {
+		final AtomicInteger bodyExecutions = new AtomicInteger();
+		final JasyncDriver driver = new JasyncDriver();
+		driver.execute(new DriverBody() {
+			public void run() {
+				bodyExecutions.incrementAndGet();
+				try {
+					witnessedOutcome.set(driver.execute(task, arg));
+				} catch (TaskFailedException e) {
+					witnessedOutcome.set(e.getCause());
+				}
+			}
+		});
+		return bodyExecutions;
+	}
+
+	/**
+	 * <p>Verifies that a result loaded by one driver is served to another from
+	 * the cache, and that the hit completes the step without a suspension and
+	 * replay of the body.</p>
+	 */
+	@Test
+	public void testHitCompletesInline() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		TaskCache cache = new TaskCache(100, 1, TimeUnit.HOURS);
+		AsyncTask<String, String> cached = cache.wrap(task);
+		AtomicReference<Object> witnessedOutcome = new AtomicReference<>();
+		AtomicInteger missExecutions = runBody(cached, "alice", witnessedOutcome);
+		task.pending.get(0).reportComplete("admin");
+
+		// Execute
+		AtomicInteger hitExecutions = runBody(cached, "alice", witnessedOutcome);
+
+		// Verify
+		assertEquals(2, missExecutions.get());
+		assertEquals(1, hitExecutions.get());
+		assertEquals("admin", witnessedOutcome.get());
+		assertEquals(1, task.args.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0.001);
+		assertEquals(1, cache.getLoadStats().getCount());
+	}
+
+	/**
+	 * <p>Verifies that a stale entry is served while a single background call
+	 * reloads it, and that failures are cached when configured.</p>
+	 */
+	@Test
+	public void testStaleWhileRevalidateAndFailures() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		TaskCache cache = new TaskCache(100, 1, TimeUnit.HOURS)
+			.setRefreshAfter(1, TimeUnit.NANOSECONDS)
+			.setFailureTtl(1, TimeUnit.HOURS);
+		AsyncTask<String, String> cached = cache.wrap(task);
+		AtomicReference<Object> witnessedOutcome = new AtomicReference<>();
+		runBody(cached, "alice", witnessedOutcome);
+		task.pending.get(0).reportComplete("admin");
+		Thread.sleep(1);
+
+		// Execute
+		runBody(cached, "alice", witnessedOutcome);
+		runBody(cached, "alice", witnessedOutcome);
+
+		// Verify
+		// ... both served stale, with a single reload
+		assertEquals("admin", witnessedOutcome.get());
+		assertEquals(2, task.args.size());
+		assertEquals(1, cache.getRefreshCount());
+		task.pending.get(1).reportComplete("reader");
+		runBody(cached, "alice", witnessedOutcome);
+		assertEquals("reader", witnessedOutcome.get());
+		// ... a failure is reported to every caller until it expires
+		IllegalStateException cause = new IllegalStateException("server down");
+		runBody(cached, "bob", witnessedOutcome);
+		task.pending.get(task.pending.size() - 1).reportFailure(cause);
+		runBody(cached, "bob", witnessedOutcome);
+		assertTrue(cause == witnessedOutcome.get());
+		assertEquals(task.args.indexOf("bob"), task.args.lastIndexOf("bob"));
+	}
+
+	/**
+	 * <p>Verifies that the least recently used entries are evicted once the
+	 * total weight exceeds the maximum.</p>
+	 */
+	@Test
+	public void testEviction() throws Exception {
+
+		// Setup
+		DeferredTask task = new DeferredTask();
+		TaskCache cache = new TaskCache(12, 1, TimeUnit.HOURS);
+		AsyncTask<String, String> cached = cache.wrap(task, new CacheWeigher<String, String>() {
+			public int weigh(String arg, String result) {
+				return result.length();
+			}
+		});
+		AtomicReference<Object> witnessedOutcome = new AtomicReference<>();
+
+		// Execute
+		for (String arg : new String[] {"a", "b", "c"}) {
+			runBody(cached, arg, witnessedOutcome);
+			task.pending.get(task.pending.size() - 1).reportComplete("1234");
+		}
+		// ... touch "a", so "b" is the least recently used
+		runBody(cached, "a", witnessedOutcome);
+		runBody(cached, "d", witnessedOutcome);
+		task.pending.get(task.pending.size() - 1).reportComplete("1234");
+
+		// Verify
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.getSize());
+		assertEquals(12, cache.getWeight());
+		runBody(cached, "b", witnessedOutcome);
+		assertEquals("b", task.args.get(task.args.size() - 1));
+	}
+}